@@ -4,6 +4,7 @@ import lombok.extern.log4j.Log4j2;
 import ro.mihalea.deerkat.model.Transaction;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Abstract class that outlines the action that a classifier should take.
@@ -38,16 +39,34 @@ public abstract class AbstractClassifier {
     };
 
     /**
-     * List of model data that will be used to calculate matches
+     * List of model data that will be used to calculate matches, which can be read while the import pipeline is
+     * classifying transactions on another thread. Changes are made while holding the classifier's lock, so that an
+     * item added from two threads at once is only stored once.
      */
-    protected List<Transaction> modelData = new ArrayList<>();
+    protected final List<Transaction> modelData = new CopyOnWriteArrayList<>();
 
     /**
      * Add a List to the model data to improve predictions
      * @param data List of model data to be used
      */
-    public void addModelList(List<Transaction> data) {
-        data.forEach(this::addModelItem);
+    public synchronized void addModelList(List<Transaction> data) {
+        Map<Long, Transaction> existing = new HashMap<>();
+        for (Transaction model : modelData) {
+            existing.put(model.getId(), model);
+        }
+
+        // Added in a single copy of the model data, as copying it for every item is slow for large models
+        List<Transaction> added = new ArrayList<>();
+        for (Transaction item : data) {
+            Transaction model = existing.get(item.getId());
+            if (model != null) {
+                model.setCategory(item.getCategory());
+            } else {
+                existing.put(item.getId(), item);
+                added.add(item);
+            }
+        }
+        modelData.addAll(added);
         log.debug("Added {} items to the model", data.size());
     }
 
@@ -55,7 +74,7 @@ public abstract class AbstractClassifier {
      * Add a single item to the model data to improve predictions, or update an item if one with the same id is found
      * @param data Data added to the model
      */
-    public void addModelItem(Transaction data) {
+    public synchronized void addModelItem(Transaction data) {
         for (Transaction model : modelData) {
             if(model.getId().equals(data.getId())) {
                 model.setCategory(data.getCategory());
@@ -68,6 +87,14 @@ public abstract class AbstractClassifier {
         log.debug("Model item has been added to the classifier: {}", data);
     }
 
+    /**
+     * Remove all model data, so that the classifier can be trained again from a different database
+     */
+    public synchronized void clearModel() {
+        modelData.clear();
+        log.debug("Model data has been cleared");
+    }
+
     /**
      * Return a sorted list of category matches based on their similarity score
      *
@@ -91,6 +118,43 @@ public abstract class AbstractClassifier {
         }
     }
 
+    /**
+     * Set the best category of a transaction if its similarity is above {@link #NEED_CONFIRMATION_VALUE}, along
+     * with the confidence level of the match. The transaction is not added to the model data.
+     * @param item Transaction for which to find a category
+     * @return Confidence level of the match, or NONE if no category has been set
+     */
+    public ConfidenceLevel classify(Transaction item) {
+        return this.classify(item, NEED_CONFIRMATION_VALUE);
+    }
+
+    /**
+     * Set the best category of a transaction if its similarity is above the threshold, along with the confidence
+     * level of the match. The transaction is not added to the model data.
+     * @param item Transaction for which to find a category
+     * @param threshold Similarity the best match needs to be above, such as {@link #AUTOMATIC_MATCH_VALUE} to only
+     *                  keep the matches that don't need confirmation
+     * @return Confidence level of the match, or NONE if no category has been set
+     */
+    public ConfidenceLevel classify(Transaction item, int threshold) {
+        Optional<CategoryMatch> best = getBest(item);
+        if (!best.isPresent() || best.get().getSimilarity() <= threshold) {
+            return ConfidenceLevel.NONE;
+        }
+
+        CategoryMatch match = best.get();
+        // Similarity between AUTOMATIC_MATCH_VALUE and MAXIMUM doesn't need the user's confirmation
+        ConfidenceLevel level = match.getSimilarity() > AUTOMATIC_MATCH_VALUE
+                ? ConfidenceLevel.PRETTY_SURE
+                : ConfidenceLevel.NEED_CONFIRMATION;
+
+        item.setCategory(match.getCategory());
+        item.setConfidenceLevel(level);
+        log.debug("Classified {} as {} with {}", item, level, match);
+
+        return level;
+    }
+
     /**
      * Transform the title to lowercase and remove any blacklisted words to remove variation in the matches
      * @param title Category title
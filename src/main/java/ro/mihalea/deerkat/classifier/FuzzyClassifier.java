@@ -1,6 +1,5 @@
 package ro.mihalea.deerkat.classifier;
 
-import javafx.util.Pair;
 import lombok.extern.log4j.Log4j2;
 import me.xdrop.fuzzywuzzy.FuzzySearch;
 import me.xdrop.fuzzywuzzy.model.ExtractedResult;
@@ -14,8 +13,11 @@ import java.util.stream.Collectors;
 public class FuzzyClassifier extends AbstractClassifier{
     @Override
     public List<CategoryMatch> getMatches(Transaction item) {
+        // Work on a snapshot as the model may grow while the matches are computed
+        List<Transaction> model = new ArrayList<>(modelData);
+
         // Extract the details from the model data and sanitize the strings to remove noise
-        List<String> detailsList = modelData.stream()
+        List<String> detailsList = model.stream()
                 .map(Transaction::getDetails)
                 .map(this::sanitizeTitle)
                 .collect(Collectors.toList());
@@ -30,7 +32,7 @@ public class FuzzyClassifier extends AbstractClassifier{
         // Construct a list of category matches based on model data and the scores of the fuzzy search
         List<CategoryMatch> matches = new ArrayList<>();
         for (int i = 0; i < results.size(); i++) {
-            matches.add(new CategoryMatch(modelData.get(i).getCategory(), results.get(i).getScore()));
+            matches.add(new CategoryMatch(model.get(i).getCategory(), results.get(i).getScore()));
         }
 
         // Remove any matches that have their score below the cutoff values as they don't help
@@ -38,36 +40,22 @@ public class FuzzyClassifier extends AbstractClassifier{
                 .filter(e -> e.getSimilarity() > CUTOFF_VALUE)
                 .collect(Collectors.toList());
 
-        // Map containing the Category and a pair of integers containing the total score for that category and the number
-        // of categories found in that category
-        Map<Category, Pair<Integer, Integer>> summed = new HashMap<>();
+        // Map containing the Category and the total score for that category along with the number of matches found
+        // in that category
+        Map<Category, Score> summed = new HashMap<>();
 
         // Sum up all the matches and prepare to calculate the averages
         for (CategoryMatch match : filtered) {
-            if(summed.containsKey(match.getCategory())) {
-                Pair<Integer, Integer> count = summed.get(match.getCategory());
-                summed.put(
-                        match.getCategory(),
-                        new Pair<>(
-                                count.getKey() + match.getSimilarity(),
-                                count.getValue() + 1
-                        )
-                );
-            } else {
-                summed.put(
-                        match.getCategory(),
-                        new Pair<>(
-                                match.getSimilarity(),
-                                1
-                        ));
-            }
+            Score score = summed.computeIfAbsent(match.getCategory(), category -> new Score());
+            score.total += match.getSimilarity();
+            score.count++;
         }
 
         // Calculate the averages based on the sums
         Map <Category, Integer> averaged = new HashMap<>();
-        for(Map.Entry<Category, Pair<Integer, Integer>> entry : summed.entrySet()) {
-            Pair<Integer, Integer> count = entry.getValue();
-            averaged.put(entry.getKey(), count.getKey() / count.getValue());
+        for(Map.Entry<Category, Score> entry : summed.entrySet()) {
+            Score score = entry.getValue();
+            averaged.put(entry.getKey(), score.total / score.count);
         }
 
         // Prepare a list of CategoryMatches for sorting
@@ -85,4 +73,20 @@ public class FuzzyClassifier extends AbstractClassifier{
 
         return sortedAveraged;
     }
+
+    /**
+     * Total similarity of the matches of a category and their number, kept without any UI toolkit classes so the
+     * classifier can run headless
+     */
+    private static class Score {
+        /**
+         * Sum of the similarities of the matches
+         */
+        private int total = 0;
+
+        /**
+         * Number of matches
+         */
+        private int count = 0;
+    }
 }
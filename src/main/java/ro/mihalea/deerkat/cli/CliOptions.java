@@ -0,0 +1,217 @@
+package ro.mihalea.deerkat.cli;
+
+import lombok.Getter;
+import ro.mihalea.deerkat.exception.cli.UsageException;
+import ro.mihalea.deerkat.exporter.ExportFormat;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Command and options given to the command line interface
+ */
+@Getter
+class CliOptions {
+    /**
+     * Actions that can be run from the command line
+     */
+    enum Command {
+        /**
+         * Import statements, optionally exporting the new transactions afterwards
+         */
+        IMPORT,
+        /**
+         * Export the transactions stored in the database
+         */
+        EXPORT,
+        /**
+         * Import the statements dropped into a folder until the process is stopped
+         */
+        WATCH
+    }
+
+    /**
+     * Description of the commands and options, printed when the arguments are not valid
+     */
+    final static String USAGE = String.join(System.lineSeparator(),
+            "Usage: deerkat <command> [options] <paths>",
+            "",
+            "Commands:",
+            "  import <statement|folder|archive>...  Import statements and categorise their transactions",
+            "  export <file>                         Export the transactions added since the last export to the file",
+            "  watch <folder>                        Import the statements dropped into the folder until stopped",
+            "",
+            "Options:",
+            "  --database <file>     SQLite database to use instead of deerkat.sqlite",
+            "  --parallelism <n>     Maximum number of statements parsed at the same time",
+            "  --export <file>       Export the new transactions after every import",
+            "  --all                 Export every transaction instead of the ones added since the last export",
+            "  --no-classify         Import transactions without categories",
+            "  --verbose             Log debug messages",
+            "",
+            "The export format is picked from the extension of the file: .csv, .qif, .ofx or .jsonl, optionally",
+            "followed by .gz. Only categories that don't need confirmation are set, as nobody reviews them.");
+
+    /**
+     * Action to run
+     */
+    private final Command command;
+
+    /**
+     * Statements, folders or archives to import, or the single file to export to
+     */
+    private final List<Path> paths;
+
+    /**
+     * SQLite database to use, or null for the default one
+     */
+    private final String database;
+
+    /**
+     * Maximum number of statements parsed at the same time
+     */
+    private final int parallelism;
+
+    /**
+     * File the new transactions are exported to after importing, or null to skip exporting
+     */
+    private final Path export;
+
+    /**
+     * Marks whether every transaction is exported rather than the ones changed since the last export
+     */
+    private final boolean all;
+
+    /**
+     * Marks whether imported transactions are categorised
+     */
+    private final boolean classify;
+
+    /**
+     * Marks whether debug messages are logged
+     */
+    private final boolean verbose;
+
+    private CliOptions(Command command, List<Path> paths, String database, int parallelism, Path export,
+                       boolean all, boolean classify, boolean verbose) {
+        this.command = command;
+        this.paths = Collections.unmodifiableList(paths);
+        this.database = database;
+        this.parallelism = parallelism;
+        this.export = export;
+        this.all = all;
+        this.classify = classify;
+        this.verbose = verbose;
+    }
+
+    /**
+     * Parse the command line arguments
+     * @param args Arguments given to the application
+     * @return Options of the command
+     * @throws UsageException Thrown if the arguments are not valid
+     */
+    static CliOptions parse(String[] args) throws UsageException {
+        if (args.length == 0) {
+            throw new UsageException("No command has been given");
+        }
+
+        Command command;
+        try {
+            command = Command.valueOf(args[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new UsageException("Unknown command: " + args[0], e);
+        }
+
+        List<Path> paths = new ArrayList<>();
+        String database = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        Path export = null;
+        boolean all = false;
+        boolean classify = true;
+        boolean verbose = false;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--database":
+                    database = value(args, ++i);
+                    break;
+                case "--parallelism":
+                    try {
+                        parallelism = Integer.parseInt(value(args, ++i));
+                    } catch (NumberFormatException e) {
+                        throw new UsageException("The parallelism must be a number: " + args[i], e);
+                    }
+                    if (parallelism < 1) {
+                        throw new UsageException("The parallelism must be at least 1");
+                    }
+                    break;
+                case "--export":
+                    export = Paths.get(value(args, ++i));
+                    break;
+                case "--all":
+                    all = true;
+                    break;
+                case "--no-classify":
+                    classify = false;
+                    break;
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        throw new UsageException("Unknown option: " + args[i]);
+                    }
+                    paths.add(Paths.get(args[i]));
+            }
+        }
+
+        if (paths.isEmpty()) {
+            throw new UsageException("No paths have been given to " + args[0]);
+        }
+        if (command != Command.IMPORT && paths.size() > 1) {
+            throw new UsageException("Only one path can be given to " + args[0]);
+        }
+        if (command == Command.EXPORT && export != null) {
+            throw new UsageException("The export command takes the file as its path");
+        }
+
+        Path target = command == Command.EXPORT ? paths.get(0) : export;
+        if (target != null) {
+            ExportFormat format = format(target);
+            if (!all && !format.isAppendable()) {
+                throw new UsageException(format.getTitle() + " files cannot be appended to, use --all to export " +
+                        "every transaction");
+            }
+        }
+
+        return new CliOptions(command, paths, database, parallelism, export, all, classify, verbose);
+    }
+
+    /**
+     * Find the format of an export file from its extension
+     * @param file Export file
+     * @return Format of the file
+     * @throws UsageException Thrown if the extension doesn't match any format
+     */
+    static ExportFormat format(Path file) throws UsageException {
+        return ExportFormat.fromFileName(file.getFileName().toString())
+                .orElseThrow(() -> new UsageException("Unknown export format: " + file.getFileName()));
+    }
+
+    /**
+     * Return the value following an option
+     * @param args Arguments given to the application
+     * @param index Position of the value
+     * @return Value of the option
+     * @throws UsageException Thrown if the option is the last argument
+     */
+    private static String value(String[] args, int index) throws UsageException {
+        if (index >= args.length) {
+            throw new UsageException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+}
@@ -0,0 +1,245 @@
+package ro.mihalea.deerkat.cli;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import ro.mihalea.deerkat.classifier.AbstractClassifier;
+import ro.mihalea.deerkat.classifier.FuzzyClassifier;
+import ro.mihalea.deerkat.exception.cli.UsageException;
+import ro.mihalea.deerkat.exception.exporter.ExportException;
+import ro.mihalea.deerkat.exception.repository.RepositoryConnectionException;
+import ro.mihalea.deerkat.exception.repository.RepositoryCreateException;
+import ro.mihalea.deerkat.exception.repository.RepositoryReadException;
+import ro.mihalea.deerkat.exception.repository.RepositoryUpdateException;
+import ro.mihalea.deerkat.exporter.ExportFormat;
+import ro.mihalea.deerkat.exporter.ExportPipeline;
+import ro.mihalea.deerkat.exporter.IncrementalExporter;
+import ro.mihalea.deerkat.importer.FolderWatcher;
+import ro.mihalea.deerkat.importer.ImportReport;
+import ro.mihalea.deerkat.importer.StatementImporter;
+import ro.mihalea.deerkat.model.Transaction;
+import ro.mihalea.deerkat.repository.CategoryPaths;
+import ro.mihalea.deerkat.repository.CategorySqlRepository;
+import ro.mihalea.deerkat.repository.TransactionSqlRepository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Command line entry point importing, categorising and exporting transactions without a user interface, so it can
+ * run on a server or from a scheduled job.
+ *
+ * It uses the same importer as the user interface, parsing the statements in parallel and storing them in batches,
+ * but only keeps the categories that don't need confirmation. No JavaFX class is loaded.
+ */
+@Log4j2
+public class DeerkatCli {
+    /**
+     * Exit status when everything has been imported and exported
+     */
+    private final static int EXIT_SUCCESS = 0;
+
+    /**
+     * Exit status when some statements could not be imported or the command failed
+     */
+    private final static int EXIT_FAILURE = 1;
+
+    /**
+     * Exit status when the arguments are not valid
+     */
+    private final static int EXIT_USAGE = 2;
+
+    /**
+     * Options of the command being run
+     */
+    private final CliOptions options;
+
+    /**
+     * Repository storing the transactions
+     */
+    private final TransactionSqlRepository transactionSql;
+
+    /**
+     * Repository storing the categories
+     */
+    private final CategorySqlRepository categorySql;
+
+    /**
+     * @param options Options of the command being run
+     * @throws RepositoryConnectionException Thrown if the database cannot be opened
+     */
+    private DeerkatCli(CliOptions options) throws RepositoryConnectionException {
+        this.options = options;
+        if (options.getDatabase() != null) {
+            transactionSql = new TransactionSqlRepository(options.getDatabase());
+            categorySql = new CategorySqlRepository(options.getDatabase());
+        } else {
+            transactionSql = new TransactionSqlRepository();
+            categorySql = new CategorySqlRepository();
+        }
+    }
+
+    public static void main(String[] args) {
+        CliOptions options;
+        try {
+            options = CliOptions.parse(args);
+        } catch (UsageException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            System.err.println(CliOptions.USAGE);
+            System.exit(EXIT_USAGE);
+            return;
+        }
+
+        // Debug messages are written for every row, which would slow down large imports
+        if (!options.isVerbose()) {
+            Configurator.setLevel("ro.mihalea.deerkat", Level.INFO);
+        }
+
+        int status;
+        try {
+            status = new DeerkatCli(options).run();
+        } catch (InterruptedException e) {
+            log.warn("Command has been interrupted", e);
+            status = EXIT_FAILURE;
+        } catch (Exception e) {
+            log.error("Command " + options.getCommand() + " failed", e);
+            System.err.println("Error: " + e.getMessage());
+            status = EXIT_FAILURE;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Run the command
+     * @return Exit status of the application
+     */
+    private int run() throws Exception {
+        switch (options.getCommand()) {
+            case IMPORT:
+                return this.importStatements();
+            case EXPORT:
+                this.export(options.getPaths().get(0));
+                return EXIT_SUCCESS;
+            case WATCH:
+                return this.watch();
+            default:
+                throw new IllegalStateException("Unknown command " + options.getCommand());
+        }
+    }
+
+    /**
+     * Import the statements given on the command line and export the new transactions if asked to
+     * @return Exit status of the application
+     */
+    private int importStatements() throws RepositoryCreateException, RepositoryReadException, InterruptedException,
+            ExportException, RepositoryUpdateException, UsageException {
+        ImportReport report = this.createImporter().importStatements(options.getPaths(),
+                new StatementImporter.Listener() {
+                    @Override
+                    public void progress(int completed, int total) {
+                        log.debug("Imported {} out of {} statements", completed, total);
+                    }
+
+                    @Override
+                    public void failed(Path file, Exception e) {
+                        System.err.println("Failed to import " + file + ": " + e.getMessage());
+                    }
+                });
+        System.out.println(report.getSummary());
+
+        if (options.getExport() != null) {
+            this.export(options.getExport());
+        }
+
+        return report.getFailures().isEmpty() && report.getIncomplete().isEmpty() ? EXIT_SUCCESS : EXIT_FAILURE;
+    }
+
+    /**
+     * Import the statements dropped into the folder until the process is stopped, exporting the new transactions
+     * after every import if asked to
+     * @return Exit status of the application, which is a failure as the watcher only stops on its own when the
+     * folder cannot be watched anymore
+     */
+    private int watch() throws RepositoryReadException, IOException, InterruptedException {
+        Path folder = options.getPaths().get(0);
+        FolderWatcher watcher = new FolderWatcher(folder, this.createImporter(), new FolderWatcher.Listener() {
+            @Override
+            public void stored(Path file, List<Transaction> inserted) {
+                log.debug("Stored {} transactions from {}", inserted.size(), file);
+            }
+
+            @Override
+            public void imported(ImportReport report) {
+                System.out.println(report.getSummary());
+
+                if (options.getExport() != null) {
+                    try {
+                        DeerkatCli.this.export(options.getExport());
+                    } catch (ExportException | RepositoryReadException | RepositoryUpdateException |
+                            UsageException e) {
+                        log.error("Failed to export the new transactions to " + options.getExport(), e);
+                        System.err.println("Failed to export to " + options.getExport() + ": " + e.getMessage());
+                    }
+                }
+            }
+
+            @Override
+            public void failed(Path path, Exception e) {
+                System.err.println("Failed to import " + path + ": " + e.getMessage());
+            }
+        });
+
+        watcher.start();
+        System.out.println("Watching " + watcher.getFolder() + " for new statements");
+
+        // Statements are imported on the daemon thread of the watcher, which has to be kept alive until the
+        // process is stopped. Every batch is committed with its checkpoint, so stopping it at any time is safe.
+        watcher.awaitTermination();
+        System.err.println("Stopped watching " + watcher.getFolder());
+        return EXIT_FAILURE;
+    }
+
+    /**
+     * Export the transactions to a file, either all of them or the ones changed since the last export to that file
+     * @param file Export file, whose extension gives its format
+     */
+    private void export(Path file) throws ExportException, RepositoryReadException, RepositoryUpdateException,
+            UsageException {
+        ExportFormat format = CliOptions.format(file);
+        boolean gzip = file.getFileName().toString().toLowerCase().endsWith(".gz");
+
+        int count;
+        if (options.isAll()) {
+            try (ExportPipeline pipeline = new ExportPipeline(CategoryPaths.load(categorySql))) {
+                pipeline.addTarget(file, format, gzip);
+                count = pipeline.writeRepository(transactionSql, categorySql);
+                pipeline.finish();
+            }
+        } else {
+            count = new IncrementalExporter(transactionSql, categorySql).export(file, format, gzip);
+        }
+
+        System.out.println("Exported " + count + " transactions to " + file);
+    }
+
+    /**
+     * Create the importer, with a classifier trained on the categorised transactions unless classification has
+     * been turned off
+     * @return Importer only setting the categories that don't need confirmation
+     */
+    private StatementImporter createImporter() throws RepositoryReadException {
+        AbstractClassifier classifier = null;
+        if (options.isClassify()) {
+            classifier = new FuzzyClassifier();
+            classifier.addModelList(transactionSql.getAll(categorySql).stream()
+                    .filter(t -> t.getCategory() != null)
+                    .collect(Collectors.toList()));
+        }
+
+        return new StatementImporter(transactionSql, classifier, options.getParallelism(),
+                AbstractClassifier.AUTOMATIC_MATCH_VALUE);
+    }
+}
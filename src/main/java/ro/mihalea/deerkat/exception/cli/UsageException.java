@@ -0,0 +1,14 @@
+package ro.mihalea.deerkat.exception.cli;
+
+/**
+ * Exception thrown when the command line arguments are not valid
+ */
+public class UsageException extends Exception {
+    public UsageException(String s) {
+        super(s);
+    }
+
+    public UsageException(String s, Throwable throwable) {
+        super(s, throwable);
+    }
+}
@@ -0,0 +1,14 @@
+package ro.mihalea.deerkat.exception.exporter;
+
+/**
+ * Exception thrown when transactions could not be written to an export file
+ */
+public class ExportException extends Exception {
+    public ExportException(String s) {
+        super(s);
+    }
+
+    public ExportException(String s, Throwable throwable) {
+        super(s, throwable);
+    }
+}
@@ -0,0 +1,106 @@
+package ro.mihalea.deerkat.exporter;
+
+import java.io.Writer;
+import java.util.Optional;
+
+/**
+ * File formats that transactions can be exported to
+ */
+public enum ExportFormat {
+    /**
+     * CSV file that can be imported by YNAB4
+     */
+    YNAB_CSV("YNAB4 CSV", "csv", true) {
+        @Override
+        public TransactionExporter create(Writer output) {
+            return new YnabCsvExporter(output);
+        }
+    },
+    /**
+     * Quicken Interchange Format, supported by most personal finance applications
+     */
+    QIF("Quicken Interchange Format", "qif", true) {
+        @Override
+        public TransactionExporter create(Writer output) {
+            return new QifExporter(output);
+        }
+    },
+    /**
+     * Open Financial Exchange 2.2 bank statement, which is a single document that cannot be appended to
+     */
+    OFX("Open Financial Exchange", "ofx", false) {
+        @Override
+        public TransactionExporter create(Writer output) {
+            return new OfxExporter(output);
+        }
+    },
+    /**
+     * One JSON object per line, meant to be processed by other tools
+     */
+    JSON_LINES("JSON Lines", "jsonl", true) {
+        @Override
+        public TransactionExporter create(Writer output) {
+            return new JsonLinesExporter(output);
+        }
+    };
+
+    /**
+     * User friendly name of the format
+     */
+    private final String title;
+
+    /**
+     * Extension of the files in this format, without the dot
+     */
+    private final String extension;
+
+    /**
+     * Marks whether transactions can be appended to an existing file of this format
+     */
+    private final boolean appendable;
+
+    ExportFormat(String title, String extension, boolean appendable) {
+        this.title = title;
+        this.extension = extension;
+        this.appendable = appendable;
+    }
+
+    /**
+     * Create an exporter writing in this format
+     * @param output Stream receiving the exported data
+     * @return Exporter that has not written anything yet
+     */
+    public abstract TransactionExporter create(Writer output);
+
+    /**
+     * Find the format of a file based on its extension, ignoring a trailing ".gz"
+     * @param fileName Name of the file
+     * @return Format matching the extension, if there is one
+     */
+    public static Optional<ExportFormat> fromFileName(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+
+        for (ExportFormat format : values()) {
+            if (name.endsWith("." + format.extension)) {
+                return Optional.of(format);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public boolean isAppendable() {
+        return appendable;
+    }
+}
@@ -0,0 +1,278 @@
+package ro.mihalea.deerkat.exporter;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.exception.exporter.ExportException;
+import ro.mihalea.deerkat.exception.repository.RepositoryReadException;
+import ro.mihalea.deerkat.model.Transaction;
+import ro.mihalea.deerkat.repository.CategoryPaths;
+import ro.mihalea.deerkat.repository.CategorySqlRepository;
+import ro.mihalea.deerkat.repository.TransactionSqlRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ExportPipeline writes transactions to any number of files, each in its own format, in a single pass.
+ *
+ * Transactions are handed to every target as soon as they are received, so they can be streamed straight from
+ * the repository without ever being held in memory. The files are only complete after {@link #finish()} is called;
+ * closing the pipeline without finishing it removes whatever has been written.
+ */
+@Log4j2
+public class ExportPipeline implements AutoCloseable {
+    /**
+     * Size of the buffer used when writing to every file
+     */
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Lookup table used to resolve the category path of every transaction
+     */
+    private final CategoryPaths paths;
+
+    /**
+     * Files the transactions are written to
+     */
+    private final List<Target> targets = new ArrayList<>();
+
+    /**
+     * Number of transactions written so far
+     */
+    private int count = 0;
+
+    /**
+     * Marks whether all files have been completed
+     */
+    private boolean finished = false;
+
+    /**
+     * Create a pipeline without any targets
+     * @param paths Lookup table used to resolve categories, or CategoryPaths.EMPTY to export without them
+     */
+    public ExportPipeline(CategoryPaths paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Create a file that receives all transactions written from now on, overwriting it if it exists
+     * @param path Path of the file
+     * @param format Format of the file
+     * @param gzip Compress the file using gzip
+     */
+    public void addTarget(Path path, ExportFormat format, boolean gzip) throws ExportException {
+        this.addTarget(path, format, gzip, false);
+    }
+
+    /**
+     * Create or extend a file that receives all transactions written from now on.
+     *
+     * When appending, the format's header is only written if the file is empty, and aborting the export truncates
+     * the file back to its original size instead of deleting it. Appended gzip files hold one gzip member per
+     * export, which standard tools read as a single stream.
+     * @param path Path of the file
+     * @param format Format of the file, which must be appendable when appending
+     * @param gzip Compress the file using gzip
+     * @param append Add the transactions at the end of the file instead of overwriting it
+     */
+    public void addTarget(Path path, ExportFormat format, boolean gzip, boolean append) throws ExportException {
+        if (append && !format.isAppendable()) {
+            throw new ExportException(format.getTitle() + " files cannot be appended to: " + path);
+        }
+
+        Writer output = null;
+        try {
+            long originalSize = append && Files.exists(path) ? Files.size(path) : -1;
+
+            OutputStream stream = append
+                    ? Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                    : Files.newOutputStream(path);
+            if (gzip) {
+                stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+            }
+            output = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+            TransactionExporter exporter = format.create(output);
+            if (originalSize <= 0) {
+                exporter.begin();
+            }
+
+            targets.add(new Target(path, output, exporter, originalSize));
+            log.info("Exporting {} to {}{}", format.getTitle(), path, append ? " in append mode" : "");
+        } catch (IOException e) {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException closeException) {
+                    log.warn("Failed to close the export file " + path, closeException);
+                }
+            }
+            throw new ExportException("Failed to create the export file " + path, e);
+        }
+    }
+
+    /**
+     * Write a transaction to all targets
+     * @param transaction Transaction to be exported
+     */
+    public void write(Transaction transaction) throws ExportException {
+        String category = transaction.getCategory() != null ? paths.pathOf(transaction.getCategory()) : "";
+
+        for (Target target : targets) {
+            try {
+                target.exporter.write(transaction, category);
+            } catch (IOException e) {
+                throw new ExportException("Failed to write to the export file " + target.path, e);
+            }
+        }
+        count++;
+    }
+
+    /**
+     * Write all transactions to all targets
+     * @param transactions Transactions to be exported
+     * @return Number of transactions written
+     */
+    public int writeAll(Iterable<Transaction> transactions) throws ExportException {
+        int written = 0;
+        for (Transaction transaction : transactions) {
+            this.write(transaction);
+            written++;
+        }
+
+        return written;
+    }
+
+    /**
+     * Stream every transaction stored in the repository to all targets
+     * @param repository Repository holding the transactions
+     * @param categoryRepository Repository used to resolve categories, or null to export without them
+     * @return Number of transactions written
+     */
+    public int writeRepository(TransactionSqlRepository repository, CategorySqlRepository categoryRepository)
+            throws ExportException, RepositoryReadException {
+        return repository.streamAll(categoryRepository, this::write);
+    }
+
+    /**
+     * Complete and close all files. If one of them cannot be completed, the files completed before it are kept and
+     * the others are removed.
+     * @return Number of transactions written to every file
+     */
+    public int finish() throws ExportException {
+        finished = true;
+        for (Target target : targets) {
+            target.closed = true;
+            try (Writer output = target.output) {
+                target.exporter.end();
+            } catch (IOException e) {
+                this.abort();
+                throw new ExportException("Failed to complete the export file " + target.path, e);
+            }
+            target.complete = true;
+        }
+
+        log.info("Exported {} transactions to {} files", count, targets.size());
+        return count;
+    }
+
+    /**
+     * Delete all files if the export has not been finished
+     */
+    @Override
+    public void close() {
+        if (!finished) {
+            finished = true;
+            this.abort();
+        }
+    }
+
+    /**
+     * Close the files that have not been completed and remove what has been written to them, as it might be
+     * incomplete
+     */
+    private void abort() {
+        for (Target target : targets) {
+            if (target.complete) {
+                continue;
+            }
+
+            if (!target.closed) {
+                target.closed = true;
+                try (Writer output = target.output) {
+                    // Lets the exporter release its resources, the file is deleted anyway
+                    target.exporter.end();
+                } catch (IOException e) {
+                    log.debug("Failed to close the export file " + target.path, e);
+                }
+            }
+
+            try {
+                if (target.originalSize > 0) {
+                    // Keep what previous exports have written to the file
+                    try (FileChannel channel = FileChannel.open(target.path, StandardOpenOption.WRITE)) {
+                        channel.truncate(target.originalSize);
+                    }
+                } else {
+                    Files.deleteIfExists(target.path);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to remove the incomplete export from " + target.path, e);
+            }
+        }
+
+        log.warn("Export has been aborted after {} transactions", count);
+    }
+
+    /**
+     * File receiving the exported transactions
+     */
+    private static class Target {
+        /**
+         * Path of the file
+         */
+        private final Path path;
+
+        /**
+         * Buffered stream writing to the file
+         */
+        private final Writer output;
+
+        /**
+         * Exporter formatting the transactions
+         */
+        private final TransactionExporter exporter;
+
+        /**
+         * Size of the file before the export when appending to an existing file, -1 otherwise
+         */
+        private final long originalSize;
+
+        /**
+         * Marks whether the exporter has been ended and the file closed, successfully or not
+         */
+        private boolean closed = false;
+
+        /**
+         * Marks whether the file has been completed and closed successfully, so it is kept even if the export fails
+         */
+        private boolean complete = false;
+
+        private Target(Path path, Writer output, TransactionExporter exporter, long originalSize) {
+            this.path = path;
+            this.output = output;
+            this.exporter = exporter;
+            this.originalSize = originalSize;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ro.mihalea.deerkat.exporter;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.exception.exporter.ExportException;
+import ro.mihalea.deerkat.exception.repository.RepositoryReadException;
+import ro.mihalea.deerkat.exception.repository.RepositoryUpdateException;
+import ro.mihalea.deerkat.repository.CategoryPaths;
+import ro.mihalea.deerkat.repository.CategorySqlRepository;
+import ro.mihalea.deerkat.repository.TransactionSqlRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * IncrementalExporter appends to an export file only the transactions added or changed since the previous export
+ * to the same file.
+ *
+ * The highest change sequence number written to every file is stored in the database, so the work done by an
+ * export is proportional to what changed since the last one. Changed transactions are appended again rather than
+ * replaced, as the formats cannot be edited in place.
+ */
+@Log4j2
+public class IncrementalExporter {
+    /**
+     * Repository holding the transactions and the export marks
+     */
+    private final TransactionSqlRepository repository;
+
+    /**
+     * Repository used to resolve categories, or null to export without them
+     */
+    private final CategorySqlRepository categoryRepository;
+
+    /**
+     * @param repository Repository holding the transactions and the export marks
+     * @param categoryRepository Repository used to resolve categories, or null to export without them
+     */
+    public IncrementalExporter(TransactionSqlRepository repository, CategorySqlRepository categoryRepository) {
+        this.repository = repository;
+        this.categoryRepository = categoryRepository;
+    }
+
+    /**
+     * Export the transactions changed since the previous export to the file. The whole table is exported if the
+     * file has never been exported to or it does not exist anymore.
+     * @param path Path of the file
+     * @param format Format of the file, which must be appendable
+     * @param gzip Compress the file using gzip
+     * @return Number of transactions written
+     */
+    public int export(Path path, ExportFormat format, boolean gzip)
+            throws ExportException, RepositoryReadException, RepositoryUpdateException {
+        String target = path.toAbsolutePath().normalize().toString();
+
+        Optional<Long> mark = repository.getExportMark(target);
+        boolean append = mark.isPresent() && Files.exists(path);
+        long after = append ? mark.get() : -1;
+        // Read the upper bound first, so changes made during the export are picked up by the next one
+        long upTo = repository.getLastModified();
+
+        CategoryPaths paths = categoryRepository != null ? CategoryPaths.load(categoryRepository) : CategoryPaths.EMPTY;
+        int count;
+        try (ExportPipeline pipeline = new ExportPipeline(paths)) {
+            pipeline.addTarget(path, format, gzip, append);
+            count = repository.streamModified(after, upTo, categoryRepository, pipeline::write);
+            pipeline.finish();
+        }
+
+        repository.setExportMark(target, upTo);
+        log.info("Incremental export wrote {} transactions changed after {} to {}", count, after, path);
+
+        return count;
+    }
+}
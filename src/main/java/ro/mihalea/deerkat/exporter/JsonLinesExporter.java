@@ -0,0 +1,93 @@
+package ro.mihalea.deerkat.exporter;
+
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Exporter writing every transaction as a JSON object on its own line
+ */
+class JsonLinesExporter implements TransactionExporter {
+    /**
+     * Stream receiving the exported data
+     */
+    private final Writer output;
+
+    /**
+     * Buffer reused to format every line
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * @param output Stream receiving the exported data
+     */
+    JsonLinesExporter(Writer output) {
+        this.output = output;
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    @Override
+    public void write(Transaction transaction, String categoryPath) throws IOException {
+        line.setLength(0);
+
+        line.append("{\"id\":").append(transaction.getId());
+        line.append(",\"transactionDate\":\"").append(transaction.getTransactionDate()).append('"');
+        line.append(",\"postingDate\":\"").append(transaction.getPostingDate()).append('"');
+        line.append(",\"details\":");
+        appendString(transaction.getDetails());
+        line.append(",\"amount\":").append(TransactionExporter.signedAmount(transaction));
+        line.append(",\"inflow\":").append(transaction.getInflow());
+        line.append(",\"category\":");
+        if (categoryPath.isEmpty()) {
+            line.append("null");
+        } else {
+            appendString(categoryPath);
+        }
+        line.append("}\n");
+
+        output.append(line);
+    }
+
+    @Override
+    public void end() {
+    }
+
+    /**
+     * Append a quoted and escaped JSON string to the line
+     * @param text Text of the string
+     */
+    private void appendString(String text) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
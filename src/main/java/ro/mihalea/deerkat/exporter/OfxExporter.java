@@ -0,0 +1,187 @@
+package ro.mihalea.deerkat.exporter;
+
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Exporter writing an Open Financial Exchange 2.2 bank statement.
+ *
+ * OFX requires the date range and the balance of the statement to be written before the transactions, so the
+ * transactions are spilled to a temporary file while the totals are computed and copied to the output at the end.
+ * This keeps the memory used constant regardless of the number of transactions.
+ */
+class OfxExporter implements TransactionExporter {
+    /**
+     * Date format used by OFX
+     */
+    private final static DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * Currency of all exported transactions, as the statements imported come from UK accounts
+     */
+    private final static String CURRENCY = "GBP";
+
+    /**
+     * Maximum length of the NAME element, longer details are only written in full in the MEMO element
+     */
+    private final static int NAME_LENGTH = 32;
+
+    /**
+     * Stream receiving the exported data
+     */
+    private final Writer output;
+
+    /**
+     * Temporary file holding the transactions until the header can be written
+     */
+    private Path spillPath;
+
+    /**
+     * Stream writing to the temporary file
+     */
+    private BufferedWriter spill;
+
+    /**
+     * Buffer reused to format every transaction
+     */
+    private final StringBuilder element = new StringBuilder(512);
+
+    /**
+     * Earliest posting date exported
+     */
+    private LocalDate first;
+
+    /**
+     * Latest posting date exported
+     */
+    private LocalDate last;
+
+    /**
+     * Sum of all exported amounts, inflows being positive
+     */
+    private BigDecimal balance = BigDecimal.ZERO;
+
+    /**
+     * Number of transactions exported, used to identify the ones without an id
+     */
+    private long count = 0;
+
+    /**
+     * @param output Stream receiving the exported data
+     */
+    OfxExporter(Writer output) {
+        this.output = output;
+    }
+
+    @Override
+    public void begin() throws IOException {
+        spillPath = Files.createTempFile("deerkat-export", ".ofx");
+        spill = Files.newBufferedWriter(spillPath, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void write(Transaction transaction, String categoryPath) throws IOException {
+        count++;
+        LocalDate posted = transaction.getPostingDate();
+        if (first == null || posted.isBefore(first)) {
+            first = posted;
+        }
+        if (last == null || posted.isAfter(last)) {
+            last = posted;
+        }
+
+        String amount = TransactionExporter.signedAmount(transaction);
+        balance = balance.add(new BigDecimal(amount));
+
+        String details = transaction.getDetails();
+        element.setLength(0);
+        element.append("<STMTTRN>\n");
+        element.append("<TRNTYPE>").append(transaction.getInflow() ? "CREDIT" : "DEBIT").append("</TRNTYPE>\n");
+        element.append("<DTPOSTED>");
+        DATE_FORMATTER.formatTo(posted, element);
+        element.append("</DTPOSTED>\n");
+        element.append("<DTUSER>");
+        DATE_FORMATTER.formatTo(transaction.getTransactionDate(), element);
+        element.append("</DTUSER>\n");
+        element.append("<TRNAMT>").append(amount).append("</TRNAMT>\n");
+        element.append("<FITID>").append(transaction.getId() != null ? transaction.getId() : "row" + count)
+                .append("</FITID>\n");
+        element.append("<NAME>");
+        appendEscaped(details.length() > NAME_LENGTH ? details.substring(0, NAME_LENGTH) : details);
+        element.append("</NAME>\n");
+        element.append("<MEMO>");
+        appendEscaped(categoryPath.isEmpty() ? details : details + " (" + categoryPath + ")");
+        element.append("</MEMO>\n");
+        element.append("</STMTTRN>\n");
+
+        spill.append(element);
+    }
+
+    @Override
+    public void end() throws IOException {
+        try {
+            spill.close();
+
+            String start = first != null ? first.format(DATE_FORMATTER) : LocalDate.now().format(DATE_FORMATTER);
+            String end = last != null ? last.format(DATE_FORMATTER) : start;
+
+            output.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+            output.write("<?OFX OFXHEADER=\"200\" VERSION=\"220\" SECURITY=\"NONE\" " +
+                    "OLDFILEUID=\"NONE\" NEWFILEUID=\"NONE\"?>\n");
+            output.write("<OFX>\n<BANKMSGSRSV1>\n<STMTTRNRS>\n<TRNUID>0</TRNUID>\n" +
+                    "<STATUS>\n<CODE>0</CODE>\n<SEVERITY>INFO</SEVERITY>\n</STATUS>\n");
+            output.write("<STMTRS>\n<CURDEF>" + CURRENCY + "</CURDEF>\n");
+            output.write("<BANKACCTFROM>\n<BANKID>deerkat</BANKID>\n<ACCTID>deerkat</ACCTID>\n" +
+                    "<ACCTTYPE>CHECKING</ACCTTYPE>\n</BANKACCTFROM>\n");
+            output.write("<BANKTRANLIST>\n<DTSTART>" + start + "</DTSTART>\n<DTEND>" + end + "</DTEND>\n");
+
+            try (BufferedReader reader = Files.newBufferedReader(spillPath, StandardCharsets.UTF_8)) {
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            }
+
+            output.write("</BANKTRANLIST>\n");
+            output.write("<LEDGERBAL>\n<BALAMT>" + balance.toPlainString() + "</BALAMT>\n" +
+                    "<DTASOF>" + end + "</DTASOF>\n</LEDGERBAL>\n");
+            output.write("</STMTRS>\n</STMTTRNRS>\n</BANKMSGSRSV1>\n</OFX>\n");
+        } finally {
+            Files.deleteIfExists(spillPath);
+        }
+    }
+
+    /**
+     * Append text to the element, escaping the characters reserved by XML
+     * @param text Text to be appended
+     */
+    private void appendEscaped(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    element.append("&lt;");
+                    break;
+                case '>':
+                    element.append("&gt;");
+                    break;
+                case '&':
+                    element.append("&amp;");
+                    break;
+                default:
+                    element.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ro.mihalea.deerkat.exporter;
+
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Exporter writing a bank account in the Quicken Interchange Format
+ */
+class QifExporter implements TransactionExporter {
+    /**
+     * Date format understood by all applications importing QIF
+     */
+    private final static DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+
+    /**
+     * Stream receiving the exported data
+     */
+    private final Writer output;
+
+    /**
+     * Buffer reused to format every record
+     */
+    private final StringBuilder record = new StringBuilder(256);
+
+    /**
+     * @param output Stream receiving the exported data
+     */
+    QifExporter(Writer output) {
+        this.output = output;
+    }
+
+    @Override
+    public void begin() throws IOException {
+        output.write("!Type:Bank\n");
+    }
+
+    @Override
+    public void write(Transaction transaction, String categoryPath) throws IOException {
+        record.setLength(0);
+
+        record.append('D');
+        DATE_FORMATTER.formatTo(transaction.getTransactionDate(), record);
+        record.append('\n');
+        record.append('T').append(TransactionExporter.signedAmount(transaction)).append('\n');
+        record.append('P').append(singleLine(transaction.getDetails())).append('\n');
+        if (!categoryPath.isEmpty()) {
+            // QIF separates sub categories with a colon and no spaces
+            record.append('L').append(singleLine(categoryPath.replace(": ", ":"))).append('\n');
+        }
+        record.append("^\n");
+
+        output.append(record);
+    }
+
+    @Override
+    public void end() {
+    }
+
+    /**
+     * QIF fields end at the end of the line, so any line breaks inside them are replaced by spaces
+     * @param text Text of a field
+     * @return Text on a single line
+     */
+    private static String singleLine(String text) {
+        return text.replace('\r', ' ').replace('\n', ' ');
+    }
+}
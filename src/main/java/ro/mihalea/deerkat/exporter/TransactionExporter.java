@@ -0,0 +1,43 @@
+package ro.mihalea.deerkat.exporter;
+
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Writer of transactions in a specific file format.
+ *
+ * Exporters receive the transactions one at a time and must not hold on to them, so that any number of transactions
+ * can be exported in a single pass.
+ */
+public interface TransactionExporter {
+    /**
+     * Write whatever the format needs before the first transaction
+     */
+    void begin() throws IOException;
+
+    /**
+     * Write a transaction
+     * @param transaction Transaction to be exported
+     * @param categoryPath Category of the transaction in the "Parent: Child" format, or an empty string
+     */
+    void write(Transaction transaction, String categoryPath) throws IOException;
+
+    /**
+     * Write whatever the format needs after the last transaction and release any resources held by the exporter.
+     * The output itself is closed by the caller.
+     */
+    void end() throws IOException;
+
+    /**
+     * Format the amount of a transaction with two decimals and a negative sign for outflows
+     * @param transaction Transaction whose amount is formatted
+     * @return Amount without exponent notation, as expected by financial software
+     */
+    static String signedAmount(Transaction transaction) {
+        BigDecimal amount = BigDecimal.valueOf(transaction.getAmount()).setScale(2, RoundingMode.HALF_UP);
+        return (transaction.getInflow() ? amount : amount.negate()).toPlainString();
+    }
+}
@@ -0,0 +1,45 @@
+package ro.mihalea.deerkat.exporter;
+
+import ro.mihalea.deerkat.model.Transaction;
+import ro.mihalea.deerkat.utility.YnabCsvFormat;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Exporter writing CSV files ready to be imported by YNAB4, which the CSV repository can read back
+ */
+class YnabCsvExporter implements TransactionExporter {
+    /**
+     * Stream receiving the exported data
+     */
+    private final Writer output;
+
+    /**
+     * Buffer reused to format every row
+     */
+    private final StringBuilder row = new StringBuilder(256);
+
+    /**
+     * @param output Stream receiving the exported data
+     */
+    YnabCsvExporter(Writer output) {
+        this.output = output;
+    }
+
+    @Override
+    public void begin() throws IOException {
+        output.write(YnabCsvFormat.HEADERS);
+    }
+
+    @Override
+    public void write(Transaction transaction, String categoryPath) throws IOException {
+        row.setLength(0);
+        YnabCsvFormat.appendRow(transaction, categoryPath, row);
+        output.append(row);
+    }
+
+    @Override
+    public void end() {
+    }
+}
@@ -0,0 +1,398 @@
+package ro.mihalea.deerkat.importer;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * FolderWatcher imports the statements dropped into a folder as soon as they have been completely written.
+ *
+ * The folder is watched on a background thread using a WatchService. A file is only imported once its size and
+ * modification time have stayed the same for a quiet period, so downloads and copies that are still in progress
+ * are not read half way. Statements already in the folder when watching starts are imported as well, the
+ * fingerprints of the importer making sure that files imported before are skipped without being parsed.
+ *
+ * The watcher has no dependency on the user interface and can run headless.
+ */
+@Log4j2
+public class FolderWatcher implements AutoCloseable {
+    /**
+     * Receiver of the results of the automatic imports, notified from the watcher thread
+     */
+    public interface Listener {
+        /**
+         * Called once the transactions of a statement have been stored
+         * @param file Statement file
+         * @param inserted Transactions that have been added to the repository
+         */
+        void stored(Path file, List<Transaction> inserted);
+
+        /**
+         * Called after every group of statements has been imported
+         * @param report Report of the import
+         */
+        void imported(ImportReport report);
+
+        /**
+         * Called when a statement or the folder itself could not be read
+         * @param path File or folder that failed
+         * @param e Reason of the failure
+         */
+        void failed(Path path, Exception e);
+    }
+
+    /**
+     * Extension of the statement files that are imported
+     */
+    private final static String EXTENSION = ".html";
+
+    /**
+     * Time in milliseconds a file has to stay unchanged before it is imported
+     */
+    private final static long QUIET_PERIOD = 2000;
+
+    /**
+     * Time in milliseconds between two checks of the files waiting for their quiet period to end
+     */
+    private final static long POLL_INTERVAL = 500;
+
+    /**
+     * Folder being watched
+     */
+    private final Path folder;
+
+    /**
+     * Importer storing the statements found in the folder
+     */
+    private final StatementImporter importer;
+
+    /**
+     * Receiver of the results of the imports
+     */
+    private final Listener listener;
+
+    /**
+     * Service notified of the changes made to the folder
+     */
+    private WatchService watchService;
+
+    /**
+     * Thread waiting for changes and importing the statements
+     */
+    private Thread thread;
+
+    /**
+     * Latch released once the thread started last has stopped
+     */
+    private CountDownLatch stopped;
+
+    /**
+     * Files that changed recently, with their size and modification time when they were last seen, used by the
+     * watcher thread only
+     */
+    private final Map<Path, FileState> pending = new HashMap<>();
+
+    /**
+     * @param folder Folder being watched
+     * @param importer Importer storing the statements found in the folder
+     * @param listener Receiver of the results of the imports
+     */
+    public FolderWatcher(Path folder, StatementImporter importer, Listener listener) {
+        this.folder = folder.toAbsolutePath().normalize();
+        this.importer = importer;
+        this.listener = listener;
+    }
+
+    /**
+     * Start watching the folder on a background daemon thread
+     * @throws IOException Thrown if the folder cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("The watcher of " + folder + " has already been started");
+        }
+
+        watchService = folder.getFileSystem().newWatchService();
+        folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        stopped = latch;
+        thread = new Thread(() -> this.run(latch), "statement-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for new statements", folder);
+    }
+
+    /**
+     * Stop watching the folder, cancelling the import in progress if there is one
+     */
+    @Override
+    public synchronized void close() {
+        if (thread == null) {
+            return;
+        }
+
+        importer.cancel();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the watch service of " + folder, e);
+        }
+        thread = null;
+        log.info("Stopped watching {}", folder);
+    }
+
+    /**
+     * Wait until the watcher thread stops, either because the watcher has been closed or because the folder cannot
+     * be watched anymore
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        CountDownLatch latch;
+        synchronized (this) {
+            if (stopped == null) {
+                throw new IllegalStateException("The watcher of " + folder + " has not been started");
+            }
+            latch = stopped;
+        }
+
+        latch.await();
+    }
+
+    /**
+     * Return the folder being watched
+     * @return Absolute path of the folder
+     */
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Wait for changes to the folder and import the statements once they have settled, until the watcher is closed
+     * @param stopped Latch released when the thread stops for any reason
+     */
+    private void run(CountDownLatch stopped) {
+        try {
+            this.scanFolder();
+
+            while (!importer.isCancelled()) {
+                WatchKey key = watchService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    this.handleEvents(key);
+                }
+
+                List<Path> ready = this.collectReady();
+                if (!ready.isEmpty()) {
+                    this.importFiles(ready);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            log.debug("Watcher of {} has been stopped", folder);
+        } catch (RuntimeException e) {
+            log.error("Watcher of " + folder + " stopped unexpectedly", e);
+            listener.failed(folder, e);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Queue the statements that are already in the folder
+     */
+    private void scanFolder() {
+        try (Stream<Path> children = Files.list(folder)) {
+            for (Path file : children.filter(this::isStatement).collect(Collectors.toList())) {
+                this.touch(file);
+            }
+        } catch (IOException e) {
+            log.error("Failed to list the statements in " + folder, e);
+            listener.failed(folder, e);
+        }
+    }
+
+    /**
+     * Queue the statements created or modified according to the events of a key
+     * @param key Key signalled by the watch service
+     */
+    private void handleEvents(WatchKey key) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Some events have been lost, so look at the whole folder again
+                log.warn("Missed some changes to {}, scanning it again", folder);
+                this.scanFolder();
+                continue;
+            }
+
+            Path file = folder.resolve((Path) event.context());
+            if (this.isStatement(file)) {
+                this.touch(file);
+            }
+        }
+
+        if (!key.reset()) {
+            log.error("Folder {} cannot be watched anymore", folder);
+            listener.failed(folder, new IOException("Folder " + folder + " cannot be watched anymore"));
+            this.close();
+        }
+    }
+
+    /**
+     * Remember the current size and modification time of a file, restarting its quiet period if it changed
+     * @param file Statement file
+     */
+    private void touch(Path file) {
+        FileState state = FileState.of(file);
+        FileState previous = pending.get(file);
+        if (previous == null || !previous.sameAs(state)) {
+            pending.put(file, state);
+        }
+    }
+
+    /**
+     * Remove and return the files that have not changed during their quiet period
+     * @return Files ready to be imported, sorted by name
+     */
+    private List<Path> collectReady() {
+        long now = System.currentTimeMillis();
+        List<Path> ready = new ArrayList<>();
+
+        Iterator<Map.Entry<Path, FileState>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, FileState> entry = iterator.next();
+            if (now - entry.getValue().seenAt < QUIET_PERIOD) {
+                continue;
+            }
+
+            FileState current = FileState.of(entry.getKey());
+            if (!current.exists) {
+                // The file has been moved away or deleted before it settled
+                iterator.remove();
+            } else if (current.sameAs(entry.getValue())) {
+                iterator.remove();
+                ready.add(entry.getKey());
+            } else {
+                // Still being written without the watch service reporting it, start the quiet period again
+                entry.setValue(current);
+            }
+        }
+
+        Collections.sort(ready);
+        return ready;
+    }
+
+    /**
+     * Import a group of statements, reporting the results to the listener
+     * @param files Statement files that have settled
+     */
+    private void importFiles(List<Path> files) throws InterruptedException {
+        log.info("Importing {} new statements from {}", files.size(), folder);
+        try {
+            ImportReport report = importer.importStatements(files, new StatementImporter.Listener() {
+                @Override
+                public void progress(int completed, int total) {
+                    log.debug("Imported {} out of {} watched statements", completed, total);
+                }
+
+                @Override
+                public void failed(Path file, Exception e) {
+                    listener.failed(file, e);
+                }
+
+                @Override
+                public void stored(Path file, List<Transaction> inserted) {
+                    listener.stored(file, inserted);
+                }
+            });
+
+            listener.imported(report);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            // Keep watching, the statements can be imported again by touching them
+            log.error("Failed to import the statements found in " + folder, e);
+            listener.failed(folder, e);
+        }
+    }
+
+    /**
+     * Checks whether a path is a statement file
+     * @param path Path found in the folder
+     * @return True if the path is a regular file with the statement extension
+     */
+    private boolean isStatement(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(EXTENSION) && !Files.isDirectory(path);
+    }
+
+    /**
+     * Size and modification time of a file when it was last looked at
+     */
+    private static class FileState {
+        /**
+         * Marks whether the file existed
+         */
+        private final boolean exists;
+
+        /**
+         * Size of the file in bytes
+         */
+        private final long size;
+
+        /**
+         * Time the file was last modified, in milliseconds since the epoch
+         */
+        private final long modified;
+
+        /**
+         * Time the state was read, in milliseconds since the epoch
+         */
+        private final long seenAt = System.currentTimeMillis();
+
+        private FileState(boolean exists, long size, long modified) {
+            this.exists = exists;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * Read the current state of a file
+         * @param file File being looked at
+         * @return State of the file, which doesn't exist if it could not be read
+         */
+        private static FileState of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new FileState(true, attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                return new FileState(false, 0, 0);
+            }
+        }
+
+        /**
+         * Checks whether the file is unchanged between two states
+         * @param other State read at another time
+         * @return True if the size and modification time are the same
+         */
+        private boolean sameAs(FileState other) {
+            return exists == other.exists && size == other.size && modified == other.modified;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ro.mihalea.deerkat.importer;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.repository.metrics.StatementStats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Timing statistics of every stage of the import pipeline.
+ *
+ * Every stage records the time spent working on each statement and, separately, the time spent blocked because
+ * the next stage had not caught up yet. Both are registered as MBeans under "ro.mihalea.deerkat:type=Import".
+ */
+@Log4j2
+public class ImportMetrics {
+    /**
+     * Metrics shared by all imports
+     */
+    private final static ImportMetrics INSTANCE = new ImportMetrics();
+
+    /**
+     * Time spent working, with the number of transactions handled
+     */
+    private final Map<ImportStage, StatementStats> work = new EnumMap<>(ImportStage.class);
+
+    /**
+     * Time spent waiting for room in the queue of the next stage
+     */
+    private final Map<ImportStage, StatementStats> blocked = new EnumMap<>(ImportStage.class);
+
+    /**
+     * Create the metrics of every stage and register them over JMX
+     */
+    private ImportMetrics() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ImportStage stage : ImportStage.values()) {
+            work.put(stage, register(server, stage, "work"));
+            blocked.put(stage, register(server, stage, "blocked"));
+        }
+    }
+
+    /**
+     * Return the metrics shared by all imports
+     * @return Import metrics
+     */
+    public static ImportMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Mark the start of some work or of a wait
+     * @return Start time that needs to be passed to {@link #record(ImportStage, long, long)} or
+     * {@link #recordBlocked(ImportStage, long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the work done by a stage on one statement
+     * @param stage Stage that did the work
+     * @param start Start time returned by {@link #start()}
+     * @param rows Number of transactions handled
+     */
+    public void record(ImportStage stage, long start, long rows) {
+        work.get(stage).record(System.nanoTime() - start, rows);
+    }
+
+    /**
+     * Record the time a stage has been blocked by the next one
+     * @param stage Stage that has been blocked
+     * @param start Start time returned by {@link #start()}
+     */
+    public void recordBlocked(ImportStage stage, long start) {
+        blocked.get(stage).record(System.nanoTime() - start, 0);
+    }
+
+    /**
+     * Return the statistics of the work done by a stage
+     * @param stage Stage of the pipeline
+     * @return Statistics of the stage
+     */
+    public StatementStats getWork(ImportStage stage) {
+        return work.get(stage);
+    }
+
+    /**
+     * Return the statistics of the time a stage has been blocked by the next one
+     * @param stage Stage of the pipeline
+     * @return Statistics of the stage
+     */
+    public StatementStats getBlocked(ImportStage stage) {
+        return blocked.get(stage);
+    }
+
+    /**
+     * Create the statistics of one measure of a stage and register them over JMX
+     * @param server Server the statistics are registered with
+     * @param stage Stage being measured
+     * @param measure Name of the measure
+     * @return Statistics of the measure
+     */
+    private static StatementStats register(MBeanServer server, ImportStage stage, String measure) {
+        StatementStats stats = new StatementStats();
+        try {
+            ObjectName name = new ObjectName("ro.mihalea.deerkat:type=Import,stage=" + stage +
+                    ",measure=" + measure);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (JMException e) {
+            log.warn("Failed to register import metrics over JMX for " + stage + " " + measure, e);
+        }
+
+        return stats;
+    }
+}
@@ -0,0 +1,114 @@
+package ro.mihalea.deerkat.importer;
+
+import lombok.Getter;
+import ro.mihalea.deerkat.repository.IngestResult;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of importing a batch of statement files
+ */
+@Getter
+public class ImportReport {
+    /**
+     * Number of statement files found
+     */
+    private final int files;
+
+    /**
+     * Files that could not be parsed, with the reason, in the order they were found
+     */
+    private final Map<Path, Exception> failures;
+
+    /**
+     * Files stored with some rows that failed, which are kept as interrupted imports so that importing them again
+     * retries the failed rows
+     */
+    private final List<Path> incomplete;
+
+    /**
+     * Number of transactions found in more than one statement and only stored once
+     */
+    private final int duplicates;
+
+    /**
+     * Result of storing the parsed transactions
+     */
+    private final IngestResult result;
+
+    /**
+     * Number of transactions given a category that doesn't need the user's confirmation
+     */
+    private final int automaticMatches;
+
+    /**
+     * Number of transactions given a category that needs the user's confirmation
+     */
+    private final int possibleMatches;
+
+    /**
+     * Number of files skipped because they had already been imported
+     */
+    private final int skippedFiles;
+
+    /**
+     * Number of transactions skipped because they were already stored
+     */
+    private final int alreadyStored;
+
+    /**
+     * Marks whether the import has been cancelled before all statements were stored
+     */
+    private final boolean cancelled;
+
+    ImportReport(int files, Map<Path, Exception> failures, List<Path> incomplete, int duplicates, IngestResult result,
+                 int automaticMatches, int possibleMatches, int skippedFiles, int alreadyStored, boolean cancelled) {
+        this.files = files;
+        this.failures = Collections.unmodifiableMap(failures);
+        this.incomplete = Collections.unmodifiableList(incomplete);
+        this.duplicates = duplicates;
+        this.result = result;
+        this.automaticMatches = automaticMatches;
+        this.possibleMatches = possibleMatches;
+        this.skippedFiles = skippedFiles;
+        this.alreadyStored = alreadyStored;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Short summary that can be displayed in the status bar
+     * @return Summary such as "3 out of 5 transactions have been imported from 2 files, 1 file failed"
+     */
+    public String getSummary() {
+        String summary = result.getSummary() + " from " + files + " file" + (files != 1 ? "s" : "");
+
+        if (alreadyStored > 0) {
+            summary += ", " + alreadyStored + " already stored";
+        }
+
+        if (skippedFiles > 0) {
+            summary += ", " + skippedFiles + " file" + (skippedFiles != 1 ? "s" : "") + " already imported";
+        }
+
+        if (automaticMatches + possibleMatches > 0) {
+            summary += ", " + (automaticMatches + possibleMatches) + " categorised";
+        }
+
+        if (!failures.isEmpty()) {
+            summary += ", " + failures.size() + " file" + (failures.size() != 1 ? "s" : "") + " failed";
+        }
+
+        if (!incomplete.isEmpty()) {
+            summary += ", " + incomplete.size() + " file" + (incomplete.size() != 1 ? "s" : "") + " incomplete";
+        }
+
+        if (cancelled) {
+            summary = "Import cancelled: " + summary;
+        }
+
+        return summary;
+    }
+}
@@ -0,0 +1,23 @@
+package ro.mihalea.deerkat.importer;
+
+/**
+ * Stages of the import pipeline, in the order transactions go through them
+ */
+public enum ImportStage {
+    /**
+     * Statement files are read and their transactions extracted
+     */
+    PARSE,
+    /**
+     * Transactions found in more than one statement are dropped
+     */
+    DEDUPE,
+    /**
+     * Categories are assigned to the transactions using the classifier
+     */
+    CLASSIFY,
+    /**
+     * Transactions are stored in the repository
+     */
+    PERSIST
+}
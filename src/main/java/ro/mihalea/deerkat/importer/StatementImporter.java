@@ -0,0 +1,840 @@
+package ro.mihalea.deerkat.importer;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.classifier.AbstractClassifier;
+import ro.mihalea.deerkat.classifier.ConfidenceLevel;
+import ro.mihalea.deerkat.exception.repository.RepositoryCreateException;
+import ro.mihalea.deerkat.exception.repository.RepositoryReadException;
+import ro.mihalea.deerkat.model.ImportCheckpoint;
+import ro.mihalea.deerkat.model.Transaction;
+import ro.mihalea.deerkat.repository.IngestResult;
+import ro.mihalea.deerkat.repository.RowDigest;
+import ro.mihalea.deerkat.repository.TransactionSqlRepository;
+import ro.mihalea.deerkat.utility.HtmlProcessor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * StatementImporter imports any number of statement files and folders in a single action.
+ *
+ * The import is a pipeline of four stages running at the same time: statements are parsed on a bounded pool of
+ * threads, transactions found in more than one statement are dropped, categories are assigned by the classifier
+ * and every statement is stored in a single database transaction, each row being written once with its category.
+ * The stages hand statements to each other through small bounded queues, so a fast stage waits for a slow one
+ * instead of holding every statement in memory. A file that fails to parse is reported and skipped without
+ * stopping the others.
+ *
+ * Every imported file is remembered by the hash of its content, and every stored transaction by the digest of its
+ * natural key. A file that has already been imported is skipped before being parsed, and the known transactions of
+ * an overlapping statement are dropped in memory instead of being sent to the database.
+ *
+ * Large statements are committed in batches, each batch moving a checkpoint stored in the same database transaction.
+ * A cancelled or interrupted import therefore keeps everything committed so far, and importing the file again
+ * resumes after the last committed row.
+ *
+ * ZIP archives are opened as file systems and every statement inside them is imported like a separate file,
+ * streamed straight from the archive without being extracted to disk.
+ */
+@Log4j2
+public class StatementImporter {
+    /**
+     * Receiver of the progress of an import, notified from the pipeline threads
+     */
+    public interface Listener {
+        /**
+         * Called every time a file has gone through the whole pipeline, successfully or not
+         * @param completed Number of files completed so far
+         * @param total Number of files being imported
+         */
+        void progress(int completed, int total);
+
+        /**
+         * Called when a file could not be parsed
+         * @param file File that failed
+         * @param e Reason of the failure
+         */
+        void failed(Path file, Exception e);
+
+        /**
+         * Called once the transactions of a statement have been stored
+         * @param file Statement file
+         * @param inserted Transactions that have been added to the repository, with their ids and categories set
+         */
+        default void stored(Path file, List<Transaction> inserted) {
+        }
+    }
+
+    /**
+     * Extension of the statement files picked up from folders and archives
+     */
+    private final static String EXTENSION = ".html";
+
+    /**
+     * Extension of the archives whose statements are imported
+     */
+    private final static String ARCHIVE_EXTENSION = ".zip";
+
+    /**
+     * Number of statements that can wait between two stages before the earlier stage is blocked
+     */
+    private final static int QUEUE_CAPACITY = 4;
+
+    /**
+     * Time in milliseconds a stage waits on a queue before checking whether the import has been stopped
+     */
+    private final static long POLL_INTERVAL = 100;
+
+    /**
+     * Number of transactions stored in a single database transaction, each commit moving the checkpoint of the file
+     */
+    private final static int COMMIT_BATCH_SIZE = 500;
+
+    /**
+     * Size of the buffer used to hash the statement files
+     */
+    private final static int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Time in milliseconds to wait for the stages to stop after the import has ended
+     */
+    private final static long STOP_TIMEOUT = 10 * POLL_INTERVAL;
+
+    /**
+     * Processor used to parse the statements, which is safe to share between threads
+     */
+    private final HtmlProcessor processor = new HtmlProcessor();
+
+    /**
+     * Metrics of every stage of the pipeline
+     */
+    private final ImportMetrics metrics = ImportMetrics.get();
+
+    /**
+     * Repository storing the imported transactions
+     */
+    private final TransactionSqlRepository repository;
+
+    /**
+     * Classifier assigning categories to the imported transactions, or null to import them without categories
+     */
+    private final AbstractClassifier classifier;
+
+    /**
+     * Maximum number of statements parsed at the same time
+     */
+    private final int parallelism;
+
+    /**
+     * Similarity a match needs to be above for the category to be set
+     */
+    private final int threshold;
+
+    /**
+     * Marks whether the import has been cancelled
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param repository Repository storing the imported transactions
+     * @param parallelism Maximum number of statements parsed at the same time
+     */
+    public StatementImporter(TransactionSqlRepository repository, int parallelism) {
+        this(repository, null, parallelism);
+    }
+
+    /**
+     * @param repository Repository storing the imported transactions
+     * @param classifier Classifier assigning categories to the imported transactions, or null to skip it
+     * @param parallelism Maximum number of statements parsed at the same time
+     */
+    public StatementImporter(TransactionSqlRepository repository, AbstractClassifier classifier, int parallelism) {
+        this(repository, classifier, parallelism, AbstractClassifier.NEED_CONFIRMATION_VALUE);
+    }
+
+    /**
+     * @param repository Repository storing the imported transactions
+     * @param classifier Classifier assigning categories to the imported transactions, or null to skip it
+     * @param parallelism Maximum number of statements parsed at the same time
+     * @param threshold Similarity a match needs to be above for the category to be set, such as
+     *                  {@link AbstractClassifier#AUTOMATIC_MATCH_VALUE} when nobody is going to confirm the matches
+     */
+    public StatementImporter(TransactionSqlRepository repository, AbstractClassifier classifier, int parallelism,
+                             int threshold) {
+        this.repository = repository;
+        this.classifier = classifier;
+        this.parallelism = Math.max(1, parallelism);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Stop the import as soon as possible. Statements that have already been stored are kept, and the importer
+     * cannot be used again afterwards.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether the import has been cancelled
+     * @return True if {@link #cancel()} has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Parse, classify and store all statements. Transactions found in more than one statement are kept from the
+     * statement that is parsed first.
+     * @param paths Statement files, ZIP archives of statements, or folders whose statement files are imported
+     * @param listener Receiver of the progress of the import
+     * @return Report of the import, which only covers the statements stored before a cancellation
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for the statements to be parsed
+     */
+    public ImportReport importStatements(List<Path> paths, Listener listener)
+            throws RepositoryCreateException, RepositoryReadException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Map<Path, Exception> failures = new LinkedHashMap<>();
+        Map<Path, Path> sources = new HashMap<>();
+        List<FileSystem> archives = new ArrayList<>();
+        try {
+            List<Path> files = this.expand(paths, failures, sources, archives, listener);
+            return this.importFiles(files, failures, sources, listener, start);
+        } finally {
+            for (FileSystem archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close the archive " + archive, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the pipeline over the statement files
+     * @param files Statement files
+     * @param failures Receives the files that could not be parsed
+     * @param sources Archive holding every statement read from an archive
+     * @param listener Receiver of the progress of the import
+     * @param start Time the import started, in milliseconds since the epoch
+     * @return Report of the import
+     */
+    private ImportReport importFiles(List<Path> files, Map<Path, Exception> failures, Map<Path, Path> sources,
+                                     Listener listener, long start)
+            throws RepositoryCreateException, RepositoryReadException, InterruptedException {
+        Map<String, Integer> checkpoints = new HashMap<>();
+        for (ImportCheckpoint checkpoint : repository.getCheckpoints()) {
+            checkpoints.put(checkpoint.getHash(), checkpoint.getCommittedRows());
+        }
+
+        Pipeline pipeline = new Pipeline(files, failures, sources, listener,
+                repository.getStatementHashes(), repository.loadRowDigests(), checkpoints);
+        IngestResult result = new IngestResult();
+
+        ExecutorService parsers = this.newPool("statement-parser-", Math.min(parallelism, Math.max(files.size(), 1)));
+        ExecutorService stages = this.newPool("statement-import-", 2);
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                parsers.submit(pipeline.parseTask(i));
+            }
+            Future<?> dedupe = stages.submit(pipeline.stage(pipeline::dedupe));
+            Future<?> classify = stages.submit(pipeline.stage(pipeline::classify));
+
+            // Storing runs on the calling thread, so that repository errors are thrown to the caller
+            pipeline.persist(result);
+            dedupe.get();
+            classify.get();
+        } catch (CancellationException e) {
+            if (pipeline.failure.get() != null) {
+                throw new IllegalStateException("Statement import stopped unexpectedly", pipeline.failure.get());
+            }
+            log.info("Import has been cancelled after {} transactions", result.getTotal());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Statement import stopped unexpectedly", e.getCause());
+        } catch (RepositoryCreateException | RuntimeException | Error e) {
+            pipeline.failure.compareAndSet(null, e);
+            throw e;
+        } finally {
+            parsers.shutdownNow();
+            stages.shutdownNow();
+            // The stages notice they have been stopped within a poll interval, wait for them before reporting.
+            // Parsers are waited for as well, as they may still be reading from an archive that is about to close.
+            if (!stages.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)
+                    || !parsers.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.warn("Import stages did not stop within {} ms", STOP_TIMEOUT);
+            }
+        }
+
+        log.info("Imported {} files in {} ms: {}, {} duplicates across files, {} already stored, {} files skipped, " +
+                        "{} files failed, {} files incomplete", files.size(), System.currentTimeMillis() - start, result,
+                pipeline.duplicates, pipeline.known, pipeline.skipped, failures.size(), pipeline.incomplete.size());
+
+        return new ImportReport(files.size(), failures, pipeline.incomplete, pipeline.duplicates, result,
+                pipeline.automatic.get(), pipeline.needConfirmation.get(), pipeline.skipped, pipeline.known,
+                cancelled);
+    }
+
+    /**
+     * Replace every folder with the statement files directly inside it, and every archive with the statement files
+     * anywhere inside it, sorted by name
+     * @param paths Statement files, archives and folders
+     * @param failures Receives the folders and archives that could not be listed
+     * @param sources Receives the archive holding every statement read from an archive
+     * @param archives Receives the archives opened as file systems, which need to be closed after the import
+     * @param listener Receiver of the failures
+     * @return Statement files, in the order they were given
+     */
+    private List<Path> expand(List<Path> paths, Map<Path, Exception> failures, Map<Path, Path> sources,
+                              List<FileSystem> archives, Listener listener) {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            try {
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> children = Files.list(path)) {
+                        files.addAll(children
+                                .filter(Files::isRegularFile)
+                                .filter(child -> hasExtension(child, EXTENSION))
+                                .sorted()
+                                .collect(Collectors.toList()));
+                    }
+                } else if (hasExtension(path, ARCHIVE_EXTENSION)) {
+                    FileSystem archive = FileSystems.newFileSystem(path, (ClassLoader) null);
+                    archives.add(archive);
+
+                    for (Path root : archive.getRootDirectories()) {
+                        try (Stream<Path> entries = Files.walk(root)) {
+                            List<Path> statements = entries
+                                    .filter(Files::isRegularFile)
+                                    .filter(entry -> hasExtension(entry, EXTENSION))
+                                    .sorted()
+                                    .collect(Collectors.toList());
+                            for (Path statement : statements) {
+                                files.add(statement);
+                                sources.put(statement, path);
+                            }
+                        }
+                    }
+                } else {
+                    files.add(path);
+                }
+            } catch (IOException | ProviderNotFoundException e) {
+                log.error("Failed to list the statements in " + path, e);
+                failures.put(path, e);
+                listener.failed(path, e);
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Checks whether the name of a file ends with an extension, ignoring case
+     * @param path File being checked
+     * @param extension Extension including the dot
+     * @return True if the file has the extension
+     */
+    private static boolean hasExtension(Path path, String extension) {
+        Path name = path.getFileName();
+        return name != null && name.toString().toLowerCase().endsWith(extension);
+    }
+
+    /**
+     * Create a pool of daemon threads
+     * @param prefix Prefix of the names of the threads
+     * @param size Number of threads
+     * @return Thread pool
+     */
+    private ExecutorService newPool(String prefix, int size) {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, prefix + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Compute the SHA-256 of the content of a file
+     * @param file File being hashed
+     * @return Hash in hexadecimal
+     */
+    private static String hash(Path file) throws IOException {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                sha.update(buffer, 0, read);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : sha.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Statement travelling through the pipeline. Every file produces exactly one batch, even if it fails to parse,
+     * so every stage knows when it is done by counting them.
+     */
+    private static class Batch {
+        /**
+         * Statement file
+         */
+        private final Path file;
+
+        /**
+         * SHA-256 of the content of the file, or null if it could not be read
+         */
+        private final String hash;
+
+        /**
+         * Marks whether the file has already been imported, in which case it is not parsed
+         */
+        private final boolean skipped;
+
+        /**
+         * Transactions of the statement still being imported
+         */
+        private List<Transaction> transactions;
+
+        /**
+         * Position in the file of every transaction still being imported
+         */
+        private int[] positions;
+
+        /**
+         * Number of rows in the file, including the ones committed by an earlier import
+         */
+        private final int rows;
+
+        /**
+         * Reason the statement could not be parsed, or null if it has been parsed
+         */
+        private final Exception failure;
+
+        private Batch(Path file, String hash, boolean skipped, List<Transaction> transactions, int offset,
+                      Exception failure) {
+            this.file = file;
+            this.hash = hash;
+            this.skipped = skipped;
+            this.transactions = transactions;
+            this.failure = failure;
+            this.rows = offset + transactions.size();
+
+            this.positions = new int[transactions.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = offset + i;
+            }
+        }
+    }
+
+    /**
+     * Work done by one of the stages running on the stage threads
+     */
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * State of a single import shared by all stages
+     */
+    private class Pipeline {
+        /**
+         * Statement files being imported
+         */
+        private final List<Path> files;
+
+        /**
+         * Files that could not be parsed, written by the dedupe stage only
+         */
+        private final Map<Path, Exception> failures;
+
+        /**
+         * Archive holding every statement read from an archive
+         */
+        private final Map<Path, Path> sources;
+
+        /**
+         * Receiver of the progress of the import
+         */
+        private final Listener listener;
+
+        /**
+         * Hashes of the files already imported, and of the files of this import once they have been hashed
+         */
+        private final Set<String> hashes;
+
+        /**
+         * Digests of the transactions stored before the import started
+         */
+        private final Set<Long> digests;
+
+        /**
+         * Number of rows already committed of the files whose import has been interrupted, by the hash of the file
+         */
+        private final Map<String, Integer> checkpoints;
+
+        /**
+         * Statements parsed and waiting to be deduplicated
+         */
+        private final BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        /**
+         * Statements deduplicated and waiting to be classified
+         */
+        private final BlockingQueue<Batch> unique = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        /**
+         * Statements classified and waiting to be stored
+         */
+        private final BlockingQueue<Batch> classified = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        /**
+         * First unexpected error thrown by any of the stages, which stops all of them
+         */
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        /**
+         * Number of transactions found in more than one statement, written by the dedupe stage only
+         */
+        private volatile int duplicates = 0;
+
+        /**
+         * Number of transactions that were already stored, written by the dedupe stage only
+         */
+        private volatile int known = 0;
+
+        /**
+         * Number of files skipped as they had already been imported, written by the dedupe stage only
+         */
+        private volatile int skipped = 0;
+
+        /**
+         * Files with rows that could not be stored, written by the persist stage only
+         */
+        private final List<Path> incomplete = new ArrayList<>();
+
+        /**
+         * Number of transactions matched with a category that doesn't need confirmation
+         */
+        private final AtomicInteger automatic = new AtomicInteger();
+
+        /**
+         * Number of transactions matched with a category that needs confirmation
+         */
+        private final AtomicInteger needConfirmation = new AtomicInteger();
+
+        private Pipeline(List<Path> files, Map<Path, Exception> failures, Map<Path, Path> sources, Listener listener,
+                         Set<String> hashes, Set<Long> digests, Map<String, Integer> checkpoints) {
+            this.files = files;
+            this.failures = failures;
+            this.sources = sources;
+            this.listener = listener;
+            this.hashes = ConcurrentHashMap.newKeySet();
+            this.hashes.addAll(hashes);
+            this.digests = digests;
+            this.checkpoints = checkpoints;
+        }
+
+        /**
+         * Create the task hashing and parsing a single file and handing it to the dedupe stage. Files that have
+         * already been imported, including earlier copies in this import, are not parsed.
+         * @param index Position of the file
+         * @return Task parsing the file
+         */
+        private Runnable parseTask(int index) {
+            return () -> {
+                Path file = files.get(index);
+                long start = metrics.start();
+                Batch batch;
+                String hash = null;
+                try {
+                    hash = StatementImporter.hash(file);
+                    if (!hashes.add(hash)) {
+                        batch = new Batch(file, hash, true, new ArrayList<>(), 0, null);
+                    } else {
+                        // Resume after the rows committed by an interrupted import of the same file
+                        int committed = checkpoints.getOrDefault(hash, 0);
+                        if (committed > 0) {
+                            log.info("Resuming the import of {} after {} committed rows", file, committed);
+                        }
+
+                        int[] row = new int[1];
+                        List<Transaction> transactions = new ArrayList<>();
+                        processor.streamTransactions(file, transaction -> {
+                            this.checkRunning();
+                            if (row[0]++ >= committed) {
+                                transactions.add(transaction);
+                            }
+                        });
+                        batch = new Batch(file, hash, false, transactions, Math.min(committed, row[0]), null);
+                    }
+                } catch (CancellationException e) {
+                    return;
+                } catch (Exception e) {
+                    // The file has not been imported, so another copy of it in this import must not be skipped
+                    if (hash != null) {
+                        hashes.remove(hash);
+                    }
+                    batch = new Batch(file, hash, false, new ArrayList<>(), 0, e);
+                } catch (Error e) {
+                    // No batch reaches the next stages, which would otherwise wait for it forever
+                    failure.compareAndSet(null, e);
+                    throw e;
+                }
+                metrics.record(ImportStage.PARSE, start, batch.transactions.size());
+
+                try {
+                    this.put(ImportStage.PARSE, parsed, batch);
+                } catch (CancellationException | InterruptedException e) {
+                    log.debug("Parsing of {} has been stopped", file);
+                }
+            };
+        }
+
+        /**
+         * Wrap a stage so that any unexpected error stops the whole pipeline
+         * @param stage Work done by the stage
+         * @return Task running the stage
+         */
+        private Runnable stage(Stage stage) {
+            return () -> {
+                try {
+                    stage.run();
+                } catch (CancellationException | InterruptedException e) {
+                    log.debug("Import stage has been stopped");
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                    throw e;
+                }
+            };
+        }
+
+        /**
+         * Drop the transactions that are already stored or have already been found in an earlier statement, and
+         * report the files that could not be parsed
+         */
+        private void dedupe() throws InterruptedException {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i < files.size(); i++) {
+                Batch batch = this.take(parsed);
+                long start = metrics.start();
+
+                if (batch.failure != null) {
+                    log.error("Failed to parse the statement " + batch.file, batch.failure);
+                    failures.put(batch.file, batch.failure);
+                    listener.failed(batch.file, batch.failure);
+                } else if (batch.skipped) {
+                    log.info("Skipped the statement {} as it has already been imported", batch.file);
+                    skipped++;
+                }
+
+                List<Transaction> transactions = new ArrayList<>(batch.transactions.size());
+                int[] positions = new int[batch.transactions.size()];
+                for (int row = 0; row < batch.transactions.size(); row++) {
+                    Transaction transaction = batch.transactions.get(row);
+                    long digest = RowDigest.of(transaction);
+                    if (digests.contains(digest)) {
+                        known++;
+                    } else if (seen.add(digest)) {
+                        positions[transactions.size()] = batch.positions[row];
+                        transactions.add(transaction);
+                    } else {
+                        duplicates++;
+                    }
+                }
+                batch.transactions = transactions;
+                batch.positions = Arrays.copyOf(positions, transactions.size());
+
+                metrics.record(ImportStage.DEDUPE, start, transactions.size());
+                this.put(ImportStage.DEDUPE, unique, batch);
+            }
+        }
+
+        /**
+         * Assign the best category to every outflow without one. Inflows are left alone as their category
+         * is generated when they are displayed.
+         */
+        private void classify() throws InterruptedException {
+            for (int i = 0; i < files.size(); i++) {
+                Batch batch = this.take(unique);
+                long start = metrics.start();
+
+                if (classifier != null) {
+                    for (Transaction transaction : batch.transactions) {
+                        this.checkRunning();
+                        if (transaction.getCategory() != null || transaction.getInflow()) {
+                            continue;
+                        }
+
+                        ConfidenceLevel level = classifier.classify(transaction, threshold);
+                        if (level == ConfidenceLevel.PRETTY_SURE) {
+                            automatic.incrementAndGet();
+                        } else if (level == ConfidenceLevel.NEED_CONFIRMATION) {
+                            needConfirmation.incrementAndGet();
+                        }
+                    }
+                }
+
+                metrics.record(ImportStage.CLASSIFY, start, batch.transactions.size());
+                this.put(ImportStage.CLASSIFY, classified, batch);
+            }
+        }
+
+        /**
+         * Store every statement in batches, each batch in its own database transaction along with the checkpoint of
+         * the file, adding the certain matches to the classifier's model once they have an id. The import can be
+         * cancelled between two batches.
+         * @param result Receives the outcome of every stored transaction
+         */
+        private void persist(IngestResult result) throws RepositoryCreateException, InterruptedException {
+            for (int completed = 1; completed <= files.size(); completed++) {
+                Batch batch = this.take(classified);
+
+                // Parsed files are remembered even if all their transactions were known, failed ones never are
+                if (!batch.skipped && batch.failure == null) {
+                    int size = batch.transactions.size();
+                    int from = 0;
+                    // Position of the first row of the file that failed to be stored, which the checkpoint stays at
+                    int failedAt = -1;
+                    boolean complete;
+                    do {
+                        long start = metrics.start();
+                        int to = Math.min(from + COMMIT_BATCH_SIZE, size);
+                        complete = to == size;
+                        // Rows dropped after the last stored one are known already, so they don't need to be covered
+                        int position = complete ? batch.rows : batch.positions[to - 1] + 1;
+                        int[] positions = Arrays.copyOfRange(batch.positions, from, to);
+
+                        IngestResult ingest = repository.ingestStatement(batch.hash, batch.file,
+                                sources.getOrDefault(batch.file, batch.file), batch.transactions.subList(from, to),
+                                positions, failedAt >= 0 ? failedAt : position, complete && failedAt < 0);
+                        int failed = ingest.getOutcomes().indexOf(IngestResult.Outcome.FAILED);
+                        if (failedAt < 0 && failed >= 0) {
+                            failedAt = positions[failed];
+                        }
+                        result.addAll(ingest);
+                        this.stored(batch.file, ingest.getInserted());
+
+                        metrics.record(ImportStage.PERSIST, start, to - from);
+                        from = to;
+                        if (!complete) {
+                            this.checkRunning();
+                        }
+                    } while (!complete);
+
+                    if (failedAt >= 0) {
+                        log.warn("Some rows of {} could not be stored, importing it again retries them from row {}",
+                                batch.file, failedAt);
+                        incomplete.add(batch.file);
+                    }
+                }
+
+                listener.progress(completed, files.size());
+            }
+        }
+
+        /**
+         * Train the classifier with the certain matches that have just been stored and notify the listener
+         * @param file Statement file
+         * @param inserted Transactions that have been added to the repository
+         */
+        private void stored(Path file, List<Transaction> inserted) {
+            if (inserted.isEmpty()) {
+                return;
+            }
+
+            if (classifier != null) {
+                for (Transaction transaction : inserted) {
+                    if (transaction.getConfidenceLevel() == ConfidenceLevel.PRETTY_SURE) {
+                        classifier.addModelItem(transaction);
+                    }
+                }
+            }
+
+            listener.stored(file, inserted);
+        }
+
+        /**
+         * Wait for the next statement, giving up if the import is stopped
+         * @param queue Queue filled by the previous stage
+         * @return Next statement
+         * @throws CancellationException Thrown if the import has been cancelled or another stage has failed
+         */
+        private Batch take(BlockingQueue<Batch> queue) throws InterruptedException {
+            while (true) {
+                this.checkRunning();
+                Batch batch = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    return batch;
+                }
+            }
+        }
+
+        /**
+         * Hand a statement to the next stage, waiting for room in its queue and giving up if the import is stopped
+         * @param stage Stage handing over the statement
+         * @param queue Queue read by the next stage
+         * @param batch Statement handed over
+         * @throws CancellationException Thrown if the import has been cancelled or another stage has failed
+         */
+        private void put(ImportStage stage, BlockingQueue<Batch> queue, Batch batch) throws InterruptedException {
+            long start = metrics.start();
+            try {
+                while (!queue.offer(batch, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    this.checkRunning();
+                }
+            } finally {
+                metrics.recordBlocked(stage, start);
+            }
+        }
+
+        /**
+         * Stop the calling stage if the import has been cancelled or another stage has failed
+         * @throws CancellationException Thrown if the stage needs to stop
+         */
+        private void checkRunning() {
+            if (cancelled || failure.get() != null) {
+                throw new CancellationException();
+            }
+        }
+    }
+}
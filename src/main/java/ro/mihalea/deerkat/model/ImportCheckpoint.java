@@ -0,0 +1,30 @@
+package ro.mihalea.deerkat.model;
+
+import lombok.*;
+
+/**
+ * Progress of a statement file whose import has been interrupted
+ */
+@Builder
+@Data
+public class ImportCheckpoint {
+    /**
+     * SHA-256 of the content of the file, in hexadecimal
+     */
+    private @NonNull String hash;
+
+    /**
+     * Absolute path of the file when it was imported
+     */
+    private @NonNull String path;
+
+    /**
+     * Number of rows at the start of the file that have been stored
+     */
+    private @NonNull Integer committedRows;
+
+    /**
+     * Time the checkpoint was last moved, in milliseconds since the epoch
+     */
+    private @NonNull Long updatedAt;
+}
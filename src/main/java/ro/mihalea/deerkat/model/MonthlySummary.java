@@ -0,0 +1,37 @@
+package ro.mihalea.deerkat.model;
+
+import lombok.*;
+
+import java.time.YearMonth;
+
+/**
+ * Total and number of transactions in one category during one month
+ */
+@Builder
+@Data
+public class MonthlySummary {
+    /**
+     * Month the transactions were made in
+     */
+    private @NonNull YearMonth month;
+
+    /**
+     * Id of the category the transactions are part of, or null for transactions without a category
+     */
+    private Long categoryId;
+
+    /**
+     * True if the summary covers inflow transactions
+     */
+    private @NonNull Boolean inflow;
+
+    /**
+     * Sum of the amounts of all transactions
+     */
+    private @NonNull Double total;
+
+    /**
+     * Number of transactions
+     */
+    private @NonNull Integer count;
+}
@@ -5,7 +5,7 @@ import ro.mihalea.deerkat.classifier.ConfidenceLevel;
 
 import java.time.LocalDate;
 
-@Builder
+@Builder(toBuilder = true)
 @Data
 public class Transaction {
     /**
@@ -5,29 +5,22 @@ import ro.mihalea.deerkat.exception.repository.RepositoryConnectionException;
 import ro.mihalea.deerkat.exception.repository.RepositoryCreateException;
 import ro.mihalea.deerkat.exception.repository.RepositoryDeleteException;
 import ro.mihalea.deerkat.exception.repository.RepositoryInitialisationException;
+import ro.mihalea.deerkat.repository.metrics.RepositoryMetrics;
+import ro.mihalea.deerkat.repository.metrics.StatementKind;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.Key;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Log4j2
 public abstract class AbstractSqlRepository<DataType> implements IRepository<DataType>{
-    /**
-     * Path of the configuration file used to initialise the database
-     */
-    private final static String INITIALISATION_FILE = "configuration.sql";
-
     /**
      * Default path of the database that repositories will use
      */
@@ -38,6 +31,50 @@ public abstract class AbstractSqlRepository<DataType> implements IRepository<Dat
      */
     protected static Connection connection;
 
+    /**
+     * Path of the database file behind the connection
+     */
+    static String databasePath;
+
+    /**
+     * Marks whether the schema migrations have already been run for the current connection
+     */
+    private static boolean migrated = false;
+
+    /**
+     * Lock held by every operation using the shared connection. Transactions keep it until they commit, so that
+     * statements from other threads can't end up inside them or see the connection while autocommit is off.
+     */
+    protected final static Object CONNECTION_LOCK = new Object();
+
+    /**
+     * Unit of work that runs against the connection and may fail with an SQL error
+     * @param <ResultType> Type of the value produced by the work
+     */
+    @FunctionalInterface
+    protected interface SqlWork<ResultType> {
+        ResultType run() throws SQLException;
+    }
+
+    /**
+     * Binds the fields of an item to the parameters of a prepared statement
+     * @param <ItemType> Type of the items being bound
+     */
+    @FunctionalInterface
+    protected interface Binder<ItemType> {
+        void bind(PreparedStatement statement, ItemType item) throws SQLException;
+    }
+
+    /**
+     * Primary result code SQLite reports when a row breaks a constraint
+     */
+    private final static int SQLITE_CONSTRAINT = 19;
+
+    /**
+     * Timing statistics of the operations run by this repository
+     */
+    protected final RepositoryMetrics metrics = RepositoryMetrics.of(getClass().getSimpleName());
+
     /**
      * Default constructor that uses the default database file
      * @throws RepositoryConnectionException
@@ -52,61 +89,141 @@ public abstract class AbstractSqlRepository<DataType> implements IRepository<Dat
      * @throws RepositoryConnectionException Failed to connect to the repository
      */
     public AbstractSqlRepository(String path) throws RepositoryConnectionException {
-        try {
-            // If the database file does not exists the initialisation method needs to be run
-            boolean newDatabase = Files.notExists(Paths.get(path));
+        synchronized (CONNECTION_LOCK) {
+            try {
+                if(connection == null) {
+                    connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+                    databasePath = path;
+                }
 
-            if(connection == null) {
-                connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+                // Bring both new and existing databases up to the latest schema version
+                if(!migrated) {
+                    new SchemaMigrator(connection).migrate();
+                    migrated = true;
+                }
+                log.info("Successfully connected to the repository at {}", path);
+            } catch (SQLException | RepositoryInitialisationException e) {
+                throw new RepositoryConnectionException("Failed to connect to the local repository", e);
+            }
+        }
+    }
+
+    /**
+     * Run the work inside a single transaction, committing it if it succeeds and rolling it back otherwise.
+     *
+     * If a transaction is already open on this thread the work simply joins it, so that the outermost caller
+     * decides when to commit.
+     * @param work Statements that need to be executed atomically
+     * @return Value returned by the work
+     */
+    protected static <ResultType> ResultType inTransaction(SqlWork<ResultType> work) throws SQLException {
+        synchronized (CONNECTION_LOCK) {
+            if (!connection.getAutoCommit()) {
+                return work.run();
             }
 
-            if(newDatabase) {
-                this.initialiseDatabase();
+            connection.setAutoCommit(false);
+            try {
+                ResultType result = work.run();
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
-            log.info("Successfully connected to the repository at {}", path);
-        } catch (SQLException | RepositoryInitialisationException e) {
-            throw new RepositoryConnectionException("Failed to connect to the local repository", e);
         }
     }
 
     /**
-     * Create tables in the repository according to the initialisation file
+     * Run an update statement for every item as a single batch, inside the transaction of the caller.
+     *
+     * If the batch fails, its changes are rolled back to a savepoint and the rows are run one by one, so that a row
+     * breaking a constraint is reported on its own instead of failing the whole batch. Any other error is thrown, as
+     * it would fail the other rows as well.
+     * @param sql Update statement
+     * @param items Items that need to be updated
+     * @param binder Binds the fields of an item to the parameters of the statement
+     * @return Items that didn't match any row or broke a constraint
      */
-    private void initialiseDatabase() throws RepositoryInitialisationException {
-        try {
-            log.debug("Initialising database from " + INITIALISATION_FILE);
-            InputStream stream = getClass().getClassLoader().getResourceAsStream(INITIALISATION_FILE);
-            // Abort initialisation if the initialisation file could not be found
-            if(stream == null) {
-                throw new RepositoryInitialisationException("Failed to retrieve the repository initialisation file");
-            }
+    protected static <ItemType> List<ItemType> executeUpdates(String sql, List<ItemType> items, Binder<ItemType> binder)
+            throws SQLException {
+        List<ItemType> failed = new ArrayList<>();
+        Savepoint savepoint = connection.setSavepoint();
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-            String content = reader.lines().collect(Collectors.joining());
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (ItemType item : items) {
+                binder.bind(statement, item);
+                statement.addBatch();
+            }
 
-            // Split the content based on the ";" which marks a statement's end
-            String[] statements = content.split(";");
+            int[] counts = statement.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    failed.add(items.get(i));
+                }
+            }
 
-            // Ignore empty strings that may appear when splitting
-            List<String> validStatements = Arrays.stream(statements)
-                    .map(String::trim)
-                    .filter(s -> !s.isEmpty())
-                    .collect(Collectors.toList());
+            connection.releaseSavepoint(savepoint);
+            return failed;
+        } catch (BatchUpdateException e) {
+            log.warn("Batch of " + items.size() + " updates failed, running them one by one", e);
+            connection.rollback(savepoint);
+        }
 
-            log.debug("Running {} configuration statements", validStatements.size());
-            // Execute every statement identified
-            for(String statementString : validStatements) {
-                log.debug("Executing: " + statementString);
-                Statement statement = connection.createStatement();
-                statement.executeUpdate(statementString);
-                statement.close();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (ItemType item : items) {
+                binder.bind(statement, item);
+                try {
+                    if (statement.executeUpdate() == 0) {
+                        failed.add(item);
+                    }
+                } catch (SQLException e) {
+                    // SQLite only undoes the failing statement, the earlier rows of the transaction are kept
+                    if ((e.getErrorCode() & 0xFF) != SQLITE_CONSTRAINT) {
+                        throw e;
+                    }
+                    log.warn("Update of " + item + " broke a constraint", e);
+                    failed.add(item);
+                }
             }
-        } catch (SQLException e) {
-            throw new RepositoryInitialisationException("Failed to add one of the configuration statements", e);
         }
+
+        connection.releaseSavepoint(savepoint);
+        return failed;
     }
 
+    /**
+     * Replace the database file with another one and reconnect, so that all repositories start using the new data.
+     *
+     * The replacement is migrated to the latest schema version on its own connection first, as it may have been
+     * created by an older version of the application, so a failure leaves the live database untouched. It is then
+     * moved over the live file in a single rename while no statement can run, and the connection is reopened even if
+     * the move fails.
+     * @param replacement Database file next to the live one that replaces it, which is moved away in the process
+     */
+    static void swapDatabase(Path replacement) throws SQLException, IOException, RepositoryInitialisationException {
+        try (Connection migrating = DriverManager.getConnection("jdbc:sqlite:" + replacement)) {
+            new SchemaMigrator(migrating).migrate();
+        }
 
+        synchronized (CONNECTION_LOCK) {
+            connection.close();
+            try {
+                try {
+                    Files.move(replacement, Paths.get(databasePath), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    log.warn("The database file cannot be replaced atomically, moving it instead", e);
+                    Files.move(replacement, Paths.get(databasePath), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                connection = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+            }
+            log.info("Swapped the live database with {}", replacement);
+        }
+    }
 
     /**
      * From a statement run with RETURN_GENERATED_KEY, extract the key as an optional and return it
@@ -138,13 +255,19 @@ public abstract class AbstractSqlRepository<DataType> implements IRepository<Dat
      * @param tableName Name of the table which is emptied. Should not accept user input as this is not a prepared statement.
      */
     protected void nukeTable(String tableName) throws RepositoryDeleteException {
-        try {
-            String queryString = "DELETE FROM " + tableName;
-            Statement statement = connection.createStatement();
-            statement.executeUpdate(queryString);
-            log.info("Table '{}' has been nuked", tableName);
-        } catch (SQLException e) {
-            throw new RepositoryDeleteException("Failed to delete " + tableName + " table", e);
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            int rows = 0;
+            try {
+                String queryString = "DELETE FROM " + tableName;
+                Statement statement = connection.createStatement();
+                rows = statement.executeUpdate(queryString);
+                log.info("Table '{}' has been nuked", tableName);
+            } catch (SQLException e) {
+                throw new RepositoryDeleteException("Failed to delete " + tableName + " table", e);
+            } finally {
+                metrics.record(StatementKind.NUKE, start, rows);
+            }
         }
     }
 }
@@ -0,0 +1,90 @@
+package ro.mihalea.deerkat.repository;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.exception.repository.RepositoryReadException;
+import ro.mihalea.deerkat.model.Category;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Lookup table from category ids to their "Parent: Child" path as expected by YNAB4.
+ *
+ * The table is built with a single query when an export or import starts, so that converting the rows needs no
+ * database access.
+ */
+@Log4j2
+public class CategoryPaths {
+    /**
+     * Table without any paths, used when categories cannot be resolved
+     */
+    public final static CategoryPaths EMPTY = new CategoryPaths(Collections.emptyMap(), Collections.emptyMap());
+
+    /**
+     * Paths keyed by the id of the sub category
+     */
+    private final Map<Long, String> paths;
+
+    /**
+     * Sub categories keyed by their path
+     */
+    private final Map<String, Category> categories;
+
+    /**
+     * @param paths Paths keyed by the id of the sub category
+     * @param categories Sub categories keyed by their path
+     */
+    private CategoryPaths(Map<Long, String> paths, Map<String, Category> categories) {
+        this.paths = paths;
+        this.categories = categories;
+    }
+
+    /**
+     * Build the path of every sub category stored in the repository
+     * @param repository Repository holding the categories
+     * @return Lookup table of all sub category paths
+     */
+    public static CategoryPaths load(CategorySqlRepository repository) throws RepositoryReadException {
+        List<Category> categories = repository.getAll();
+
+        Map<Long, String> titles = new HashMap<>();
+        for (Category category : categories) {
+            titles.put(category.getId(), category.getTitle());
+        }
+
+        Map<Long, String> paths = new HashMap<>();
+        Map<String, Category> byPath = new HashMap<>();
+        for (Category category : categories) {
+            String parent = category.getParentId() == null ? null : titles.get(category.getParentId());
+            if (parent != null) {
+                String path = parent + ": " + category.getTitle();
+                paths.put(category.getId(), path);
+                byPath.put(path, category);
+            }
+        }
+
+        log.debug("Resolved the paths of {} sub categories", paths.size());
+        return new CategoryPaths(paths, byPath);
+    }
+
+    /**
+     * Return the path of a category
+     * @param category Sub category of a transaction
+     * @return Path of the category, or an empty string if it has no parent
+     */
+    public String pathOf(Category category) {
+        return paths.getOrDefault(category.getId(), "");
+    }
+
+    /**
+     * Find the sub category with the given path
+     * @param path Path in the "Parent: Child" format
+     * @return Sub category with that path, if there is one
+     */
+    public Optional<Category> categoryOf(String path) {
+        return Optional.ofNullable(categories.get(path));
+    }
+}
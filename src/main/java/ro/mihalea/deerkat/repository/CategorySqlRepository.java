@@ -4,6 +4,7 @@ import lombok.extern.log4j.Log4j2;
 import ro.mihalea.deerkat.exception.repository.*;
 import ro.mihalea.deerkat.model.Category;
 import ro.mihalea.deerkat.model.Transaction;
+import ro.mihalea.deerkat.repository.metrics.StatementKind;
 
 import javax.swing.text.html.Option;
 import java.sql.PreparedStatement;
@@ -11,11 +12,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Log4j2
 public class CategorySqlRepository extends AbstractSqlRepository<Category>{
+    /**
+     * Statement used to update every field of a category
+     */
+    private final static String UPDATE_STRING = "UPDATE categories SET parentId = ?, title = ?, hidden = ? WHERE id = ?";
+
     /**
      * Initialise the repository and connect to the local repository at the default file path
      *
@@ -25,116 +32,195 @@ public class CategorySqlRepository extends AbstractSqlRepository<Category>{
         super();
     }
 
+    /**
+     * Initialise the repository and connect to the local repository at the specified file path
+     *
+     * @param path Location of the repository file
+     * @throws RepositoryConnectionException Failed to connect to the repository
+     */
+    public CategorySqlRepository(String path) throws RepositoryConnectionException {
+        super(path);
+    }
+
     @Override
     public Optional<Long> add(Category category) throws RepositoryCreateException {
-        try {
-            String createString = "INSERT INTO category (parentId, title, hidden) VALUES (?, ?, ?)";
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            try {
+                String createString = "INSERT INTO category (parentId, title, hidden) VALUES (?, ?, ?)";
 
-            PreparedStatement statement = connection.prepareStatement(createString, Statement.RETURN_GENERATED_KEYS);
+                PreparedStatement statement = connection.prepareStatement(createString, Statement.RETURN_GENERATED_KEYS);
 
-            statement.setLong(1, category.getParentId());
-            statement.setString(2, category.getTitle());
-            statement.setBoolean(3, category.getHidden());
+                statement.setLong(1, category.getParentId());
+                statement.setString(2, category.getTitle());
+                statement.setBoolean(3, category.getHidden());
 
-            statement.executeUpdate();
+                statement.executeUpdate();
 
-            log.debug("Category added to repository: " + category);
+                log.debug("Category added to repository: " + category);
 
-            return this.extractId(statement);
-        } catch (SQLException e) {
-            throw new RepositoryCreateException("Failed to add category to the database: " + category, e);
+                return this.extractId(statement);
+            } catch (SQLException e) {
+                throw new RepositoryCreateException("Failed to add category to the database: " + category, e);
+            } finally {
+                metrics.record(StatementKind.ADD, start, 1);
+            }
         }
     }
 
     @Override
     public List<Category> getAll() throws RepositoryReadException {
-        List<Category> categories = new ArrayList<>();
-        try {
-            String queryString = "SELECT id, parentId, title, hidden FROM categories";
-            Statement statement = connection.createStatement();
-
-            ResultSet result = statement.executeQuery(queryString);
-
-            int count = 0;
-            while(result.next()) {
-                Long id = result.getLong("id");
-                Long parentId = result.getLong("parentId");
-                // Null columns in the database return 0, so this if is required
-                if(result.wasNull()) {
-                    parentId = null;
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            List<Category> categories = new ArrayList<>();
+            try {
+                String queryString = "SELECT id, parentId, title, hidden FROM categories";
+                Statement statement = connection.createStatement();
+
+                ResultSet result = statement.executeQuery(queryString);
+
+                int count = 0;
+                while(result.next()) {
+                    Long id = result.getLong("id");
+                    Long parentId = result.getLong("parentId");
+                    // Null columns in the database return 0, so this if is required
+                    if(result.wasNull()) {
+                        parentId = null;
+                    }
+                    String title = result.getString("title");
+                    Boolean hidden = result.getBoolean("hidden");
+
+
+                    Category category = Category.builder()
+                            .id(id)
+                            .parentId(parentId)
+                            .title(title)
+                            .hidden(hidden)
+                            .build();
+
+                    if(category != null) {
+                        categories.add(category);
+                        count++;
+                    }
                 }
-                String title = result.getString("title");
-                Boolean hidden = result.getBoolean("hidden");
-
-
-                Category category = Category.builder()
-                        .id(id)
-                        .parentId(parentId)
-                        .title(title)
-                        .hidden(hidden)
-                        .build();
 
-                if(category != null) {
-                    categories.add(category);
-                    count++;
-                }
+                log.info("Database returned {} categories", count);
+            } catch (SQLException e) {
+                throw new RepositoryReadException("Failed to retrieve all categories", e);
+            } finally {
+                metrics.record(StatementKind.GET_ALL, start, categories.size());
             }
 
-            log.info("Database returned {} categories", count);
-        } catch (SQLException e) {
-            throw new RepositoryReadException("Failed to retrieve all categories", e);
+            return categories;
         }
-
-        return categories;
     }
 
     @Override
     public void update(Category category) throws RepositoryUpdateException {
-        try {
-            String update = "UPDATE categories SET parentId = ?, title = ?, hidden = ? WHERE id = ?";
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            try {
+                PreparedStatement statement = connection.prepareStatement(UPDATE_STRING);
+
+                this.bindUpdate(statement, category);
+
+                statement.executeUpdate();
+                log.debug("Category has been updated: {}", category);
+            } catch (SQLException e) {
+                throw new RepositoryUpdateException("Failed to update category " + category, e);
+            } finally {
+                metrics.record(StatementKind.UPDATE, start, 1);
+            }
+        }
+    }
 
-            PreparedStatement statement = connection.prepareStatement(update);
+    /**
+     * Update multiple categories using a single batched statement inside one transaction
+     * @param categories Categories that need to be updated
+     * @return Categories that have never been stored, could not be found in the database or broke a constraint
+     */
+    @Override
+    public List<Category> updateAll(Collection<Category> categories) throws RepositoryUpdateException {
+        long start = metrics.start();
+        int updated = 0;
+        try {
+            List<Category> failed = inTransaction(() -> {
+                List<Category> batched = new ArrayList<>();
+                List<Category> missing = new ArrayList<>();
+
+                for (Category category : categories) {
+                    // Categories that were never stored can't be updated
+                    if (category.getId() == null) {
+                        missing.add(category);
+                    } else {
+                        batched.add(category);
+                    }
+                }
 
-            statement.setLong(1, category.getParentId());
-            statement.setString(2, category.getTitle());
-            statement.setBoolean(3, category.getHidden());
-            statement.setLong(4, category.getId());
+                missing.addAll(executeUpdates(UPDATE_STRING, batched, this::bindUpdate));
+                return missing;
+            });
 
-            statement.executeUpdate();
-            log.debug("Category has been updated: {}", category);
+            updated = categories.size() - failed.size();
+            log.debug("{} out of {} categories have been updated", updated, categories.size());
+            return failed;
         } catch (SQLException e) {
-            throw new RepositoryUpdateException("Failed to update category " + category, e);
+            throw new RepositoryUpdateException("Failed to update " + categories.size() + " categories", e);
+        } finally {
+            metrics.record(StatementKind.UPDATE, start, updated);
         }
     }
 
+    /**
+     * Bind all fields of a category to the parameters of {@link #UPDATE_STRING}
+     * @param statement Statement prepared from {@link #UPDATE_STRING}
+     * @param category Category that needs to be updated
+     */
+    private void bindUpdate(PreparedStatement statement, Category category) throws SQLException {
+        // Top level categories have no parent, so the parent id may be null
+        statement.setObject(1, category.getParentId());
+        statement.setString(2, category.getTitle());
+        statement.setBoolean(3, category.getHidden());
+        statement.setLong(4, category.getId());
+    }
+
     @Override
     public Optional<Category> getById(Long id) throws RepositoryReadException {
-        try {
-            String select = "SELECT parentId, title FROM categories WHERE id = ? LIMIT 1";
-            PreparedStatement statement = connection.prepareStatement(select);
-            statement.setLong(1, id);
-
-            ResultSet resultSet = statement.executeQuery();
-            if(resultSet.next()) {
-                Long parentId = resultSet.getLong("parentId");
-                if(resultSet.wasNull()) {
-                    parentId = null;
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            int rows = 0;
+            try {
+                String select = "SELECT parentId, title, hidden FROM categories WHERE id = ? LIMIT 1";
+                PreparedStatement statement = connection.prepareStatement(select);
+                statement.setLong(1, id);
+
+                ResultSet resultSet = statement.executeQuery();
+                if(resultSet.next()) {
+                    rows = 1;
+                    Long parentId = resultSet.getLong("parentId");
+                    if(resultSet.wasNull()) {
+                        parentId = null;
+                    }
+                    String title = resultSet.getString("title");
+                    Boolean hidden = resultSet.getBoolean("hidden");
+
+                    Category category = Category.builder()
+                            .id(id)
+                            .parentId(parentId)
+                            .title(title)
+                            .hidden(hidden)
+                            .build();
+
+                    return Optional.of(category);
                 }
-                String title = resultSet.getString("title");
-
-                Category category = Category.builder()
-                        .id(id)
-                        .parentId(parentId)
-                        .title(title)
-                        .build();
-
-                return Optional.of(category);
+            } catch (SQLException e) {
+                throw new RepositoryReadException("Failed to get item by id: " + id);
+            } finally {
+                metrics.record(StatementKind.GET_BY_ID, start, rows);
             }
-        } catch (SQLException e) {
-            throw new RepositoryReadException("Failed to get item by id: " + id);
-        }
 
-        return Optional.empty();
+            return Optional.empty();
+        }
     }
 
     @Override
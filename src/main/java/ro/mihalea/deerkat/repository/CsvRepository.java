@@ -2,42 +2,41 @@ package ro.mihalea.deerkat.repository;
 
 import lombok.extern.log4j.Log4j2;
 import ro.mihalea.deerkat.exception.repository.*;
-import ro.mihalea.deerkat.model.Category;
 import ro.mihalea.deerkat.model.Transaction;
-import ro.mihalea.deerkat.utility.LocalDateConverter;
+import ro.mihalea.deerkat.utility.CsvParser;
+import ro.mihalea.deerkat.utility.YnabCsvFormat;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 /**
- * CsvRepository is used to create CSV files and to read from them
+ * CsvRepository is used to read transactions back from CSV files, such as the ones written by the YNAB CSV export
+ *
+ * Rows are identified by their position in the file, the first row after the headers having the id 1. Files are
+ * read as UTF-8, the encoding used by the exporters. The repository is read only, so adding transactions or nuking
+ * it fails without touching the file.
  */
 @Log4j2
 public class CsvRepository implements IRepository<Transaction> {
     /**
-     * Field used to convert LocalDates to and from String
-     */
-    private final LocalDateConverter converter = new LocalDateConverter();
-
-    /**
-     * Path to the CSV file used for writing and reading
+     * Path to the CSV file being read
      */
     private final Path filePath;
 
     /**
-     * Table headers in CSV format containing field names as needed by YNAB4
-     */
-    private final static String HEADERS = "Date,Payee,Category,Memo,Outflow,Inflow" + System.lineSeparator();
-
-    /**
-     * Date formated chosen to be compatible with the YNAB4 application
+     * Byte order mark that may start a UTF-8 file
      */
-    private final String DATE_FORMAT = "dd/MM/yy";
+    private final static int BYTE_ORDER_MARK = '\uFEFF';
 
     /**
      * Category repository used to resolve parent categories' title
@@ -45,42 +44,107 @@ public class CsvRepository implements IRepository<Transaction> {
     private CategorySqlRepository categoryRepository;
 
     /**
-     * Construct the repository and check that the path is valid
+     * Construct the repository and check that the path leads to a readable file
      *
      * @param csvLocation Path to the csv file
      */
     public CsvRepository(Path csvLocation) throws RepositoryInitialisationException {
         this.filePath = csvLocation;
 
-        // Create a new file containing the table header and overwrite any preexisting files
-        try {
-            this.nuke();
-        } catch (RepositoryDeleteException e) {
-            throw new RepositoryInitialisationException("Failed to initialise repository", e);
+        if (!Files.isRegularFile(filePath) || !Files.isReadable(filePath)) {
+            throw new RepositoryInitialisationException("The path provided does not lead to a readable file: " + filePath);
         }
 
         log.info("Initialised CSV Repository");
     }
 
     @Override
-    public Optional<Transaction> getById(Long id) throws RepositoryReadException, UnimplementedMethodException {
-        throw new UnimplementedMethodException("GetById is not implemented");
+    public Optional<Transaction> getById(Long id) throws RepositoryReadException {
+        if (id == null || id < 1) {
+            return Optional.empty();
+        }
+
+        try (Reader reader = this.openReader()) {
+            Optional<Transaction> transaction;
+            while ((transaction = reader.next()).isPresent()) {
+                if (reader.getRow() == id) {
+                    return transaction;
+                }
+            }
+        }
+
+        return Optional.empty();
     }
 
+    /**
+     * CSV files are only read, they are written by the YNAB CSV export
+     */
     @Override
     public Optional<Long> add(Transaction transaction) throws RepositoryCreateException {
+        throw new RepositoryCreateException("The CSV repository is read only: " + filePath);
+    }
+
+    @Override
+    public List<Transaction> getAll() throws RepositoryReadException {
+        List<Transaction> transactions = new ArrayList<>();
+        try (Reader reader = this.openReader()) {
+            Optional<Transaction> transaction;
+            while ((transaction = reader.next()).isPresent()) {
+                transactions.add(transaction.get());
+            }
+        }
+
+        log.info("Read {} transactions from {}", transactions.size(), filePath);
+        return transactions;
+    }
+
+    /**
+     * Open a reading session that parses the rows of the file one at a time
+     * @return Reader that needs to be closed once done
+     */
+    public Reader openReader() throws RepositoryReadException {
+        CategoryPaths paths = CategoryPaths.EMPTY;
+        if (categoryRepository != null) {
+            paths = CategoryPaths.load(categoryRepository);
+        }
+
+        CsvParser parser;
         try {
-            Files.write(filePath, this.toCSV(transaction).getBytes(), StandardOpenOption.APPEND);
-            log.info("Add transaction: " + transaction);
-            return Optional.empty();
+            parser = new CsvParser(this.openUtf8Reader());
         } catch (IOException e) {
-            throw new RepositoryCreateException("Failed to write the transaction to the file: " + transaction, e);
+            throw new RepositoryReadException("Failed to open the CSV file for reading: " + filePath, e);
+        }
+
+        try {
+            return new Reader(parser, paths);
+        } catch (RepositoryReadException e) {
+            try {
+                parser.close();
+            } catch (IOException closeException) {
+                log.warn("Failed to close the CSV file " + filePath, closeException);
+            }
+            throw e;
         }
     }
 
-    @Override
-    public List<Transaction> getAll() throws UnimplementedMethodException {
-        throw new UnimplementedMethodException("getAll is not implemented");
+    /**
+     * Open the file as UTF-8, which is the encoding of the exported files, skipping the byte order mark that
+     * spreadsheet applications may write at its start
+     * @return Reader positioned at the first character of the header
+     */
+    private BufferedReader openUtf8Reader() throws IOException {
+        BufferedReader input = new BufferedReader(new InputStreamReader(Files.newInputStream(filePath),
+                StandardCharsets.UTF_8));
+        try {
+            input.mark(1);
+            if (input.read() != BYTE_ORDER_MARK) {
+                input.reset();
+            }
+            return input;
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
     }
 
     @Override
@@ -88,77 +152,179 @@ public class CsvRepository implements IRepository<Transaction> {
         throw new UnimplementedMethodException("update is not implemented");
     }
 
+    /**
+     * The file is left untouched, as it belongs to whoever gave it to be read
+     */
     @Override
     public void nuke() throws RepositoryDeleteException {
-        try {
-            if (Files.exists(filePath)) {
-                // If the file exists check that it is a regular files, and that it's readable and writeable
-                if (!Files.isRegularFile(filePath)) {
-                    throw new RepositoryDeleteException("The path provided does not lead to a regular file: " + filePath);
-                }
-                if (!Files.isReadable(filePath)) {
-                    throw new RepositoryDeleteException("The path provided does not lead to a readable file: " + filePath);
+        throw new RepositoryDeleteException("The CSV repository is read only: " + filePath);
+    }
+
+    /**
+     * Reading session that parses one row of the file at a time
+     */
+    public class Reader implements AutoCloseable {
+        /**
+         * Parser reading the file
+         */
+        private final CsvParser parser;
+
+        /**
+         * Category paths used to resolve the category of every row
+         */
+        private final CategoryPaths paths;
+
+        /**
+         * Position of the date column
+         */
+        private final int dateColumn;
+
+        /**
+         * Position of the payee column
+         */
+        private final int payeeColumn;
+
+        /**
+         * Position of the category column, or -1 if the file has no categories
+         */
+        private final int categoryColumn;
+
+        /**
+         * Position of the outflow column
+         */
+        private final int outflowColumn;
+
+        /**
+         * Position of the inflow column
+         */
+        private final int inflowColumn;
+
+        /**
+         * Id of the last row returned
+         */
+        private long row = 0;
+
+        /**
+         * Create a session and find the columns in the header of the file, so that files written by other tools
+         * with the columns in another order can be read as well
+         * @param parser Parser positioned at the start of the file
+         * @param paths Category paths used for the whole session
+         */
+        private Reader(CsvParser parser, CategoryPaths paths) throws RepositoryReadException {
+            this.parser = parser;
+            this.paths = paths;
+
+            try {
+                if (!parser.next()) {
+                    throw new RepositoryReadException("The CSV file is empty: " + filePath);
                 }
-                if (!Files.isWritable(filePath)) {
-                    throw new RepositoryDeleteException("The path provided does not lead to a writeable file: " + filePath);
+            } catch (IOException e) {
+                throw new RepositoryReadException("Failed to read the headers of the CSV file: " + filePath, e);
+            }
+
+            this.dateColumn = this.findColumn("Date", true);
+            this.payeeColumn = this.findColumn("Payee", true);
+            this.categoryColumn = this.findColumn("Category", false);
+            this.outflowColumn = this.findColumn("Outflow", true);
+            this.inflowColumn = this.findColumn("Inflow", true);
+        }
+
+        /**
+         * Read the next row of the file
+         * @return Transaction stored on the row, or empty at the end of the file
+         */
+        public Optional<Transaction> next() throws RepositoryReadException {
+            try {
+                do {
+                    if (!parser.next()) {
+                        return Optional.empty();
+                    }
+                } while (parser.isBlank());
+            } catch (IOException e) {
+                throw new RepositoryReadException("Failed to read the CSV file " + filePath + " after row " + row, e);
+            }
+
+            row++;
+            return Optional.of(this.toTransaction());
+        }
+
+        /**
+         * @return Id of the last row returned, which is its position in the file
+         */
+        public long getRow() {
+            return row;
+        }
+
+        /**
+         * Convert the current row of the parser to a transaction
+         * @return Transaction stored on the row
+         */
+        private Transaction toTransaction() throws RepositoryReadException {
+            try {
+                LocalDate date = LocalDate.parse(this.field(dateColumn), YnabCsvFormat.DATE_FORMATTER);
+                String outflow = this.field(outflowColumn);
+                String inflow = this.field(inflowColumn);
+                boolean isInflow = outflow.isEmpty();
+                if (isInflow && inflow.isEmpty()) {
+                    throw new RepositoryReadException("Row on line " + parser.getLine() + " has no amount");
                 }
 
+                Transaction.TransactionBuilder builder = Transaction.builder()
+                        .transactionDate(date)
+                        .postingDate(date)
+                        .details(this.field(payeeColumn))
+                        .amount(Double.parseDouble((isInflow ? inflow : outflow).replace(",", "")))
+                        .inflow(isInflow);
 
-                Files.delete(filePath);
+                if (!isInflow && categoryColumn != -1) {
+                    paths.categoryOf(this.field(categoryColumn)).ifPresent(builder::category);
+                }
+
+                return builder.build();
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new RepositoryReadException("Failed to parse the row on line " + parser.getLine(), e);
             }
-            Files.write(filePath, HEADERS.getBytes());
-            log.info("Created new CSV file at " + filePath.toString());
-        } catch (IOException e) {
-            throw new RepositoryDeleteException("Failed to nuke the database!", e);
         }
-    }
 
-    /**
-     * Convert from a line of CSV containing a transaction to a Transaction object
-     *
-     * @param csv Line of CSV containing a transaction
-     * @return Transaction object parsed from csv
-     */
-    private Transaction fromCSV(String csv) {
-        String[] fields = csv.split(",");
-
-        return Transaction.builder()
-                .postingDate(converter.fromString(fields[0], DATE_FORMAT))
-                .transactionDate(converter.fromString(fields[1], DATE_FORMAT))
-                .details(fields[2])
-                .amount(Double.parseDouble(fields[3])).build();
-    }
+        /**
+         * Return a field of the current row, treating missing trailing fields as empty
+         * @param column Position of the field
+         * @return Contents of the field
+         */
+        private String field(int column) {
+            return column < parser.size() ? parser.get(column).trim() : "";
+        }
 
-    /**
-     * Convert from a Transaction object to a line of CSV
-     *
-     * @param transaction Transaction to be formatted as CSV
-     * @return String in CSV format storing a transaction
-     */
-    private String toCSV(Transaction transaction) {
-        String category = "";
-        try {
-            if(transaction.getInflow()) {
-                category = "Income: Available this month";
-            } else if (categoryRepository != null && transaction.getCategory() != null) {
-                Category subCategory = transaction.getCategory();
-                Optional<Category> parentOptional = categoryRepository.getById(subCategory.getParentId());
-                if (parentOptional.isPresent()) {
-                    category = parentOptional.get().getTitle() + ": " + subCategory.getTitle();
+        /**
+         * Find the position of a column in the header
+         * @param name Name of the column, compared ignoring case
+         * @param required Throw an exception if the column is missing
+         * @return Position of the column, or -1 if it is missing
+         */
+        private int findColumn(String name, boolean required) throws RepositoryReadException {
+            for (int i = 0; i < parser.size(); i++) {
+                if (parser.get(i).trim().equalsIgnoreCase(name)) {
+                    return i;
                 }
             }
-        } catch (RepositoryReadException e) {
-            log.error("Failed to retrieve parent category");
+
+            if (required) {
+                throw new RepositoryReadException("The CSV file has no " + name + " column: " + filePath);
+            }
+            return -1;
         }
 
-        return String.valueOf(converter.toString(transaction.getTransactionDate(), DATE_FORMAT) +
-                "," +
-                transaction.getDetails() +
-                "," +
-                category +
-                "," +
-                String.format(transaction.getInflow() ? ",,%s" : ",%s,", transaction.getAmount()) +
-                System.lineSeparator());
+        /**
+         * Close the file
+         */
+        @Override
+        public void close() throws RepositoryReadException {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                throw new RepositoryReadException("Failed to close the CSV file: " + filePath, e);
+            }
+        }
     }
 
     public Path getFilePath() {
@@ -0,0 +1,95 @@
+package ro.mihalea.deerkat.repository;
+
+import lombok.extern.log4j.Log4j2;
+import org.sqlite.SQLiteConnection;
+import ro.mihalea.deerkat.exception.repository.RepositoryConnectionException;
+import ro.mihalea.deerkat.exception.repository.RepositoryInitialisationException;
+import ro.mihalea.deerkat.exception.repository.RepositoryReadException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * DatabaseSnapshot copies the live database to a snapshot file and restores it, using the SQLite online backup API.
+ *
+ * The copy is made page by page from a separate connection, so the application can keep reading and writing while
+ * a snapshot is taken and the result is always a consistent database. Both operations block the calling thread and
+ * should be run in the background.
+ */
+@Log4j2
+public class DatabaseSnapshot {
+    /**
+     * Listener notified after every step of the copy
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param remaining Number of pages that still need to be copied
+         * @param total Total number of pages in the database
+         */
+        void progress(int remaining, int total);
+    }
+
+    /**
+     * Listener notified of the progress of the copies
+     */
+    private ProgressListener listener = (remaining, total) -> {};
+
+    /**
+     * Copy the live database to a snapshot file, overwriting it if it exists
+     * @param target Path of the snapshot file
+     */
+    public void snapshot(Path target) throws RepositoryReadException {
+        if (AbstractSqlRepository.databasePath == null) {
+            throw new RepositoryReadException("No database is open, so there is nothing to snapshot");
+        }
+
+        long start = System.currentTimeMillis();
+        try (Connection source = DriverManager.getConnection("jdbc:sqlite:" + AbstractSqlRepository.databasePath)) {
+            source.unwrap(SQLiteConnection.class).getDatabase()
+                    .backup("main", target.toAbsolutePath().toString(), listener::progress);
+
+            log.info("Database snapshot written to {} in {} ms", target, System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            throw new RepositoryReadException("Failed to write a database snapshot to " + target, e);
+        }
+    }
+
+    /**
+     * Replace the live database with the contents of a snapshot.
+     *
+     * The snapshot is first restored into a temporary file next to the database, so that a failure leaves the live
+     * database untouched, and then swapped in place of the live database.
+     * @param snapshot Path of the snapshot file
+     */
+    public void restore(Path snapshot) throws RepositoryConnectionException {
+        if (AbstractSqlRepository.databasePath == null) {
+            throw new RepositoryConnectionException("No database is open to be restored",
+                    new IllegalStateException("No repository has been created"));
+        }
+
+        long start = System.currentTimeMillis();
+        Path restored = Paths.get(AbstractSqlRepository.databasePath + ".restore");
+        try {
+            Files.deleteIfExists(restored);
+            try (Connection target = DriverManager.getConnection("jdbc:sqlite:" + restored)) {
+                target.unwrap(SQLiteConnection.class).getDatabase()
+                        .restore("main", snapshot.toAbsolutePath().toString(), listener::progress);
+            }
+
+            AbstractSqlRepository.swapDatabase(restored);
+            log.info("Database restored from {} in {} ms", snapshot, System.currentTimeMillis() - start);
+        } catch (SQLException | IOException | RepositoryInitialisationException e) {
+            throw new RepositoryConnectionException("Failed to restore the database from " + snapshot, e);
+        }
+    }
+
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+}
@@ -4,6 +4,7 @@ import ro.mihalea.deerkat.exception.repository.*;
 import ro.mihalea.deerkat.model.Transaction;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -51,6 +52,24 @@ public interface IRepository<ItemType> {
      */
     void update(ItemType item) throws RepositoryUpdateException, UnimplementedMethodException;
 
+    /**
+     * Update multiple items in the database
+     * @param items Items that need to be updated
+     * @return Items that could not be updated, empty if all updates succeeded
+     */
+    default List<ItemType> updateAll(Collection<ItemType> items) throws RepositoryUpdateException, UnimplementedMethodException {
+        List<ItemType> failed = new ArrayList<>();
+        for(ItemType item : items) {
+            try {
+                this.update(item);
+            } catch (RepositoryUpdateException e) {
+                failed.add(item);
+            }
+        }
+
+        return failed;
+    }
+
     /**
      * Method used for deleting all items from the database
      */
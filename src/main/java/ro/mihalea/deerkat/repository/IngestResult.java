@@ -0,0 +1,115 @@
+package ro.mihalea.deerkat.repository;
+
+import lombok.Getter;
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a bulk ingest, holding the outcome of every row in the order the rows were given
+ */
+public class IngestResult {
+    /**
+     * Outcome of a single row of a bulk ingest
+     */
+    public enum Outcome {
+        /**
+         * The row has been added to the repository
+         */
+        INSERTED,
+        /**
+         * The row was already stored in the repository and has been skipped
+         */
+        DUPLICATE,
+        /**
+         * The row could not be stored because of an error
+         */
+        FAILED
+    }
+
+    /**
+     * Outcome of every row, in the same order as the ingested rows
+     */
+    @Getter
+    private final List<Outcome> outcomes = new ArrayList<>();
+
+    /**
+     * Rows that have been inserted, with their ids set
+     */
+    @Getter
+    private final List<Transaction> inserted = new ArrayList<>();
+
+    /**
+     * Number of rows for every outcome
+     */
+    private final Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+
+    /**
+     * Record the outcome of the next row
+     * @param transaction Row that has been ingested
+     * @param outcome Outcome of the row
+     */
+    void record(Transaction transaction, Outcome outcome) {
+        outcomes.add(outcome);
+        counts.merge(outcome, 1, Integer::sum);
+
+        if (outcome == Outcome.INSERTED) {
+            inserted.add(transaction);
+        }
+    }
+
+    /**
+     * Append the outcomes of another ingest, as if its rows had been ingested after the rows of this one
+     * @param other Result of the other ingest
+     */
+    public void addAll(IngestResult other) {
+        outcomes.addAll(other.outcomes);
+        inserted.addAll(other.inserted);
+        other.counts.forEach((outcome, count) -> counts.merge(outcome, count, Integer::sum));
+    }
+
+    /**
+     * Return the number of rows that had the given outcome
+     * @param outcome Outcome of the rows
+     * @return Number of rows
+     */
+    public int getCount(Outcome outcome) {
+        return counts.getOrDefault(outcome, 0);
+    }
+
+    /**
+     * Return the total number of rows ingested
+     * @return Number of rows
+     */
+    public int getTotal() {
+        return outcomes.size();
+    }
+
+    /**
+     * Short summary of the counts that can be displayed in the status bar
+     * @return Summary such as "3 out of 5 transactions have been imported, 2 duplicates skipped"
+     */
+    public String getSummary() {
+        String summary = getCount(Outcome.INSERTED) + " out of " + getTotal() + " transactions have been imported";
+
+        if (getCount(Outcome.DUPLICATE) > 0) {
+            summary += ", " + getCount(Outcome.DUPLICATE) + " duplicate" +
+                    (getCount(Outcome.DUPLICATE) != 1 ? "s" : "") + " skipped";
+        }
+
+        if (getCount(Outcome.FAILED) > 0) {
+            summary += ", " + getCount(Outcome.FAILED) + " failed";
+        }
+
+        return summary;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestResult" + Collections.unmodifiableMap(counts);
+    }
+}
@@ -0,0 +1,62 @@
+package ro.mihalea.deerkat.repository;
+
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+
+/**
+ * RowDigest reduces the natural key of a transaction, the same columns as the unique constraint of the transactions
+ * table, to a 64 bit number that can be kept in memory for every stored row.
+ *
+ * The digest is the start of the SHA-256 of the key, with amounts taken in hundredths like they are stored, so
+ * a collision between two different transactions is astronomically unlikely.
+ */
+public final class RowDigest {
+    /**
+     * SHA-256 instance of every thread, as MessageDigest is not thread safe
+     */
+    private final static ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+    });
+
+    private RowDigest() {
+    }
+
+    /**
+     * Compute the digest of a transaction
+     * @param transaction Transaction being identified
+     * @return Digest of its natural key
+     */
+    public static long of(Transaction transaction) {
+        return of(transaction.getTransactionDate(), transaction.getPostingDate(), transaction.getDetails(),
+                transaction.getAmount());
+    }
+
+    /**
+     * Compute the digest of the natural key of a transaction
+     * @param transactionDate Date when the transaction was received by the bank
+     * @param postingDate Date when the transaction was processed by the bank
+     * @param details Details attached to the transaction
+     * @param amount Amount of money transferred
+     * @return Digest of the key
+     */
+    static long of(LocalDate transactionDate, LocalDate postingDate, String details, double amount) {
+        byte[] text = details.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer key = ByteBuffer.allocate(3 * Long.BYTES + text.length);
+        key.putLong(transactionDate.toEpochDay());
+        key.putLong(postingDate.toEpochDay());
+        key.putLong(Math.round(amount * 100));
+        key.put(text);
+
+        MessageDigest sha = SHA_256.get();
+        return ByteBuffer.wrap(sha.digest(key.array())).getLong();
+    }
+}
@@ -0,0 +1,203 @@
+package ro.mihalea.deerkat.repository;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.exception.repository.RepositoryInitialisationException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SchemaMigrator brings the database schema up to date by running, in order, every migration script that has not
+ * been applied yet. Applied versions are recorded in the schema_version table.
+ */
+@Log4j2
+class SchemaMigrator {
+    /**
+     * Folder on the classpath holding the migration scripts
+     */
+    private final static String MIGRATION_FOLDER = "migrations/";
+
+    /**
+     * Ordered list of migration scripts, the version of a script being its position in the array starting from 1.
+     * New scripts must only ever be appended to the end of the list.
+     */
+    private final static String[] MIGRATIONS = new String[] {
+            "001-initial.sql",
+            "002-integer-columns.sql",
+            "003-monthly-summary.sql",
+            "004-details-search.sql",
+            "005-incremental-export.sql",
+            "006-statement-fingerprints.sql",
+            "007-import-checkpoints.sql",
+            "008-modified-update-guard.sql"
+    };
+
+    /**
+     * Connection to the database that needs to be migrated
+     */
+    private final Connection connection;
+
+    /**
+     * Create a migrator for the database behind the connection
+     * @param connection Open connection to the database
+     */
+    SchemaMigrator(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Run all pending migrations in a single transaction, rolling everything back if one of them fails
+     */
+    void migrate() throws RepositoryInitialisationException {
+        long start = System.currentTimeMillis();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                int version = this.currentVersion();
+                log.debug("Database schema is at version {} out of {}", version, MIGRATIONS.length);
+
+                for (int i = version; i < MIGRATIONS.length; i++) {
+                    this.apply(i + 1, MIGRATIONS[i]);
+                }
+
+                connection.commit();
+            } catch (SQLException | RepositoryInitialisationException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RepositoryInitialisationException("Failed to migrate the database schema", e);
+        }
+
+        log.info("Database schema is up to date after {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Return the latest schema version applied to the database.
+     *
+     * Databases created before versioning was introduced have no schema_version table but already contain the
+     * initial schema, so they are marked as being at version 1 instead of running the initial script again.
+     * @return Latest schema version, or 0 for an empty database
+     */
+    private int currentVersion() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY, " +
+                    "script VARCHAR(255) NOT NULL, " +
+                    "appliedAt INTEGER NOT NULL)");
+
+            ResultSet result = statement.executeQuery("SELECT MAX(version) FROM schema_version");
+            int version = result.next() ? result.getInt(1) : 0;
+
+            if (version == 0) {
+                ResultSet legacy = statement.executeQuery(
+                        "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'transactions'");
+                if (legacy.next()) {
+                    log.info("Found a database created before schema versioning, marking it as version 1");
+                    this.recordVersion(1, MIGRATIONS[0]);
+                    version = 1;
+                }
+            }
+
+            return version;
+        }
+    }
+
+    /**
+     * Execute all statements of a migration script and record its version
+     * @param version Version the schema will be at after the script is run
+     * @param script Name of the script inside the migration folder
+     */
+    private void apply(int version, String script) throws SQLException, RepositoryInitialisationException {
+        long start = System.currentTimeMillis();
+        List<String> statements = this.readStatements(script);
+
+        log.debug("Running {} statements from migration {}", statements.size(), script);
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                log.debug("Executing: " + sql);
+                statement.executeUpdate(sql);
+            }
+        }
+
+        this.recordVersion(version, script);
+        log.info("Applied migration {} in {} ms", script, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Mark a schema version as applied
+     * @param version Version of the schema
+     * @param script Script that brought the schema to this version
+     */
+    private void recordVersion(int version, String script) throws SQLException {
+        String insert = "INSERT INTO schema_version (version, script, appliedAt) VALUES (?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(insert)) {
+            statement.setInt(1, version);
+            statement.setString(2, script);
+            statement.setLong(3, System.currentTimeMillis());
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Read a migration script from the classpath and split it into separate statements.
+     *
+     * Statements end with a ";" at the end of a line, except for trigger bodies which only end at "END;".
+     * Lines starting with "--" are treated as comments and skipped.
+     * @param script Name of the script inside the migration folder
+     * @return Statements in the order they appear in the script
+     */
+    private List<String> readStatements(String script) throws RepositoryInitialisationException {
+        InputStream stream = getClass().getClassLoader().getResourceAsStream(MIGRATION_FOLDER + script);
+        // Abort the migration if the script could not be found
+        if (stream == null) {
+            throw new RepositoryInitialisationException("Failed to retrieve the migration script " + script);
+        }
+
+        List<String> statements = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            StringBuilder current = new StringBuilder();
+            boolean trigger = false;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+
+                String upper = trimmed.toUpperCase();
+                if (current.length() == 0) {
+                    trigger = upper.startsWith("CREATE TRIGGER");
+                }
+                current.append(line).append('\n');
+
+                if (trimmed.endsWith(";") && (!trigger || upper.equals("END;"))) {
+                    statements.add(current.toString().trim());
+                    current.setLength(0);
+                }
+            }
+
+            // Ignore the last statement's missing semicolon
+            if (current.toString().trim().length() > 0) {
+                statements.add(current.toString().trim());
+            }
+        } catch (IOException e) {
+            throw new RepositoryInitialisationException("Failed to read the migration script " + script, e);
+        }
+
+        return statements;
+    }
+}
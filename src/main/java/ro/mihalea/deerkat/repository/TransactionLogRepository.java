@@ -0,0 +1,729 @@
+package ro.mihalea.deerkat.repository;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.exception.repository.*;
+import ro.mihalea.deerkat.model.Category;
+import ro.mihalea.deerkat.model.Transaction;
+import ro.mihalea.deerkat.repository.metrics.RepositoryMetrics;
+import ro.mihalea.deerkat.repository.metrics.StatementKind;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * TransactionLogRepository stores transactions in an append-only, memory-mapped log file of fixed size records.
+ *
+ * Every add or update appends a new version of the transaction and removals append a tombstone, while an in-memory
+ * index keeps the position of the latest version of every transaction. Details are dictionary encoded in a separate
+ * file so that the records keep a fixed layout. Superseded versions and tombstones are discarded by compacting the
+ * log in place once they outnumber the live records, which also drops the details no live record uses anymore from
+ * the dictionary.
+ *
+ * Record layout (40 bytes):
+ * <pre>
+ *  0  long  id
+ *  8  byte  record type (version or tombstone)
+ *  9  byte  inflow flag
+ * 12  int   details dictionary id
+ * 16  int   transaction date as epoch day
+ * 20  int   posting date as epoch day
+ * 24  long  amount in hundredths
+ * 32  long  category id, or -1 if there is no category
+ * </pre>
+ */
+@Log4j2
+public class TransactionLogRepository implements IRepository<Transaction>, AutoCloseable {
+    /**
+     * Magic number found at the start of every log file, "DKTL" in ASCII
+     */
+    private final static int MAGIC = 0x444B544C;
+
+    /**
+     * Version of the record layout
+     */
+    private final static int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the file header holding the magic number, the format version and the record count
+     */
+    private final static int HEADER_SIZE = 16;
+
+    /**
+     * Position of the record count inside the header
+     */
+    private final static int COUNT_OFFSET = 8;
+
+    /**
+     * Size of a single record
+     */
+    private final static int RECORD_SIZE = 40;
+
+    /**
+     * Record types
+     */
+    private final static byte VERSION = 1;
+    private final static byte TOMBSTONE = 2;
+
+    /**
+     * Number of records the log has room for when it is created
+     */
+    private final static int INITIAL_CAPACITY = 4096;
+
+    /**
+     * Minimum number of dead records before the log is compacted
+     */
+    private final static int COMPACTION_THRESHOLD = 4096;
+
+    /**
+     * Category id stored for transactions that don't have a category
+     */
+    private final static long NO_CATEGORY = -1;
+
+    /**
+     * Number of hundredths in one unit of the amount
+     */
+    private final static long AMOUNT_FACTOR = 100;
+
+    /**
+     * Length written in the dictionary file in place of an entry dropped by compaction, keeping the ids of the
+     * following entries unchanged
+     */
+    private final static int DROPPED_ENTRY = -1;
+
+    /**
+     * Path to the log file holding the records
+     */
+    private final Path logPath;
+
+    /**
+     * Path to the dictionary file holding the distinct details
+     */
+    private final Path dictionaryPath;
+
+    /**
+     * Channel of the log file, used to map it into memory
+     */
+    private FileChannel channel;
+
+    /**
+     * Memory-mapped view of the log file
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * Number of records written to the log
+     */
+    private int count;
+
+    /**
+     * Number of records that are superseded versions or tombstones
+     */
+    private int dead;
+
+    /**
+     * Id that will be given to the next transaction added without one
+     */
+    private long nextId = 1;
+
+    /**
+     * Position of the latest version of every live transaction, keyed by transaction id
+     */
+    private final Map<Long, Integer> index = new HashMap<>();
+
+    /**
+     * Distinct details, the position in the list being the dictionary id. Entries dropped by compaction are null.
+     */
+    private final List<String> dictionary = new ArrayList<>();
+
+    /**
+     * Dictionary id of every distinct details
+     */
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+
+    /**
+     * Stream appending new entries to the dictionary file
+     */
+    private DataOutputStream dictionaryOut;
+
+    /**
+     * Category repository used to resolve the categories of the transactions read
+     */
+    private CategorySqlRepository categoryRepository;
+
+    /**
+     * Timing statistics of the operations run by this repository
+     */
+    private final RepositoryMetrics metrics = RepositoryMetrics.of(getClass().getSimpleName());
+
+    /**
+     * Open the log at the given path, creating it if it doesn't exist, and rebuild the index from its records
+     * @param logLocation Path to the log file. The dictionary is stored next to it with the ".dict" extension
+     */
+    public TransactionLogRepository(Path logLocation) throws RepositoryInitialisationException {
+        this.logPath = logLocation;
+        this.dictionaryPath = Paths.get(logLocation.toString() + ".dict");
+
+        try {
+            this.openLog();
+            this.loadDictionary();
+            this.replay();
+        } catch (IOException e) {
+            throw new RepositoryInitialisationException("Failed to open the transaction log at " + logPath, e);
+        }
+
+        log.info("Opened transaction log at {} with {} transactions", logPath, index.size());
+    }
+
+    @Override
+    public synchronized Optional<Long> add(Transaction transaction) throws RepositoryCreateException {
+        long start = metrics.start();
+        try {
+            this.checkNew(transaction);
+            long id = this.append(transaction);
+            this.commit();
+            log.debug("Transaction appended to the log: " + transaction);
+            return Optional.of(id);
+        } catch (IOException e) {
+            throw new RepositoryCreateException("Failed to append the transaction to the log: " + transaction, e);
+        } finally {
+            metrics.record(StatementKind.ADD, start, 1);
+        }
+    }
+
+    /**
+     * Append all transactions and publish them at once by updating the record count a single time
+     * @param list Transactions to be added
+     * @return Ids of the transactions in the order they were given
+     */
+    @Override
+    public synchronized List<Optional<Long>> addAll(Iterable<Transaction> list) throws RepositoryCreateException {
+        long start = metrics.start();
+        List<Optional<Long>> keys = new ArrayList<>();
+        try {
+            try {
+                for (Transaction transaction : list) {
+                    this.checkNew(transaction);
+                    keys.add(Optional.of(this.append(transaction)));
+                }
+            } finally {
+                // Publish the transactions appended before a failure, as adding them one by one would have
+                this.commit();
+            }
+            log.debug("Appended {} transactions to the log", keys.size());
+            return keys;
+        } catch (IOException e) {
+            throw new RepositoryCreateException("Failed to append the transactions to the log", e);
+        } finally {
+            metrics.record(StatementKind.ADD, start, keys.size());
+        }
+    }
+
+    /**
+     * Scan the log sequentially and return the latest version of every live transaction
+     * @return List of all transactions
+     */
+    @Override
+    public synchronized List<Transaction> getAll() throws RepositoryReadException {
+        long start = metrics.start();
+        List<Transaction> transactions = new ArrayList<>(index.size());
+        try {
+            Map<Long, Category> categories = this.loadCategories();
+
+            for (int slot = 0; slot < count; slot++) {
+                if (this.isLatest(slot)) {
+                    transactions.add(this.read(slot, categories));
+                }
+            }
+
+            log.info("Transaction log returned {} transactions", transactions.size());
+            return transactions;
+        } finally {
+            metrics.record(StatementKind.GET_ALL, start, transactions.size());
+        }
+    }
+
+    @Override
+    public synchronized Optional<Transaction> getById(Long id) throws RepositoryReadException {
+        long start = metrics.start();
+        Integer slot = index.get(id);
+        try {
+            if (slot == null) {
+                return Optional.empty();
+            }
+
+            return Optional.of(this.read(slot, this.loadCategory(slot)));
+        } finally {
+            metrics.record(StatementKind.GET_BY_ID, start, slot != null ? 1 : 0);
+        }
+    }
+
+    /**
+     * Append a new version of the transaction which replaces the previous one
+     * @param item Transaction that needs to be updated
+     */
+    @Override
+    public synchronized void update(Transaction item) throws RepositoryUpdateException {
+        long start = metrics.start();
+        try {
+            if (item.getId() == null || !index.containsKey(item.getId())) {
+                throw new RepositoryUpdateException("Transaction is not stored in the log: " + item);
+            }
+
+            this.append(item);
+            this.commit();
+            this.compactIfNeeded();
+            log.debug("Transaction has been updated in the log: " + item);
+        } catch (IOException e) {
+            throw new RepositoryUpdateException("Failed to append the updated transaction to the log: " + item, e);
+        } finally {
+            metrics.record(StatementKind.UPDATE, start, 1);
+        }
+    }
+
+    /**
+     * Append the new versions of all transactions and publish them at once
+     * @param items Transactions that need to be updated
+     * @return Transactions that are not stored in the log
+     */
+    @Override
+    public synchronized List<Transaction> updateAll(Collection<Transaction> items) throws RepositoryUpdateException {
+        long start = metrics.start();
+        List<Transaction> failed = new ArrayList<>();
+        try {
+            for (Transaction item : items) {
+                if (item.getId() == null || !index.containsKey(item.getId())) {
+                    failed.add(item);
+                } else {
+                    this.append(item);
+                }
+            }
+
+            this.commit();
+            this.compactIfNeeded();
+            return failed;
+        } catch (IOException e) {
+            throw new RepositoryUpdateException("Failed to append " + items.size() + " updated transactions to the log", e);
+        } finally {
+            metrics.record(StatementKind.UPDATE, start, items.size() - failed.size());
+        }
+    }
+
+    /**
+     * Remove a transaction by appending a tombstone for it
+     * @param id Id of the transaction
+     */
+    public synchronized void remove(Long id) throws RepositoryDeleteException {
+        if (!index.containsKey(id)) {
+            return;
+        }
+
+        try {
+            this.ensureCapacity(1);
+            int position = this.position(count);
+            buffer.putLong(position, id);
+            buffer.put(position + 8, TOMBSTONE);
+
+            index.remove(id);
+            count++;
+            // Both the removed version and the tombstone itself are now dead
+            dead += 2;
+
+            this.commit();
+            this.compactIfNeeded();
+        } catch (IOException e) {
+            throw new RepositoryDeleteException("Failed to append a tombstone for transaction " + id, e);
+        }
+    }
+
+    /**
+     * Discard all records and dictionary entries
+     */
+    @Override
+    public synchronized void nuke() throws RepositoryDeleteException {
+        long start = metrics.start();
+        int removed = index.size();
+        try {
+            count = 0;
+            dead = 0;
+            index.clear();
+
+            dictionary.clear();
+            dictionaryIds.clear();
+            dictionaryOut.close();
+            dictionaryOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dictionaryPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+
+            this.commit();
+            log.info("Transaction log '{}' has been nuked", logPath);
+        } catch (IOException e) {
+            throw new RepositoryDeleteException("Failed to nuke the transaction log", e);
+        } finally {
+            metrics.record(StatementKind.NUKE, start, removed);
+        }
+    }
+
+    /**
+     * Rewrite the log in place so that it only holds the latest version of every live transaction, then drop the
+     * details that are not used by them anymore from the dictionary.
+     *
+     * Live records are only ever moved towards the start of the file and the record count is updated last, so if
+     * the process stops midway the log still replays to the same transactions. The dictionary is only replaced once
+     * the compacted log is on the disk, and it keeps the ids of its entries so the records don't need to change.
+     */
+    public synchronized void compact() throws IOException {
+        int write = 0;
+        for (int slot = 0; slot < count; slot++) {
+            if (this.isLatest(slot)) {
+                int position = this.position(slot);
+                long id = buffer.getLong(position);
+
+                if (write != slot) {
+                    int target = this.position(write);
+                    for (int offset = 0; offset < RECORD_SIZE; offset += 8) {
+                        buffer.putLong(target + offset, buffer.getLong(position + offset));
+                    }
+                    index.put(id, write);
+                }
+                write++;
+            }
+        }
+
+        log.info("Compacted the transaction log from {} to {} records", count, write);
+        count = write;
+        dead = 0;
+        this.commit();
+        buffer.force();
+
+        this.compactDictionary();
+    }
+
+    /**
+     * Rewrite the dictionary file without the details that no record uses, replacing them with a marker so that
+     * the other entries keep their ids. The new file is written next to the old one and moved over it, so the
+     * dictionary file is always complete. Must only be called right after the log has been compacted, when every
+     * record is the latest version of a live transaction.
+     */
+    private void compactDictionary() throws IOException {
+        boolean[] used = new boolean[dictionary.size()];
+        for (int slot = 0; slot < count; slot++) {
+            used[buffer.getInt(this.position(slot) + 12)] = true;
+        }
+
+        List<Integer> unused = new ArrayList<>();
+        for (int id = 0; id < used.length; id++) {
+            if (!used[id] && dictionary.get(id) != null) {
+                unused.add(id);
+            }
+        }
+        if (unused.isEmpty()) {
+            return;
+        }
+
+        Path temporary = Paths.get(dictionaryPath.toString() + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(file)));
+            for (int id = 0; id < used.length; id++) {
+                if (used[id]) {
+                    byte[] bytes = dictionary.get(id).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                } else {
+                    out.writeInt(DROPPED_ENTRY);
+                }
+            }
+            out.flush();
+            file.force(true);
+        }
+
+        // The appending stream is reopened even if the move fails, so the old dictionary keeps being used
+        dictionaryOut.close();
+        try {
+            Files.move(temporary, dictionaryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            dictionaryOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dictionaryPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+
+        for (int id : unused) {
+            dictionaryIds.remove(dictionary.set(id, null));
+        }
+        log.info("Dropped {} unused details from the transaction log dictionary", unused.size());
+    }
+
+    /**
+     * Write all changes to the disk and release the files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.commit();
+        buffer.force();
+        dictionaryOut.close();
+        channel.close();
+        log.info("Closed transaction log at {}", logPath);
+    }
+
+    /**
+     * Open the log file and map it into memory, writing the header if the file is new
+     */
+    private void openLog() throws IOException, RepositoryInitialisationException {
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() < HEADER_SIZE;
+
+        // The header is checked before mapping, as mapping grows the file to the initial capacity
+        if (!created) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                channel.close();
+                throw new RepositoryInitialisationException("The file is not a transaction log: " + logPath);
+            }
+        }
+
+        long capacity = Math.max(channel.size(), HEADER_SIZE + (long) INITIAL_CAPACITY * RECORD_SIZE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        if (created) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putLong(COUNT_OFFSET, 0);
+        }
+
+        count = (int) buffer.getLong(COUNT_OFFSET);
+    }
+
+    /**
+     * Load all dictionary entries and open the dictionary for appending
+     */
+    private void loadDictionary() throws IOException {
+        if (Files.exists(dictionaryPath)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dictionaryPath)))) {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+
+                    if (length == DROPPED_ENTRY) {
+                        dictionary.add(null);
+                        continue;
+                    }
+
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    String details = new String(bytes, StandardCharsets.UTF_8);
+                    dictionaryIds.put(details, dictionary.size());
+                    dictionary.add(details);
+                }
+            }
+        }
+
+        dictionaryOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dictionaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * Rebuild the index by reading every record in order, later versions replacing earlier ones
+     */
+    private void replay() {
+        for (int slot = 0; slot < count; slot++) {
+            int position = this.position(slot);
+            long id = buffer.getLong(position);
+            nextId = Math.max(nextId, id + 1);
+
+            if (buffer.get(position + 8) == VERSION) {
+                if (index.put(id, slot) != null) {
+                    dead++;
+                }
+            } else {
+                dead += index.remove(id) != null ? 2 : 1;
+            }
+        }
+    }
+
+    /**
+     * Write a new version of the transaction after the last record, without publishing it
+     * @param transaction Transaction to be written
+     * @return Id of the transaction
+     */
+    private long append(Transaction transaction) throws IOException {
+        long id = transaction.getId() != null ? transaction.getId() : nextId;
+        nextId = Math.max(nextId, id + 1);
+
+        this.ensureCapacity(1);
+        int position = this.position(count);
+
+        buffer.putLong(position, id);
+        buffer.put(position + 8, VERSION);
+        buffer.put(position + 9, (byte) (transaction.getInflow() ? 1 : 0));
+        buffer.putInt(position + 12, this.encode(transaction.getDetails()));
+        buffer.putInt(position + 16, (int) transaction.getTransactionDate().toEpochDay());
+        buffer.putInt(position + 20, (int) transaction.getPostingDate().toEpochDay());
+        buffer.putLong(position + 24, Math.round(transaction.getAmount() * AMOUNT_FACTOR));
+        Category category = transaction.getCategory();
+        buffer.putLong(position + 32, category != null && category.getId() != null ? category.getId() : NO_CATEGORY);
+
+        if (index.put(id, count) != null) {
+            dead++;
+        }
+        count++;
+
+        return id;
+    }
+
+    /**
+     * Make sure that a transaction being added does not reuse the id of a stored transaction
+     * @param transaction Transaction being added
+     */
+    private void checkNew(Transaction transaction) throws RepositoryCreateException {
+        if (transaction.getId() != null && index.containsKey(transaction.getId())) {
+            throw new RepositoryCreateException("A transaction with the same id is already stored: " + transaction);
+        }
+    }
+
+    /**
+     * Build the transaction stored in a record
+     * @param slot Position of the record
+     * @param categories Categories keyed by id, used to resolve the transaction's category
+     * @return Transaction stored in the record
+     */
+    private Transaction read(int slot, Map<Long, Category> categories) {
+        int position = this.position(slot);
+        long categoryId = buffer.getLong(position + 32);
+
+        return Transaction.builder()
+                .id(buffer.getLong(position))
+                .inflow(buffer.get(position + 9) == 1)
+                .details(dictionary.get(buffer.getInt(position + 12)))
+                .transactionDate(LocalDate.ofEpochDay(buffer.getInt(position + 16)))
+                .postingDate(LocalDate.ofEpochDay(buffer.getInt(position + 20)))
+                .amount((double) buffer.getLong(position + 24) / AMOUNT_FACTOR)
+                .category(categoryId != NO_CATEGORY ? categories.get(categoryId) : null)
+                .build();
+    }
+
+    /**
+     * Return the dictionary id of the details, appending them to the dictionary if they are new
+     * @param details Details of a transaction
+     * @return Dictionary id
+     */
+    private int encode(String details) throws IOException {
+        Integer id = dictionaryIds.get(details);
+        if (id == null) {
+            byte[] bytes = details.getBytes(StandardCharsets.UTF_8);
+            dictionaryOut.writeInt(bytes.length);
+            dictionaryOut.write(bytes);
+
+            id = dictionary.size();
+            dictionary.add(details);
+            dictionaryIds.put(details, id);
+        }
+
+        return id;
+    }
+
+    /**
+     * Publish the records appended so far by writing the record count in the header. The dictionary is flushed
+     * first so that published records never point to missing dictionary entries.
+     */
+    private void commit() throws IOException {
+        dictionaryOut.flush();
+        buffer.putLong(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Grow the mapping so that it can hold more records, doubling its size to keep remapping rare
+     * @param records Number of records that need to be appended
+     */
+    private void ensureCapacity(int records) throws IOException {
+        long needed = HEADER_SIZE + (long) (count + records) * RECORD_SIZE;
+        if (needed > buffer.capacity()) {
+            long capacity = Math.max(needed, 2L * buffer.capacity());
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IOException("The transaction log has reached its maximum size");
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            log.debug("Transaction log has been grown to {} bytes", capacity);
+        }
+    }
+
+    /**
+     * Compact the log when the dead records outnumber the live ones
+     */
+    private void compactIfNeeded() throws IOException {
+        if (dead >= COMPACTION_THRESHOLD && dead > index.size()) {
+            this.compact();
+        }
+    }
+
+    /**
+     * Return the categories keyed by id, or an empty map if no category repository has been set
+     * @return Categories keyed by id
+     */
+    private Map<Long, Category> loadCategories() throws RepositoryReadException {
+        Map<Long, Category> categories = new HashMap<>();
+        if (categoryRepository != null) {
+            for (Category category : categoryRepository.getAll()) {
+                categories.put(category.getId(), category);
+            }
+        }
+
+        return categories;
+    }
+
+    /**
+     * Return the category of a single record keyed by its id, so that reading one transaction doesn't load every
+     * category
+     * @param slot Position of the record
+     * @return Map holding the record's category, or an empty map if it has none or no category repository has been
+     * set
+     */
+    private Map<Long, Category> loadCategory(int slot) throws RepositoryReadException {
+        long categoryId = buffer.getLong(this.position(slot) + 32);
+        if (categoryRepository == null || categoryId == NO_CATEGORY) {
+            return Collections.emptyMap();
+        }
+
+        return categoryRepository.getById(categoryId)
+                .map(category -> Collections.singletonMap(categoryId, category))
+                .orElse(Collections.emptyMap());
+    }
+
+    /**
+     * Check whether a record holds the latest version of a live transaction
+     * @param slot Index of the record
+     * @return True if the record is neither a tombstone nor a superseded version
+     */
+    private boolean isLatest(int slot) {
+        int position = this.position(slot);
+        Integer latest = index.get(buffer.getLong(position));
+        return buffer.get(position + 8) == VERSION && latest != null && latest == slot;
+    }
+
+    /**
+     * Return the byte position of a record inside the file
+     * @param slot Index of the record
+     * @return Position of the record's first byte
+     */
+    private int position(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    public void setCategoryRepository(CategorySqlRepository categoryRepository) {
+        this.categoryRepository = categoryRepository;
+    }
+}
@@ -0,0 +1,16 @@
+package ro.mihalea.deerkat.repository;
+
+import ro.mihalea.deerkat.model.Transaction;
+
+/**
+ * Receiver of transactions streamed from a repository one at a time
+ * @param <E> Type of the exception thrown when a transaction cannot be handled
+ */
+@FunctionalInterface
+public interface TransactionSink<E extends Exception> {
+    /**
+     * Handle the next transaction
+     * @param transaction Transaction read from the repository
+     */
+    void accept(Transaction transaction) throws E;
+}
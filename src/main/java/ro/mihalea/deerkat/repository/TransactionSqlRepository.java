@@ -3,14 +3,26 @@ package ro.mihalea.deerkat.repository;
 import lombok.extern.log4j.Log4j2;
 import ro.mihalea.deerkat.exception.repository.*;
 import ro.mihalea.deerkat.model.Category;
+import ro.mihalea.deerkat.model.ImportCheckpoint;
+import ro.mihalea.deerkat.model.MonthlySummary;
 import ro.mihalea.deerkat.model.Transaction;
-import ro.mihalea.deerkat.utility.LocalDateConverter;
+import ro.mihalea.deerkat.repository.codec.ColumnCodec;
+import ro.mihalea.deerkat.repository.codec.EpochDayCodec;
+import ro.mihalea.deerkat.repository.codec.FixedPointCodec;
+import ro.mihalea.deerkat.repository.metrics.StatementKind;
 
+import java.nio.file.Path;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * TransactionSqlRepository is used to interface with the Sqlite database
@@ -19,9 +31,32 @@ import java.util.Optional;
 @Log4j2
 public class TransactionSqlRepository extends AbstractSqlRepository<Transaction>{
     /**
-     * Field used to convert to and from SQL dates
+     * Codec storing dates as INTEGER epoch days
      */
-    private final LocalDateConverter converter = new LocalDateConverter();
+    private final static ColumnCodec<LocalDate> DATE_CODEC = new EpochDayCodec();
+
+    /**
+     * Codec storing amounts as INTEGER hundredths
+     */
+    private final static ColumnCodec<Double> AMOUNT_CODEC = new FixedPointCodec(2);
+
+    /**
+     * Statement used to update every field of a transaction
+     */
+    private final static String UPDATE_STRING = "UPDATE transactions  SET postingDate = ?, transactionDate = ?, " +
+            "details = ?, amount = ?, categoryId = ?, inflow = ? " +
+            "WHERE " +
+            "id = ?";
+
+    /**
+     * Statement used to store the digest of a transaction
+     */
+    private final static String DIGEST_STRING = "INSERT OR IGNORE INTO row_digests (digest, transactionId) VALUES (?, ?)";
+
+    /**
+     * Number of rows fetched at once when streaming transactions
+     */
+    private final static int STREAM_FETCH_SIZE = 500;
 
     /**
      * Initialise the repository and connect to the local repository at the default file path
@@ -32,112 +67,649 @@ public class TransactionSqlRepository extends AbstractSqlRepository<Transaction>
         super();
     }
 
+    /**
+     * Initialise the repository and connect to the local repository at the specified file path
+     *
+     * @param path Location of the repository file
+     * @throws RepositoryConnectionException Failed to connect to the repository
+     */
+    public TransactionSqlRepository(String path) throws RepositoryConnectionException {
+        super(path);
+    }
+
     /**
      * Add a new transaction to the repository
      * @param transaction New transaction to be added to the repository
      */
     public Optional<Long> add(Transaction transaction) throws RepositoryCreateException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            try {
+                String createString = "INSERT INTO transactions (id, postingDate, transactionDate, details, amount, inflow)" +
+                        "VALUES (?, ?, ?, ?, ?, ?)";
+
+                PreparedStatement statement = connection.prepareStatement(createString, Statement.RETURN_GENERATED_KEYS);
+
+                statement.setObject(1, transaction.getId());
+                DATE_CODEC.write(statement, 2, transaction.getPostingDate());
+                DATE_CODEC.write(statement, 3, transaction.getTransactionDate());
+                statement.setString(4, transaction.getDetails());
+                AMOUNT_CODEC.write(statement, 5, transaction.getAmount());
+                statement.setBoolean(6, transaction.getInflow());
+
+                statement.executeUpdate();
+                log.debug("Transaction added to repository: " + transaction);
+
+                return transaction.getId() != null ? Optional.of(transaction.getId()) : this.extractId(statement);
+            } catch (SQLException e) {
+                throw new RepositoryCreateException("Failed to add the transaction to the database: " + transaction, e);
+            } finally {
+                metrics.record(StatementKind.ADD, start, 1);
+            }
+        }
+    }
+
+    /**
+     * Add many transactions in a single transaction, skipping the ones that are already stored instead of failing.
+     *
+     * Duplicates are detected through the unique constraint on the transactions table using an ON CONFLICT DO NOTHING
+     * clause targeting only that constraint, so no exception is raised for them while rows breaking any other
+     * constraint are still reported as failed. Inserted transactions have their id set.
+     * @param transactions Transactions that need to be added
+     * @return Outcome of every transaction and the counts for every outcome
+     */
+    public IngestResult ingest(Iterable<Transaction> transactions) throws RepositoryCreateException {
+        long start = metrics.start();
+        IngestResult result = null;
+        try {
+            result = inTransaction(() -> this.insertRows(transactions));
+
+            log.info("Ingested transactions: {}", result);
+            return result;
+        } catch (SQLException e) {
+            throw new RepositoryCreateException("Failed to ingest transactions into the database", e);
+        } finally {
+            metrics.record(StatementKind.INGEST, start, result != null ? result.getCount(IngestResult.Outcome.INSERTED) : 0);
+        }
+    }
+
+    /**
+     * Ingest a batch of transactions of a statement file, storing the digests of the inserted rows and the
+     * progress of the file in the same database transaction.
+     *
+     * Until the last batch the checkpoint of the file is moved forward, so an interrupted import can resume after
+     * the rows already committed. The last batch removes the checkpoint and remembers the file as imported.
+     *
+     * If a row fails to be stored the checkpoint stops before it and the file is not remembered as imported, even
+     * for the last batch, so that importing the file again retries the failed rows instead of skipping the file.
+     * @param hash SHA-256 of the content of the file, in hexadecimal
+     * @param file Statement file
+     * @param source File imported again to resume the statement, which is the archive holding the statement for
+     *               statements read from an archive
+     * @param transactions Transactions of the batch that need to be added
+     * @param positions Position in the file of every transaction of the batch
+     * @param position Number of rows at the start of the file covered once the batch is stored
+     * @param complete True if this is the last batch of the file
+     * @return Outcome of every transaction and the counts for every outcome
+     */
+    public IngestResult ingestStatement(String hash, Path file, Path source, List<Transaction> transactions,
+                                        int[] positions, int position, boolean complete)
+            throws RepositoryCreateException {
+        long start = metrics.start();
+        IngestResult result = null;
         try {
-            String createString = "INSERT INTO transactions (id, postingDate, transactionDate, details, amount, inflow)" +
-                    "VALUES (?, ?, ?, ?, ?, ?)";
+            result = inTransaction(() -> {
+                IngestResult ingest = this.insertRows(transactions);
+
+                try (PreparedStatement statement = connection.prepareStatement(DIGEST_STRING)) {
+                    for (Transaction transaction : ingest.getInserted()) {
+                        statement.setLong(1, RowDigest.of(transaction));
+                        statement.setLong(2, transaction.getId());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+
+                int failed = ingest.getOutcomes().indexOf(IngestResult.Outcome.FAILED);
+                int committed = failed >= 0 ? Math.min(position, positions[failed]) : position;
 
-            PreparedStatement statement = connection.prepareStatement(createString, Statement.RETURN_GENERATED_KEYS);
+                if (complete && failed < 0) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "INSERT OR REPLACE INTO statements (hash, fileName, transactionCount, importedAt) " +
+                                    "VALUES (?, ?, ?, ?)")) {
+                        statement.setString(1, hash);
+                        statement.setString(2, file.getFileName().toString());
+                        statement.setInt(3, position);
+                        statement.setLong(4, System.currentTimeMillis());
+                        statement.executeUpdate();
+                    }
 
-            statement.setObject(1, transaction.getId());
-            statement.setDate(2, converter.toSQL(transaction.getPostingDate()));
-            statement.setDate(3, converter.toSQL(transaction.getTransactionDate()));
-            statement.setString(4, transaction.getDetails());
-            statement.setDouble(5, transaction.getAmount());
-            statement.setBoolean(6, transaction.getInflow());
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "DELETE FROM import_checkpoints WHERE hash = ?")) {
+                        statement.setString(1, hash);
+                        statement.executeUpdate();
+                    }
+                } else {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "INSERT OR REPLACE INTO import_checkpoints (hash, path, committedRows, updatedAt) " +
+                                    "VALUES (?, ?, ?, ?)")) {
+                        statement.setString(1, hash);
+                        statement.setString(2, source.toAbsolutePath().toString());
+                        statement.setInt(3, committed);
+                        statement.setLong(4, System.currentTimeMillis());
+                        statement.executeUpdate();
+                    }
+                }
 
-            statement.executeUpdate();
-            log.debug("Transaction added to repository: " + transaction);
+                return ingest;
+            });
 
-            return transaction.getId() != null ? Optional.of(transaction.getId()) : this.extractId(statement);
+            log.info("Ingested {} rows of the statement {} ({}): {}", position, file, complete ? "complete" : "partial",
+                    result);
+            return result;
         } catch (SQLException e) {
-            throw new RepositoryCreateException("Failed to add the transaction to the database: " + transaction, e);
+            throw new RepositoryCreateException("Failed to ingest the statement " + file + " into the database", e);
+        } finally {
+            metrics.record(StatementKind.INGEST, start, result != null ? result.getCount(IngestResult.Outcome.INSERTED) : 0);
+        }
+    }
+
+    /**
+     * Return the progress of the statement files whose import has been interrupted
+     * @return Checkpoint of every interrupted file, oldest first
+     */
+    public List<ImportCheckpoint> getCheckpoints() throws RepositoryReadException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            List<ImportCheckpoint> checkpoints = new ArrayList<>();
+            try (Statement statement = connection.createStatement()) {
+                ResultSet resultSet = statement.executeQuery("SELECT hash, path, committedRows, updatedAt " +
+                        "FROM import_checkpoints ORDER BY updatedAt");
+                while (resultSet.next()) {
+                    checkpoints.add(ImportCheckpoint.builder()
+                            .hash(resultSet.getString("hash"))
+                            .path(resultSet.getString("path"))
+                            .committedRows(resultSet.getInt("committedRows"))
+                            .updatedAt(resultSet.getLong("updatedAt"))
+                            .build());
+                }
+
+                return checkpoints;
+            } catch (SQLException e) {
+                throw new RepositoryReadException("Failed to retrieve the import checkpoints", e);
+            } finally {
+                metrics.record(StatementKind.IMPORT_STATE, start, checkpoints.size());
+            }
+        }
+    }
+
+    /**
+     * Forget the progress of all interrupted imports. The rows already committed are kept, and importing the files
+     * again skips them using their digests.
+     */
+    public void removeCheckpoints() throws RepositoryDeleteException {
+        this.nukeTable("import_checkpoints");
+    }
+
+    /**
+     * Insert every transaction that is not already stored, recording the outcome of each one
+     * @param transactions Transactions that need to be added
+     * @return Outcome of every transaction and the counts for every outcome
+     */
+    private IngestResult insertRows(Iterable<Transaction> transactions) throws SQLException {
+        String createString = "INSERT INTO transactions " +
+                "(postingDate, transactionDate, details, amount, inflow, categoryId) " +
+                "VALUES (?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (transactionDate, postingDate, details, amount) DO NOTHING";
+
+        IngestResult ingest = new IngestResult();
+
+        try (PreparedStatement statement = connection.prepareStatement(createString, Statement.RETURN_GENERATED_KEYS)) {
+            for (Transaction transaction : transactions) {
+                try {
+                    DATE_CODEC.write(statement, 1, transaction.getPostingDate());
+                    DATE_CODEC.write(statement, 2, transaction.getTransactionDate());
+                    statement.setString(3, transaction.getDetails());
+                    AMOUNT_CODEC.write(statement, 4, transaction.getAmount());
+                    statement.setBoolean(5, transaction.getInflow());
+                    statement.setObject(6, transaction.getCategory() != null ? transaction.getCategory().getId() : null);
+
+                    if (statement.executeUpdate() == 0) {
+                        ingest.record(transaction, IngestResult.Outcome.DUPLICATE);
+                    } else {
+                        this.extractId(statement).ifPresent(transaction::setId);
+                        ingest.record(transaction, IngestResult.Outcome.INSERTED);
+                    }
+                } catch (SQLException | RepositoryCreateException e) {
+                    log.warn("Failed to ingest transaction: " + transaction, e);
+                    ingest.record(transaction, IngestResult.Outcome.FAILED);
+                }
+            }
+        }
+
+        return ingest;
+    }
+
+    /**
+     * Return the hashes of all statement files that have been imported
+     * @return SHA-256 of the content of every imported file, in hexadecimal
+     */
+    public Set<String> getStatementHashes() throws RepositoryReadException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            Set<String> hashes = new HashSet<>();
+            try (Statement statement = connection.createStatement()) {
+                ResultSet resultSet = statement.executeQuery("SELECT hash FROM statements");
+                while (resultSet.next()) {
+                    hashes.add(resultSet.getString("hash"));
+                }
+
+                return hashes;
+            } catch (SQLException e) {
+                throw new RepositoryReadException("Failed to retrieve the imported statements", e);
+            } finally {
+                metrics.record(StatementKind.IMPORT_STATE, start, hashes.size());
+            }
+        }
+    }
+
+    /**
+     * Return the digests of all stored transactions, see {@link RowDigest}.
+     *
+     * Transactions that don't have a digest yet, because they were stored before digests were introduced, by
+     * another path than {@link #ingestStatement(String, Path, Path, List, int[], int, boolean)} or because their key has been
+     * edited, get one first.
+     * @return Digest of every stored transaction
+     */
+    public Set<Long> loadRowDigests() throws RepositoryReadException {
+        long start = metrics.start();
+        Set<Long> digests = new HashSet<>();
+        try {
+            int added = inTransaction(() -> {
+                int missing = 0;
+                try (Statement select = connection.createStatement();
+                     PreparedStatement insert = connection.prepareStatement(DIGEST_STRING)) {
+                    ResultSet resultSet = select.executeQuery("SELECT id, transactionDate, postingDate, details, amount " +
+                            "FROM transactions WHERE id NOT IN (SELECT transactionId FROM row_digests)");
+                    while (resultSet.next()) {
+                        insert.setLong(1, RowDigest.of(
+                                DATE_CODEC.read(resultSet, "transactionDate"),
+                                DATE_CODEC.read(resultSet, "postingDate"),
+                                resultSet.getString("details"),
+                                AMOUNT_CODEC.read(resultSet, "amount")));
+                        insert.setLong(2, resultSet.getLong("id"));
+                        insert.addBatch();
+                        missing++;
+                    }
+                    insert.executeBatch();
+                }
+
+                try (Statement statement = connection.createStatement()) {
+                    ResultSet resultSet = statement.executeQuery("SELECT digest FROM row_digests");
+                    while (resultSet.next()) {
+                        digests.add(resultSet.getLong(1));
+                    }
+                }
+
+                return missing;
+            });
+
+            log.debug("Loaded {} transaction digests, {} of them computed now", digests.size(), added);
+            return digests;
+        } catch (SQLException e) {
+            throw new RepositoryReadException("Failed to load the transaction digests", e);
+        } finally {
+            metrics.record(StatementKind.IMPORT_STATE, start, digests.size());
         }
     }
 
     @Override
     public void update(Transaction item) throws RepositoryUpdateException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            try {
+                PreparedStatement statement = connection.prepareStatement(UPDATE_STRING);
+
+                this.bindUpdate(statement, item);
+
+                statement.executeUpdate();
+                log.debug("Transaction has been updated: " + item);
+            } catch (SQLException e) {
+                throw new RepositoryUpdateException("Failed to update the transaction :" + item, e);
+            } finally {
+                metrics.record(StatementKind.UPDATE, start, 1);
+            }
+        }
+    }
+
+
+    /**
+     * Update multiple transactions using a single batched statement inside one transaction
+     * @param items Transactions that need to be updated
+     * @return Transactions that have never been stored, could not be found in the database or broke a constraint
+     */
+    @Override
+    public List<Transaction> updateAll(Collection<Transaction> items) throws RepositoryUpdateException {
+        long start = metrics.start();
+        int updated = 0;
         try {
-            String updateString = "UPDATE transactions  SET postingDate = ?, transactionDate = ?, " +
-                    "details = ?, amount = ?, categoryId = ?, inflow = ? " +
-                    "WHERE " +
-                    "id = ?";
-
-            PreparedStatement statement = connection.prepareStatement(updateString);
-
-            statement.setDate(1, converter.toSQL(item.getPostingDate()));
-            statement.setDate(2, converter.toSQL(item.getTransactionDate()));
-            statement.setString(3, item.getDetails());
-            statement.setDouble(4, item.getAmount());
-            statement.setObject(5, item.getCategory() != null ? item.getCategory().getId() : null);
-            statement.setBoolean(6, item.getInflow());
-            statement.setLong(7, item.getId());
-
-            statement.executeUpdate();
-            log.debug("Transaction has been updated: " + item);
+            List<Transaction> failed = inTransaction(() -> {
+                List<Transaction> batched = new ArrayList<>();
+                List<Transaction> missing = new ArrayList<>();
+
+                for (Transaction item : items) {
+                    // Transactions that were never stored can't be updated
+                    if (item.getId() == null) {
+                        missing.add(item);
+                    } else {
+                        batched.add(item);
+                    }
+                }
+
+                missing.addAll(executeUpdates(UPDATE_STRING, batched, this::bindUpdate));
+                return missing;
+            });
+
+            updated = items.size() - failed.size();
+            log.debug("{} out of {} transactions have been updated", updated, items.size());
+            return failed;
         } catch (SQLException e) {
-            throw new RepositoryUpdateException("Failed to update the transaction :" + item, e);
+            throw new RepositoryUpdateException("Failed to update " + items.size() + " transactions", e);
+        } finally {
+            metrics.record(StatementKind.UPDATE, start, updated);
         }
     }
 
+    /**
+     * Bind all fields of a transaction to the parameters of {@link #UPDATE_STRING}
+     * @param statement Statement prepared from {@link #UPDATE_STRING}
+     * @param item Transaction that needs to be updated
+     */
+    private void bindUpdate(PreparedStatement statement, Transaction item) throws SQLException {
+        DATE_CODEC.write(statement, 1, item.getPostingDate());
+        DATE_CODEC.write(statement, 2, item.getTransactionDate());
+        statement.setString(3, item.getDetails());
+        AMOUNT_CODEC.write(statement, 4, item.getAmount());
+        statement.setObject(5, item.getCategory() != null ? item.getCategory().getId() : null);
+        statement.setBoolean(6, item.getInflow());
+        statement.setLong(7, item.getId());
+    }
 
     public List<Transaction> getAll(CategorySqlRepository categoryRepository) throws RepositoryReadException {
-        List<Transaction> transactions = new ArrayList<>();
-        try {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            List<Transaction> transactions = new ArrayList<>();
+            try {
+
+                String queryString = "SELECT id, postingDate, transactionDate, details, amount, categoryId, inflow FROM transactions";
+                Statement statement = connection.createStatement();
+
+                ResultSet resultSet = statement.executeQuery(queryString);
+                int count = 0;
+                while(resultSet.next()) {
+                    Transaction transaction = this.readTransaction(resultSet, categoryRepository);
+
+                    if(transaction != null) {
+                        transactions.add(transaction);
+                        count++;
+                    }
+                }
+
+                log.info("Database returned {} transactions", count);
+            } catch (SQLException | RepositoryReadException e) {
+                throw new RepositoryReadException("Failed to retrieve all transactions", e);
+            } finally {
+                metrics.record(StatementKind.GET_ALL, start, transactions.size());
+            }
 
-            String queryString = "SELECT id, postingDate, transactionDate, details, amount, categoryId, inflow FROM transactions";
-            Statement statement = connection.createStatement();
 
-            ResultSet resultSet = statement.executeQuery(queryString);
+            return transactions;
+        }
+    }
+
+    /**
+     * Pass every transaction stored in the repository to a sink, one row at a time, without holding them in memory.
+     *
+     * Categories are loaded once before the rows are read instead of being queried for every row.
+     * @param categoryRepository Repository used to resolve categories, or null to skip them
+     * @param sink Receiver of the transactions, in the order of their ids
+     * @return Number of transactions passed to the sink
+     * @throws E Thrown as soon as the sink fails, stopping the iteration
+     */
+    public <E extends Exception> int streamAll(CategorySqlRepository categoryRepository, TransactionSink<E> sink)
+            throws RepositoryReadException, E {
+        return this.streamModified(-1, Long.MAX_VALUE, categoryRepository, sink);
+    }
+
+    /**
+     * Pass the transactions whose latest change falls in a range of sequence numbers to a sink, one row at a time.
+     *
+     * Every insert or update of a transaction gives it the next sequence number, so the rows changed since a
+     * previous read are the ones after the highest sequence number seen by that read.
+     * @param after Sequence number after which the changes are included, or -1 to include all transactions
+     * @param upTo Highest sequence number included, usually read with {@link #getLastModified()} beforehand
+     * @param categoryRepository Repository used to resolve categories, or null to skip them
+     * @param sink Receiver of the transactions, in the order of their ids
+     * @return Number of transactions passed to the sink
+     * @throws E Thrown as soon as the sink fails, stopping the iteration
+     */
+    public <E extends Exception> int streamModified(long after, long upTo, CategorySqlRepository categoryRepository,
+                                                    TransactionSink<E> sink) throws RepositoryReadException, E {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            long sinkNanos = 0;
             int count = 0;
-            while(resultSet.next()) {
-                Long id = resultSet.getLong("id");
-                // Transform from SQL Date to a LocalDate by using epoch time
-                LocalDate postingDate = converter.fromSQL(resultSet.getDate("postingDate"));
-                LocalDate transactionDate = converter.fromSQL(resultSet.getDate("transactionDate"));
-                String details = resultSet.getString("details");
-                Double amount = resultSet.getDouble("amount");
-                Boolean outflow = resultSet.getBoolean("inflow");
-                Category category = null;
-
-                // If the category repository is set and the id is not null try and retrieve the category from the db
-                if(categoryRepository != null) {
-                    Long categoryId = resultSet.getLong("categoryId");
-                    if(!resultSet.wasNull()) {
-                        Optional<Category> optional = categoryRepository.getById(categoryId);
-                        if(optional.isPresent()) {
-                            category = optional.get();
+            try {
+                Map<Long, Category> categories = new HashMap<>();
+                if (categoryRepository != null) {
+                    for (Category category : categoryRepository.getAll()) {
+                        categories.put(category.getId(), category);
+                    }
+                }
+
+                String queryString = "SELECT id, postingDate, transactionDate, details, amount, categoryId, inflow " +
+                        "FROM transactions WHERE modified > ? AND modified <= ? ORDER BY id";
+                try (PreparedStatement statement = connection.prepareStatement(queryString)) {
+                    statement.setFetchSize(STREAM_FETCH_SIZE);
+                    statement.setLong(1, after);
+                    statement.setLong(2, upTo);
+                    ResultSet resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        Transaction transaction = this.readTransaction(resultSet, null);
+                        long categoryId = resultSet.getLong("categoryId");
+                        if (!resultSet.wasNull()) {
+                            transaction.setCategory(categories.get(categoryId));
                         }
+
+                        // Time spent by the sink, such as writing an export file, is not part of the query
+                        long sinkStart = System.nanoTime();
+                        sink.accept(transaction);
+                        sinkNanos += System.nanoTime() - sinkStart;
+                        count++;
                     }
                 }
-                // Build a new transaction using the generated builder and the fields above
-                Transaction transaction = Transaction.builder()
-                        .id(id)
-                        .postingDate(postingDate)
-                        .transactionDate(transactionDate)
-                        .details(details)
-                        .amount(amount)
-                        .category(category)
-                        .inflow(outflow)
-                        .build();
-
-                if(transaction != null) {
-                    transactions.add(transaction);
-                    count++;
+
+                log.info("Streamed {} transactions changed after {} from the database", count, after);
+            } catch (SQLException e) {
+                throw new RepositoryReadException("Failed to stream the transactions", e);
+            } finally {
+                metrics.record(StatementKind.STREAM, start, sinkNanos, count);
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * Return the sequence number of the latest change made to any transaction
+     * @return Highest sequence number, or 0 if no transaction has changed since incremental exports were introduced
+     */
+    public long getLastModified() throws RepositoryReadException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            try (Statement statement = connection.createStatement()) {
+                ResultSet resultSet = statement.executeQuery("SELECT IFNULL(MAX(modified), 0) FROM transactions");
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            } catch (SQLException e) {
+                throw new RepositoryReadException("Failed to retrieve the latest transaction change", e);
+            } finally {
+                metrics.record(StatementKind.EXPORT_MARK, start, 1);
+            }
+        }
+    }
+
+    /**
+     * Return the highest sequence number exported to a target
+     * @param target Identifier of the export target, usually the absolute path of the file
+     * @return Sequence number stored by the last export, or empty if nothing has been exported to the target
+     */
+    public Optional<Long> getExportMark(String target) throws RepositoryReadException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            int rows = 0;
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT modified FROM export_marks WHERE target = ?")) {
+                statement.setString(1, target);
+                ResultSet resultSet = statement.executeQuery();
+                if (resultSet.next()) {
+                    rows = 1;
+                    return Optional.of(resultSet.getLong("modified"));
+                }
+
+                return Optional.empty();
+            } catch (SQLException e) {
+                throw new RepositoryReadException("Failed to retrieve the export mark of " + target, e);
+            } finally {
+                metrics.record(StatementKind.EXPORT_MARK, start, rows);
+            }
+        }
+    }
+
+    /**
+     * Store the highest sequence number exported to a target
+     * @param target Identifier of the export target, usually the absolute path of the file
+     * @param modified Highest sequence number included in the export
+     */
+    public void setExportMark(String target, long modified) throws RepositoryUpdateException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO export_marks (target, modified, exportedAt) VALUES (?, ?, ?)")) {
+                statement.setString(1, target);
+                statement.setLong(2, modified);
+                statement.setLong(3, System.currentTimeMillis());
+                statement.executeUpdate();
+
+                log.info("Export mark of {} moved to {}", target, modified);
+            } catch (SQLException e) {
+                throw new RepositoryUpdateException("Failed to store the export mark of " + target, e);
+            } finally {
+                metrics.record(StatementKind.EXPORT_MARK, start, 1);
+            }
+        }
+    }
+
+    /**
+     * Find the transactions whose details match the search text, best matches first.
+     *
+     * Only the transactions whose details contain every word of the text are returned, each word being matched as a
+     * prefix against the full-text index of the details. The results are ranked using bm25 so that rarer words weigh
+     * more.
+     * @param text Free text to look for
+     * @param limit Maximum number of transactions returned
+     * @param categoryRepository Repository used to resolve categories, or null to skip them
+     * @return Matching transactions ordered by relevance
+     */
+    public List<Transaction> search(String text, int limit, CategorySqlRepository categoryRepository) throws RepositoryReadException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            List<Transaction> transactions = new ArrayList<>();
+            try {
+                String query = this.toSearchQuery(text);
+                if (query.isEmpty()) {
+                    return transactions;
+                }
+
+                String queryString = "SELECT t.id, t.postingDate, t.transactionDate, t.details, t.amount, t.categoryId, t.inflow " +
+                        "FROM transactions_search s JOIN transactions t ON t.id = s.rowid " +
+                        "WHERE transactions_search MATCH ? ORDER BY bm25(transactions_search) LIMIT ?";
+                PreparedStatement statement = connection.prepareStatement(queryString);
+                statement.setString(1, query);
+                statement.setInt(2, limit);
+
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    transactions.add(this.readTransaction(resultSet, categoryRepository));
                 }
+
+                log.debug("Search for '{}' returned {} transactions", text, transactions.size());
+            } catch (SQLException | RepositoryReadException e) {
+                throw new RepositoryReadException("Failed to search transactions for: " + text, e);
+            } finally {
+                metrics.record(StatementKind.SEARCH, start, transactions.size());
             }
 
-            log.info("Database returned {} transactions", count);
-        } catch (SQLException | RepositoryReadException e) {
-            throw new RepositoryReadException("Failed to retrieve all transactions", e);
+            return transactions;
+        }
+    }
+
+    /**
+     * Turn free text into an FTS5 query matching all of its words as prefixes. The words are separated by spaces,
+     * which FTS5 treats as an implicit AND, and quoted so that characters with a meaning in the query syntax are taken
+     * literally.
+     * @param text Free text
+     * @return FTS5 query, or an empty string if the text has no words
+     */
+    private String toSearchQuery(String text) {
+        StringBuilder query = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append('"').append(word).append("\"*");
+            }
         }
 
+        return query.toString();
+    }
+
+    /**
+     * Build a transaction from the current row of a result set
+     * @param resultSet Result set positioned on a row of the transactions table
+     * @param categoryRepository Repository used to resolve the category, or null to skip it
+     * @return Transaction stored in the row
+     */
+    private Transaction readTransaction(ResultSet resultSet, CategorySqlRepository categoryRepository)
+            throws SQLException, RepositoryReadException {
+        Long id = resultSet.getLong("id");
+        LocalDate postingDate = DATE_CODEC.read(resultSet, "postingDate");
+        LocalDate transactionDate = DATE_CODEC.read(resultSet, "transactionDate");
+        String details = resultSet.getString("details");
+        Double amount = AMOUNT_CODEC.read(resultSet, "amount");
+        Boolean outflow = resultSet.getBoolean("inflow");
+        Category category = null;
 
-        return transactions;
+        // If the category repository is set and the id is not null try and retrieve the category from the db
+        if(categoryRepository != null) {
+            Long categoryId = resultSet.getLong("categoryId");
+            if(!resultSet.wasNull()) {
+                Optional<Category> optional = categoryRepository.getById(categoryId);
+                if(optional.isPresent()) {
+                    category = optional.get();
+                }
+            }
+        }
+        // Build a new transaction using the generated builder and the fields above
+        return Transaction.builder()
+                .id(id)
+                .postingDate(postingDate)
+                .transactionDate(transactionDate)
+                .details(details)
+                .amount(amount)
+                .category(category)
+                .inflow(outflow)
+                .build();
     }
 
     /**
@@ -149,6 +721,50 @@ public class TransactionSqlRepository extends AbstractSqlRepository<Transaction>
         return this.getAll(null);
     }
 
+    /**
+     * Read the per month and per category totals from the summary table, which is kept up to date by the database
+     * whenever transactions change, so the cost does not depend on the number of transactions stored
+     * @param from First month included in the report
+     * @param to Last month included in the report
+     * @return Summaries ordered by month and category
+     */
+    public List<MonthlySummary> getMonthlySummaries(YearMonth from, YearMonth to) throws RepositoryReadException {
+        synchronized (CONNECTION_LOCK) {
+            long start = metrics.start();
+            List<MonthlySummary> summaries = new ArrayList<>();
+            try {
+                String queryString = "SELECT month, categoryId, inflow, total, count FROM monthly_summary " +
+                        "WHERE month BETWEEN ? AND ? ORDER BY month, categoryId, inflow";
+                PreparedStatement statement = connection.prepareStatement(queryString);
+                statement.setInt(1, from.getYear() * 100 + from.getMonthValue());
+                statement.setInt(2, to.getYear() * 100 + to.getMonthValue());
+
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    int month = resultSet.getInt("month");
+                    long categoryId = resultSet.getLong("categoryId");
+
+                    summaries.add(MonthlySummary.builder()
+                            .month(YearMonth.of(month / 100, month % 100))
+                            // Transactions without a category are grouped under -1 as the column is part of the key
+                            .categoryId(categoryId != -1 ? categoryId : null)
+                            .inflow(resultSet.getBoolean("inflow"))
+                            .total(AMOUNT_CODEC.read(resultSet, "total"))
+                            .count(resultSet.getInt("count"))
+                            .build());
+                }
+
+                log.info("Database returned {} monthly summaries between {} and {}", summaries.size(), from, to);
+            } catch (SQLException e) {
+                throw new RepositoryReadException("Failed to retrieve the monthly summaries", e);
+            } finally {
+                metrics.record(StatementKind.SUMMARY, start, summaries.size());
+            }
+
+            return summaries;
+        }
+    }
+
     @Override
     public Optional<Transaction> getById(Long id) throws UnimplementedMethodException {
         throw new UnimplementedMethodException("GetById is not implemented");
@@ -157,6 +773,9 @@ public class TransactionSqlRepository extends AbstractSqlRepository<Transaction>
     @Override
     public void nuke() throws RepositoryDeleteException {
         this.nukeTable("transactions");
+        // Statements need to be imported again once their transactions are gone
+        this.nukeTable("statements");
+        this.nukeTable("import_checkpoints");
     }
 
 
@@ -0,0 +1,241 @@
+package ro.mihalea.deerkat.repository;
+
+import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.exception.repository.RepositoryUpdateException;
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind queue used to save transaction updates without blocking the caller.
+ *
+ * Updates are coalesced by transaction id and written in batched transactions on a background thread whenever the
+ * queue grows past its size threshold, the flush interval elapses or the queue is closed. The fields of a transaction
+ * are copied when it is queued, so later edits of the same object are only written by a later update. Updates
+ * received after the queue has been closed are written straight away.
+ */
+@Log4j2
+public class TransactionUpdateQueue implements AutoCloseable {
+    /**
+     * Controls when queued updates are guaranteed to be on disk
+     */
+    public enum Durability {
+        /**
+         * Every update is written before {@link #update(Transaction)} returns, as if there was no queue
+         */
+        SYNCHRONOUS,
+        /**
+         * Updates are written in the background, so the latest ones may be lost if the process is killed
+         */
+        WRITE_BEHIND
+    }
+
+    /**
+     * Repository used to write the updates
+     */
+    private final TransactionSqlRepository repository;
+
+    /**
+     * Durability mode chosen for this queue
+     */
+    private final Durability durability;
+
+    /**
+     * Number of pending updates that triggers a flush without waiting for the interval to elapse
+     */
+    private final int maxPending;
+
+    /**
+     * Pending updates keyed by transaction id, so that repeated updates to the same transaction are written once
+     */
+    private final Map<Long, Transaction> pending = new LinkedHashMap<>();
+
+    /**
+     * Lock held for the whole of a flush, so that an older batch is never written after a newer one
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Background thread running the flushes
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Marks whether the queue has been closed, guarded by the lock of {@link #pending}
+     */
+    private boolean closed = false;
+
+    /**
+     * Callback notified whenever a flush fails
+     */
+    private Consumer<RepositoryUpdateException> onFailure = e -> {};
+
+    /**
+     * Create a queue and start its periodic flushes
+     * @param repository Repository used to write the updates
+     * @param durability Durability mode of the queue
+     * @param maxPending Number of pending updates that triggers a flush
+     * @param flushInterval Interval between periodic flushes, in milliseconds
+     */
+    public TransactionUpdateQueue(TransactionSqlRepository repository, Durability durability,
+                                  int maxPending, long flushInterval) {
+        this.repository = repository;
+        this.durability = durability;
+        this.maxPending = maxPending;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transaction-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (durability == Durability.WRITE_BEHIND) {
+            executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+
+        log.info("Transaction update queue started in {} mode", durability);
+    }
+
+    /**
+     * Queue a transaction to be updated in the repository. Transactions that have never been stored have no id and
+     * cannot be updated, so they are reported as failures instead of being queued.
+     * @param transaction Transaction that has been modified
+     */
+    public void update(Transaction transaction) {
+        if (transaction.getId() == null) {
+            log.error("Cannot update a transaction that has not been stored: {}", transaction);
+            onFailure.accept(new RepositoryUpdateException("Cannot update a transaction that has not been stored: " +
+                    transaction));
+            return;
+        }
+
+        // Copy the fields now, so that a flush never writes a row while it is being edited
+        Transaction snapshot = transaction.toBuilder().build();
+
+        boolean queued = false;
+        int size = 0;
+        if (durability == Durability.WRITE_BEHIND) {
+            synchronized (pending) {
+                if (!closed) {
+                    pending.put(snapshot.getId(), snapshot);
+                    size = pending.size();
+                    queued = true;
+                }
+            }
+        }
+
+        if (!queued) {
+            this.write(snapshot);
+        } else if (size >= maxPending) {
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // The queue is being closed, which flushes the pending updates once more
+                log.debug("Queue has been closed before the flush could be scheduled");
+            }
+        }
+    }
+
+    /**
+     * Write a single update straight away
+     * @param transaction Transaction that needs to be updated
+     */
+    private void write(Transaction transaction) {
+        try {
+            repository.update(transaction);
+        } catch (RepositoryUpdateException e) {
+            log.error("Failed to update transaction: " + transaction, e);
+            onFailure.accept(e);
+        }
+    }
+
+    /**
+     * Write all pending updates to the repository in a single transaction.
+     *
+     * If the batch cannot be written its updates are queued again, unless the same transaction has been updated
+     * while the flush was running, so that they are retried by the next flush instead of being lost. Only the
+     * transactions missing from the database or rejected by it are dropped.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<Transaction> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+
+            try {
+                List<Transaction> failed = repository.updateAll(batch);
+                log.debug("Flushed {} queued transaction updates", batch.size() - failed.size());
+
+                if (!failed.isEmpty()) {
+                    log.error("Failed to update {} transactions that are missing from the database or were " +
+                            "rejected by it: {}", failed.size(), failed);
+                    onFailure.accept(new RepositoryUpdateException(failed.size() + " transactions could not be updated"));
+                }
+            } catch (RepositoryUpdateException e) {
+                log.error("Failed to flush " + batch.size() + " queued transaction updates, they will be retried", e);
+                this.requeue(batch);
+                onFailure.accept(e);
+            }
+        }
+    }
+
+    /**
+     * Queue the updates of a batch that could not be written again, keeping the newer updates received meanwhile
+     * @param batch Updates that could not be written
+     */
+    private void requeue(List<Transaction> batch) {
+        synchronized (pending) {
+            for (Transaction transaction : batch) {
+                pending.putIfAbsent(transaction.getId(), transaction);
+            }
+        }
+    }
+
+    /**
+     * Stop the background thread and write any updates that are still pending
+     */
+    @Override
+    public void close() {
+        synchronized (pending) {
+            closed = true;
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.flush();
+        synchronized (pending) {
+            if (!pending.isEmpty()) {
+                log.error("Closed the transaction update queue with {} updates that could not be written: {}",
+                        pending.size(), pending.values());
+            }
+        }
+        log.info("Transaction update queue has been closed");
+    }
+
+    /**
+     * Set the callback notified when updates could not be written
+     * @param onFailure Callback receiving the error, called from the background thread
+     */
+    public void setOnFailure(Consumer<RepositoryUpdateException> onFailure) {
+        this.onFailure = onFailure;
+    }
+}
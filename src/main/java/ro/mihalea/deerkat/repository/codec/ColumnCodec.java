@@ -0,0 +1,27 @@
+package ro.mihalea.deerkat.repository.codec;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts a field between its Java type and the representation stored in a database column
+ * @param <ValueType> Java type of the field
+ */
+public interface ColumnCodec<ValueType> {
+    /**
+     * Bind a value to a parameter of a prepared statement
+     * @param statement Statement whose parameter is set
+     * @param index Index of the parameter, starting from 1
+     * @param value Value to be stored, which may be null
+     */
+    void write(PreparedStatement statement, int index, ValueType value) throws SQLException;
+
+    /**
+     * Read a value from the current row of a result set
+     * @param result Result set positioned on a row
+     * @param column Name of the column
+     * @return Value stored in the column, or null if the column is null
+     */
+    ValueType read(ResultSet result, String column) throws SQLException;
+}
@@ -0,0 +1,28 @@
+package ro.mihalea.deerkat.repository.codec;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+
+/**
+ * Stores dates as INTEGER columns holding the number of days since 1970-01-01, which keeps them comparable and
+ * indexable without going through java.sql.Date
+ */
+public class EpochDayCodec implements ColumnCodec<LocalDate> {
+    @Override
+    public void write(PreparedStatement statement, int index, LocalDate value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setLong(index, value.toEpochDay());
+        }
+    }
+
+    @Override
+    public LocalDate read(ResultSet result, String column) throws SQLException {
+        long epochDay = result.getLong(column);
+        return result.wasNull() ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
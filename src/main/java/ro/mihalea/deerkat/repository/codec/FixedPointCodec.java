@@ -0,0 +1,44 @@
+package ro.mihalea.deerkat.repository.codec;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Stores decimal amounts as INTEGER columns holding a whole number of the smallest unit, such as fils for dirhams,
+ * so that sums computed by the database are exact
+ */
+public class FixedPointCodec implements ColumnCodec<Double> {
+    /**
+     * Number of smallest units in one whole unit
+     */
+    private final long factor;
+
+    /**
+     * Create a codec keeping the given number of decimals
+     * @param decimals Number of decimals stored, e.g. 2 for cents
+     */
+    public FixedPointCodec(int decimals) {
+        long factor = 1;
+        for (int i = 0; i < decimals; i++) {
+            factor *= 10;
+        }
+        this.factor = factor;
+    }
+
+    @Override
+    public void write(PreparedStatement statement, int index, Double value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setLong(index, Math.round(value * factor));
+        }
+    }
+
+    @Override
+    public Double read(ResultSet result, String column) throws SQLException {
+        long units = result.getLong(column);
+        return result.wasNull() ? null : (double) units / factor;
+    }
+}
@@ -0,0 +1,151 @@
+package ro.mihalea.deerkat.repository.metrics;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timing statistics of every kind of operation run by a repository.
+ *
+ * Statistics are registered as MBeans under "ro.mihalea.deerkat:type=Repository" and operations slower than the
+ * slowQueryThreshold property from log4j2.properties are logged to the "ro.mihalea.deerkat.repository.SlowQuery"
+ * logger.
+ */
+@Log4j2
+public class RepositoryMetrics {
+    /**
+     * Name of the log4j2 property holding the slow query threshold in milliseconds
+     */
+    private final static String THRESHOLD_PROPERTY = "slowQueryThreshold";
+
+    /**
+     * Threshold used when the property is missing from the log4j2 configuration
+     */
+    private final static long DEFAULT_THRESHOLD = 250;
+
+    /**
+     * Logger receiving the slow queries, so that they can be routed separately
+     */
+    private final static Logger SLOW_QUERY_LOG = LogManager.getLogger("ro.mihalea.deerkat.repository.SlowQuery");
+
+    /**
+     * Metrics of every repository, shared by all instances of the same repository
+     */
+    private final static Map<String, RepositoryMetrics> REGISTRY = new ConcurrentHashMap<>();
+
+    /**
+     * Slow query threshold in nanoseconds
+     */
+    private final static long THRESHOLD_NANOS = readThreshold() * 1_000_000;
+
+    /**
+     * Name of the repository being measured
+     */
+    private final String repository;
+
+    /**
+     * Statistics of every kind of operation
+     */
+    private final Map<StatementKind, StatementStats> stats = new EnumMap<>(StatementKind.class);
+
+    /**
+     * Create the metrics of a repository and register them over JMX
+     * @param repository Name of the repository
+     */
+    private RepositoryMetrics(String repository) {
+        this.repository = repository;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (StatementKind kind : StatementKind.values()) {
+            StatementStats statementStats = new StatementStats();
+            stats.put(kind, statementStats);
+
+            try {
+                ObjectName name = new ObjectName("ro.mihalea.deerkat:type=Repository,name=" + repository +
+                        ",statement=" + kind);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(statementStats, name);
+                }
+            } catch (JMException e) {
+                log.warn("Failed to register repository metrics over JMX for " + repository + " " + kind, e);
+            }
+        }
+    }
+
+    /**
+     * Return the metrics of a repository, creating them on first use
+     * @param repository Name of the repository
+     * @return Metrics shared by all instances of the repository
+     */
+    public static RepositoryMetrics of(String repository) {
+        return REGISTRY.computeIfAbsent(repository, RepositoryMetrics::new);
+    }
+
+    /**
+     * Mark the start of an operation
+     * @return Start time that needs to be passed to {@link #record(StatementKind, long, long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record an operation that has finished, logging it if it was slower than the threshold
+     * @param kind Kind of the operation
+     * @param start Start time returned by {@link #start()}
+     * @param rows Number of rows read or written
+     */
+    public void record(StatementKind kind, long start, long rows) {
+        this.record(kind, start, 0, rows);
+    }
+
+    /**
+     * Record an operation that has finished, leaving out the time spent outside the database, such as writing
+     * streamed rows to a file, and logging it if it was slower than the threshold
+     * @param kind Kind of the operation
+     * @param start Start time returned by {@link #start()}
+     * @param excluded Nanoseconds spent outside the database since the start
+     * @param rows Number of rows read or written
+     */
+    public void record(StatementKind kind, long start, long excluded, long rows) {
+        long nanos = Math.max(0, System.nanoTime() - start - excluded);
+        stats.get(kind).record(nanos, rows);
+
+        if (nanos >= THRESHOLD_NANOS) {
+            SLOW_QUERY_LOG.warn("{} {} took {} ms for {} rows", repository, kind, nanos / 1_000_000, rows);
+        }
+    }
+
+    /**
+     * Return the statistics of one kind of operation
+     * @param kind Kind of the operation
+     * @return Statistics of the operation
+     */
+    public StatementStats get(StatementKind kind) {
+        return stats.get(kind);
+    }
+
+    /**
+     * Read the slow query threshold from the log4j2 configuration
+     * @return Threshold in milliseconds
+     */
+    private static long readThreshold() {
+        try {
+            LoggerContext context = (LoggerContext) LogManager.getContext(false);
+            String value = context.getConfiguration().getStrSubstitutor().replace("${" + THRESHOLD_PROPERTY + "}");
+            return Long.parseLong(value.trim());
+        } catch (ClassCastException | NumberFormatException e) {
+            log.debug("No valid {} property found, using {} ms", THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+            return DEFAULT_THRESHOLD;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ro.mihalea.deerkat.repository.metrics;
+
+/**
+ * Kinds of repository operations that are timed separately
+ */
+public enum StatementKind {
+    ADD,
+    UPDATE,
+    GET_ALL,
+    GET_BY_ID,
+    NUKE,
+    /**
+     * Bulk insert of transactions, including the statement fingerprints and checkpoints stored with them
+     */
+    INGEST,
+    /**
+     * Streaming read of transactions, without the time spent by the receiver of the rows
+     */
+    STREAM,
+    /**
+     * Full-text search of transactions
+     */
+    SEARCH,
+    /**
+     * Read of the monthly summaries
+     */
+    SUMMARY,
+    /**
+     * Read or write of the change sequence numbers used by incremental exports
+     */
+    EXPORT_MARK,
+    /**
+     * Read of the statement fingerprints, row digests and checkpoints used by imports
+     */
+    IMPORT_STATE
+}
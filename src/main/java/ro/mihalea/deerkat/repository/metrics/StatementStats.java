@@ -0,0 +1,95 @@
+package ro.mihalea.deerkat.repository.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, total time, latency histogram and row count of one kind of repository operation or import stage
+ */
+public class StatementStats implements StatementStatsMBean {
+    /**
+     * Upper bounds of the histogram buckets in milliseconds
+     */
+    private final static long[] BOUNDS = new long[] {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 5000};
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder rows = new LongAdder();
+
+    /**
+     * Histogram buckets, with one extra bucket for operations slower than the last bound
+     */
+    private final AtomicLongArray histogram = new AtomicLongArray(BOUNDS.length + 1);
+
+    /**
+     * Record one operation
+     * @param nanos Duration of the operation in nanoseconds
+     * @param rowCount Number of rows read or written by the operation
+     */
+    public void record(long nanos, long rowCount) {
+        count.increment();
+        totalNanos.add(nanos);
+        rows.add(rowCount);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+
+        long millis = nanos / 1_000_000;
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis >= BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long operations = count.sum();
+        return operations == 0 ? 0 : getTotalMillis() / operations;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long[] getHistogramBounds() {
+        return BOUNDS.clone();
+    }
+
+    @Override
+    public long[] getHistogram() {
+        long[] values = new long[histogram.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histogram.get(i);
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        rows.reset();
+        maxNanos.set(0);
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ro.mihalea.deerkat.repository.metrics;
+
+/**
+ * Management interface exposing the statistics of one kind of repository operation over JMX
+ */
+public interface StatementStatsMBean {
+    /**
+     * @return Number of operations executed
+     */
+    long getCount();
+
+    /**
+     * @return Total time spent in the operations, in milliseconds
+     */
+    double getTotalMillis();
+
+    /**
+     * @return Average time of an operation, in milliseconds
+     */
+    double getMeanMillis();
+
+    /**
+     * @return Slowest operation, in milliseconds
+     */
+    double getMaxMillis();
+
+    /**
+     * @return Number of rows read or written by the operations
+     */
+    long getRows();
+
+    /**
+     * @return Upper bounds in milliseconds of the latency histogram buckets, the last bucket being unbounded
+     */
+    long[] getHistogramBounds();
+
+    /**
+     * @return Number of operations that fell in every latency bucket
+     */
+    long[] getHistogram();
+
+    /**
+     * Clear all statistics
+     */
+    void reset();
+}
@@ -14,10 +14,11 @@ import ro.mihalea.deerkat.ui.service.TableService;
 import ro.mihalea.deerkat.ui.service.TransferService;
 import ro.mihalea.deerkat.ui.window.AlertFactory;
 import ro.mihalea.deerkat.model.Category;
+import ro.mihalea.deerkat.model.ImportCheckpoint;
 import ro.mihalea.deerkat.model.Transaction;
 import ro.mihalea.deerkat.repository.CategorySqlRepository;
-import ro.mihalea.deerkat.repository.CsvRepository;
 import ro.mihalea.deerkat.repository.TransactionSqlRepository;
+import ro.mihalea.deerkat.repository.TransactionUpdateQueue;
 import ro.mihalea.deerkat.classifier.AbstractClassifier;
 import ro.mihalea.deerkat.classifier.FuzzyClassifier;
 import ro.mihalea.deerkat.utility.HtmlProcessor;
@@ -57,10 +58,22 @@ public class MainController {
     private TableColumn<Transaction, Category> tcCategory;
 
     /**
-     * Button used to export table data to csv
+     * Button used to export table data, with a menu item for exporting only the new transactions
      */
     @FXML
-    private Button exportButton;
+    private SplitMenuButton exportButton;
+
+    /**
+     * Menu item toggling the automatic import of the statements dropped into a folder
+     */
+    @FXML
+    private CheckMenuItem btnWatch;
+
+    /**
+     * Text field searching the details of the stored transactions when enter is pressed
+     */
+    @FXML
+    private TextField tfSearch;
 
     /**
      * Progress bar used to monitor importing
@@ -68,6 +81,12 @@ public class MainController {
     @FXML
     private ProgressBar progressBar;
 
+    /**
+     * Button cancelling the ongoing import from the status bar
+     */
+    @FXML
+    private Button btnCancel;
+
     /**
      * Label on the bottom in the status bar used to display messages that aren't that important
      */
@@ -75,6 +94,26 @@ public class MainController {
     private Label lbStatus;
     //endregion
 
+    /**
+     * Durability of transaction updates, which can be overridden with the deerkat.durability system property
+     */
+    private final static TransactionUpdateQueue.Durability UPDATE_DURABILITY = TransactionUpdateQueue.Durability.valueOf(
+            System.getProperty("deerkat.durability", TransactionUpdateQueue.Durability.WRITE_BEHIND.name()));
+
+    /**
+     * Maximum number of transactions loaded into the table by a search
+     */
+    private final static int SEARCH_LIMIT = 1000;
+
+    /**
+     * Number of pending transaction updates after which they are written to the database
+     */
+    private final static int UPDATE_BATCH_SIZE = 100;
+
+    /**
+     * Maximum time in milliseconds that a transaction update waits in the queue before being written
+     */
+    private final static long UPDATE_FLUSH_INTERVAL = 2000;
 
     /**
      * Store the fuzzy classifier here to reduce the number of SQL queries and inject it by dependencies
@@ -96,6 +135,11 @@ public class MainController {
      */
     private CategorySqlRepository categorySql;
 
+    /**
+     * Queue used to write transaction updates in batches away from the UI thread
+     */
+    private TransactionUpdateQueue updateQueue;
+
     /**
      * Factory used to create alert dialogs
      */
@@ -141,14 +185,19 @@ public class MainController {
 
         Platform.runLater(() -> alertFactory.setOwner(stage.getScene().getWindow()));
 
-        status = new StatusService(lbStatus, progressBar);
+        status = new StatusService(lbStatus, progressBar, btnCancel);
+
+        updateQueue = new TransactionUpdateQueue(transactionSql, UPDATE_DURABILITY,
+                UPDATE_BATCH_SIZE, UPDATE_FLUSH_INTERVAL);
+        updateQueue.setOnFailure(e -> Platform.runLater(() ->
+                status.showError("Failed to update transactions in the database")));
 
         table = new TableService(this, transactionsTable, alertFactory,
-                transactionSql, categorySql, classifier, status);
+                updateQueue, categorySql, classifier, status);
         table.setColumns(tcPostingDate, tcTransactionDate, tcDetails, tcAmount, tcCategory);
         table.initialise();
 
-        transfer = new TransferService(stage, alertFactory, status, categorySql);
+        transfer = new TransferService(stage, alertFactory, status, categorySql, classifier);
 
         initialiseWindowListener();
         initialiseClassifier();
@@ -182,9 +231,37 @@ public class MainController {
             } catch (RepositoryReadException e) {
                 log.error("Failed to retrieve transactions", e);
             }
+
+            this.resumeInterruptedImports();
         });
     }
 
+    /**
+     * Ask the user whether to resume the imports that were interrupted when the application was last closed
+     */
+    private void resumeInterruptedImports() {
+        try {
+            List<ImportCheckpoint> checkpoints = transactionSql.getCheckpoints();
+            if (checkpoints.isEmpty()) {
+                return;
+            }
+
+            Alert alert = alertFactory.create(
+                    Alert.AlertType.CONFIRMATION,
+                    "Resume import",
+                    "The import of " + checkpoints.size() + " statements has been interrupted\n" +
+                            "Do you want to continue importing them?");
+
+            if (alert.showAndWait().isPresent() && alert.getResult() == ButtonType.OK) {
+                transfer.resumeImports(transactionSql, table, checkpoints, () -> exportButton.setDisable(false));
+            } else {
+                transfer.discardImports(transactionSql);
+            }
+        } catch (RepositoryReadException e) {
+            log.error("Failed to retrieve the import checkpoints", e);
+        }
+    }
+
     /**
      * Inject model data into the classifier
      */
@@ -213,6 +290,27 @@ public class MainController {
         transfer.importFile(transactionSql, table, () -> exportButton.setDisable(false));
     }
 
+    /**
+     * Open a folder chooser and import all statements found in the folder
+     */
+    @FXML
+    protected void btnFolder_Action() {
+        transfer.importFolder(transactionSql, table, () -> exportButton.setDisable(false));
+    }
+
+    /**
+     * Start watching a folder picked by the user for new statements, or stop watching it
+     */
+    @FXML
+    protected void btnWatch_Action() {
+        if (btnWatch.isSelected()) {
+            btnWatch.setSelected(transfer.watchFolder(transactionSql, table, () -> exportButton.setDisable(false)));
+        } else {
+            transfer.stopWatching();
+            status.showMessage("Stopped watching the statement folder");
+        }
+    }
+
     /**
      * Load the previously imported transaction into the table
      */
@@ -238,6 +336,36 @@ public class MainController {
         }
     }
 
+    /**
+     * Load the stored transactions whose details contain every word typed in the search field into the table, best
+     * matches first
+     */
+    @FXML
+    protected void tfSearch_Action() {
+        String text = tfSearch.getText().trim();
+        if (text.isEmpty()) {
+            return;
+        }
+
+        // Categories picked in the table may still be waiting in the queue
+        updateQueue.flush();
+        try {
+            List<Transaction> transactions = transactionSql.search(text, SEARCH_LIMIT, categorySql);
+            table.clear();
+            table.addAll(transactions);
+            exportButton.setDisable(transactions.isEmpty());
+
+            if (transactions.size() == SEARCH_LIMIT) {
+                status.showMessage("Showing the best " + SEARCH_LIMIT + " transactions matching '" + text + "'");
+            } else {
+                status.showMessage("Found " + transactions.size() + " transactions matching '" + text + "'");
+            }
+        } catch (RepositoryReadException e) {
+            log.error("Failed to search the transactions for '{}'", text, e);
+            alertFactory.createError("Error", "Failed to search the transactions").showAndWait();
+        }
+    }
+
     /**
      * Export the transaction stored in the table to a CSV file picked by the user.
      */
@@ -255,6 +383,56 @@ public class MainController {
         }
     }
 
+    /**
+     * Append the transactions changed since the previous export to a file picked by the user
+     */
+    @FXML
+    protected void btnExportNew_Action() {
+        log.info("User tries to export new transactions");
+
+        // The export reads from the database, so the edits still waiting in the queue need to be written first
+        updateQueue.flush();
+        transfer.exportNew(transactionSql);
+    }
+
+    /**
+     * Copy the database to a backup file picked by the user
+     */
+    @FXML
+    protected void btnBackup_Action() {
+        // The backup reads from the database, so the edits still waiting in the queue need to be written first
+        updateQueue.flush();
+        transfer.backupDatabase();
+    }
+
+    /**
+     * Replace the database with a backup picked by the user and reload everything read from it
+     */
+    @FXML
+    protected void btnRestore_Action() {
+        updateQueue.flush();
+        transfer.restoreDatabase(() -> {
+            btnWatch.setSelected(false);
+
+            // The table and the classifier still hold the transactions of the replaced database
+            table.clear();
+            exportButton.setDisable(true);
+            classifier.clearModel();
+            this.initialiseClassifier();
+
+            try {
+                List<Transaction> transactions = transactionSql.getAll(categorySql);
+                table.addAll(transactions);
+                exportButton.setDisable(transactions.isEmpty());
+            } catch (RepositoryReadException e) {
+                log.error("Failed to load the restored transactions into the table", e);
+                alertFactory.createError("Error", "Failed to load the restored transactions").showAndWait();
+            }
+
+            this.resumeInterruptedImports();
+        });
+    }
+
     /**
      * Debug method used to check correct data associations between the view and the repositories
      */
@@ -263,6 +441,18 @@ public class MainController {
         table.getSelected().ifPresent(t -> log.debug("Clicked on {}", t));
     }
 
+    /**
+     * Write any pending changes to the database before the application exits
+     */
+    public void shutdown() {
+        if (transfer != null) {
+            transfer.stopWatching();
+        }
+        if (updateQueue != null) {
+            updateQueue.close();
+        }
+    }
+
     /**
      * Return the stage for any services that may use but don't need to store it
      * @return Main stage
@@ -1,6 +1,7 @@
 package ro.mihalea.deerkat.ui.service;
 
 import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import lombok.extern.log4j.Log4j2;
@@ -20,14 +21,21 @@ public class StatusService {
      */
     private final ProgressBar progressBar;
 
+    /**
+     * Button used to cancel the ongoing action
+     */
+    private final Button cancelButton;
+
     /**
      * Creates a status service ready to display messages and progress reports
      * @param label JavaFX Label part of the status bar
      * @param progressBar JavaFX ProgressBar part of the status bar
+     * @param cancelButton JavaFX Button part of the status bar
      */
-    public StatusService(Label label, ProgressBar progressBar) {
+    public StatusService(Label label, ProgressBar progressBar, Button cancelButton) {
         this.label = label;
         this.progressBar = progressBar;
+        this.cancelButton = cancelButton;
     }
 
     /**
@@ -67,6 +75,24 @@ public class StatusService {
      */
     public void displayProgress(boolean display) {
         progressBar.setVisible(display);
+
+        if (!display) {
+            cancelButton.setVisible(false);
+            cancelButton.setOnAction(null);
+        }
+    }
+
+    /**
+     * Show the cancel button next to the progress bar until the progress is hidden
+     * @param onCancel Action cancelling the ongoing action
+     */
+    public void displayCancel(Runnable onCancel) {
+        cancelButton.setOnAction(event -> {
+            cancelButton.setDisable(true);
+            onCancel.run();
+        });
+        cancelButton.setDisable(false);
+        cancelButton.setVisible(true);
     }
 
     /**
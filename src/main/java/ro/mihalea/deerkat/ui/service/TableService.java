@@ -12,14 +12,12 @@ import javafx.stage.WindowEvent;
 import javafx.util.Callback;
 import lombok.extern.log4j.Log4j2;
 import ro.mihalea.deerkat.classifier.AbstractClassifier;
-import ro.mihalea.deerkat.classifier.CategoryMatch;
 import ro.mihalea.deerkat.classifier.ConfidenceLevel;
 import ro.mihalea.deerkat.exception.repository.RepositoryReadException;
-import ro.mihalea.deerkat.exception.repository.RepositoryUpdateException;
 import ro.mihalea.deerkat.model.Category;
 import ro.mihalea.deerkat.model.Transaction;
 import ro.mihalea.deerkat.repository.CategorySqlRepository;
-import ro.mihalea.deerkat.repository.TransactionSqlRepository;
+import ro.mihalea.deerkat.repository.TransactionUpdateQueue;
 import ro.mihalea.deerkat.ui.controller.MainController;
 import ro.mihalea.deerkat.ui.window.AlertFactory;
 import ro.mihalea.deerkat.ui.window.ClassifierDialog;
@@ -53,9 +51,9 @@ public class TableService {
     private AlertFactory alertFactory;
 
     /**
-     * Sql repository used to save transactions to the disk
+     * Queue used to save transaction updates to the disk without blocking the UI
      */
-    private TransactionSqlRepository transactionSql;
+    private TransactionUpdateQueue updateQueue;
 
     /**
      * Sql repository used to save categories to the disk
@@ -77,6 +75,11 @@ public class TableService {
      */
     private ObservableList<Transaction> model = FXCollections.observableArrayList();
 
+    /**
+     * Marks whether transactions added to the model should be left as they are instead of being matched
+     */
+    private boolean skipMatching = false;
+
     /**
      * Columns used to display data from a transaction
      */
@@ -93,17 +96,17 @@ public class TableService {
      * @param controller MainController used to manage the FXML
      * @param table TableView received from the loader
      * @param alertFactory AlertFactory instantiated with the controller as the owner
-     * @param transactionSql SQL Repository used to store transactions
+     * @param updateQueue Queue used to save transaction updates
      * @param categorySql SQL Repository used to store categories
      * @param classifier Classifier used to suggest categories for transactions
      */
     public TableService(MainController controller, TableView<Transaction> table, AlertFactory alertFactory,
-                        TransactionSqlRepository transactionSql, CategorySqlRepository categorySql,
+                        TransactionUpdateQueue updateQueue, CategorySqlRepository categorySql,
                         AbstractClassifier classifier, StatusService statusService) {
         this.controller = controller;
         this.table = table;
         this.alertFactory = alertFactory;
-        this.transactionSql = transactionSql;
+        this.updateQueue = updateQueue;
         this.categorySql = categorySql;
         this.classifier = classifier;
         this.statusService = statusService;
@@ -158,7 +161,7 @@ public class TableService {
     private void initialiseModel() {
         model.addListener((ListChangeListener<Transaction>) c -> {
             while (c.next()) {
-                if (c.wasAdded()) {
+                if (c.wasAdded() && !skipMatching) {
                     log.debug("One or more items have been added to the table");
                     for (Transaction t : c.getAddedSubList()) {
                         searchMatches(t);
@@ -222,12 +225,7 @@ public class TableService {
                 searchMatches();
                 table.refresh();
 
-                try {
-                    transactionSql.update(transaction);
-                } catch (RepositoryUpdateException e) {
-                    log.error("Failed to update transaction after categorisation: " + transaction, e);
-                    statusService.showError("Failed to update transaction in the database");
-                }
+                updateQueue.update(transaction);
             }
         }
     }
@@ -265,37 +263,28 @@ public class TableService {
         int needConfirmation = 0;
 
         if (transaction.getCategory() == null) {
-            Optional<CategoryMatch> best = classifier.getBest(transaction);
-            if (best.isPresent()) {
-                CategoryMatch match = best.get();
-                try {
-                    if (match.getSimilarity() > AbstractClassifier.NEED_CONFIRMATION_VALUE) {
-                        // Similarity between NEED_CONFIRMATION_VALUE and MAXIMUM
-
-                        if (match.getSimilarity() > AbstractClassifier.AUTOMATIC_MATCH_VALUE) {
-                            // Similarity between AUTOMATIC_MATCH_VALUE and MAXIMUM
-                            // Add this item to the classifier's data model as it's most certainly a good match,
-                            // and skip this for NEED_CONFIRMATION matches as I don't want to have the classifier
-                            // have the possibility of self training as it may lead to unforeseen effects
-                            classifier.addModelItem(transaction);
-
-                            transaction.setConfidenceLevel(ConfidenceLevel.PRETTY_SURE);
-                            log.info("Automatically matched {} with {}", transaction, match);
-                            perfect++;
-                        } else {
-                            // Similarity between NEED_CONFIRMATION_VALUE and AUTOMATIC_MATCH_VALUE
-                            transaction.setConfidenceLevel(ConfidenceLevel.NEED_CONFIRMATION);
-                            log.info("Confirmation needed for matching {} with {}", transaction, match);
-                            needConfirmation++;
-                        }
-
-                        transaction.setCategory(match.getCategory());
-                        transactionSql.update(transaction);
-                        updated = true;
-                    }
-                } catch (RepositoryUpdateException e) {
-                    log.error("Failed to update transaction in the database: " + transaction, e);
-                }
+            switch (classifier.classify(transaction)) {
+                case PRETTY_SURE:
+                    // Similarity between AUTOMATIC_MATCH_VALUE and MAXIMUM
+                    // Add this item to the classifier's data model as it's most certainly a good match,
+                    // and skip this for NEED_CONFIRMATION matches as I don't want to have the classifier
+                    // have the possibility of self training as it may lead to unforeseen effects
+                    classifier.addModelItem(transaction);
+
+                    log.info("Automatically matched {} with {}", transaction, transaction.getCategory());
+                    perfect++;
+                    updated = true;
+                    break;
+                case NEED_CONFIRMATION:
+                    // Similarity between NEED_CONFIRMATION_VALUE and AUTOMATIC_MATCH_VALUE
+                    log.info("Confirmation needed for matching {} with {}", transaction, transaction.getCategory());
+                    needConfirmation++;
+                    updated = true;
+                    break;
+            }
+
+            if (updated) {
+                updateQueue.update(transaction);
             }
         }
 
@@ -371,6 +360,20 @@ public class TableService {
         model.addAll(transactions);
     }
 
+    /**
+     * Add a collection of transactions that have already been through the classifier, without matching them again
+     *
+     * @param transactions Collection of classified transactions
+     */
+    public void addClassified(Collection<? extends Transaction> transactions) {
+        skipMatching = true;
+        try {
+            model.addAll(transactions);
+        } finally {
+            skipMatching = false;
+        }
+    }
+
     /**
      * Checks whether the table holds any transactions or not
      *
@@ -1,32 +1,46 @@
 package ro.mihalea.deerkat.ui.service;
 
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.concurrent.Task;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import javafx.util.Pair;
 import lombok.extern.log4j.Log4j2;
+import ro.mihalea.deerkat.classifier.AbstractClassifier;
 import ro.mihalea.deerkat.exception.model.TransactionFieldException;
 import ro.mihalea.deerkat.exception.model.TransactionParseException;
 import ro.mihalea.deerkat.exception.processor.FileNotFoundException;
 import ro.mihalea.deerkat.exception.processor.FileNotReadableException;
-import ro.mihalea.deerkat.exception.repository.RepositoryCreateException;
 import ro.mihalea.deerkat.exception.repository.RepositoryDeleteException;
-import ro.mihalea.deerkat.exception.repository.RepositoryInitialisationException;
+import ro.mihalea.deerkat.exception.repository.RepositoryReadException;
 import ro.mihalea.deerkat.model.Category;
+import ro.mihalea.deerkat.model.ImportCheckpoint;
 import ro.mihalea.deerkat.model.Transaction;
+import ro.mihalea.deerkat.exporter.ExportFormat;
+import ro.mihalea.deerkat.exporter.ExportPipeline;
+import ro.mihalea.deerkat.exporter.IncrementalExporter;
+import ro.mihalea.deerkat.importer.FolderWatcher;
+import ro.mihalea.deerkat.importer.ImportReport;
+import ro.mihalea.deerkat.importer.StatementImporter;
+import ro.mihalea.deerkat.repository.CategoryPaths;
 import ro.mihalea.deerkat.repository.CategorySqlRepository;
-import ro.mihalea.deerkat.repository.CsvRepository;
+import ro.mihalea.deerkat.repository.DatabaseSnapshot;
+import ro.mihalea.deerkat.repository.IngestResult;
 import ro.mihalea.deerkat.repository.TransactionSqlRepository;
 import ro.mihalea.deerkat.ui.window.AlertFactory;
-import ro.mihalea.deerkat.utility.HtmlProcessor;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Service used to provide better encapsulation for importing and exporting transactions
@@ -38,11 +52,6 @@ public class TransferService {
      */
     private Stage owner;
 
-    /**
-     * Processor used to parse transactions from an HTML file
-     */
-    private HtmlProcessor processor = new HtmlProcessor();
-
     /**
      * Factory used to create alerts and display them
      */
@@ -54,15 +63,26 @@ public class TransferService {
     private StatusService statusService;
 
     /**
-     * Repository used to export transactions to a csv file
+     * Repository needed for resolving the categories of exported transactions
      */
-    private CsvRepository csvRepository;
+    private CategorySqlRepository categorySqlRepository;
 
     /**
-     * Repository needed for initialising the csvRepository
-     * Storing it is necessary as the CsvRepository gets initialised only at the user's input
+     * Classifier assigning categories to imported transactions
      */
-    private CategorySqlRepository categorySqlRepository;
+    private AbstractClassifier classifier;
+
+    /**
+     * Watcher importing the statements dropped into a folder, or null if no folder is watched
+     */
+    private FolderWatcher watcher;
+
+    /**
+     * Maximum number of statements parsed at the same time during an import, which can be overridden with the
+     * deerkat.importParallelism system property
+     */
+    private final static int IMPORT_PARALLELISM =
+            Integer.getInteger("deerkat.importParallelism", Runtime.getRuntime().availableProcessors());
 
     /**
      * Instantiate the transfer service, setting the stage owner needed for dialogs and the AlertFactory
@@ -70,179 +90,492 @@ public class TransferService {
      * @param owner Stage owner needed for instantiating file choosers
      * @param alertFactory Alert factory used for displaying important message
      * @param statusService Status service used for displaying update information
-     * @param categorySqlRepository Category repository used for initialising the csv repository for category resolution
+     * @param categorySqlRepository Category repository used for resolving the categories of exported transactions
+     * @param classifier Classifier assigning categories to imported transactions
      */
-    public TransferService(Stage owner, AlertFactory alertFactory, StatusService statusService, CategorySqlRepository categorySqlRepository) {
+    public TransferService(Stage owner, AlertFactory alertFactory, StatusService statusService,
+                           CategorySqlRepository categorySqlRepository, AbstractClassifier classifier) {
         this.owner = owner;
         this.alertFactory = alertFactory;
         this.statusService = statusService;
         this.categorySqlRepository = categorySqlRepository;
+        this.classifier = classifier;
     }
 
     /**
-     * Import transactions from an HTML file containing a bank statement into the sql repository
+     * Import transactions from one or more HTML files containing bank statements, or ZIP archives of them, into the
+     * sql repository
      * @param repository Transaction repository used to save data on disk
      * @param table Table service used to insert transactions into the ui
      */
     public void importFile(TransactionSqlRepository repository, TableService table, Runnable onSuccess) {
         log.info("User has begun the import action");
 
-        // Open the file chooser dialog and let the user select an html file
+        // Open the file chooser dialog and let the user select one or more html files
         FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Open statement");
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("HTML (*.html)", "*.html"));
-        File file = fileChooser.showOpenDialog(owner);
+        fileChooser.setTitle("Open statements");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Statements (*.html, *.zip)", "*.html", "*.zip"),
+                new FileChooser.ExtensionFilter("HTML (*.html)", "*.html"),
+                new FileChooser.ExtensionFilter("ZIP archives (*.zip)", "*.zip"));
+        List<File> files = fileChooser.showOpenMultipleDialog(owner);
+
+        if (files != null && !files.isEmpty()) {
+            List<Path> paths = files.stream().map(File::toPath).collect(Collectors.toList());
+            this.importStatements(paths, repository, table, onSuccess);
+        } else {
+            log.info("User has cancelled the import action");
+        }
+    }
 
-        if (file != null) {
-            // If a file has been selected, parse it and add it to the table data
-            Task<Pair<Integer, Integer>> task = new Task<Pair<Integer, Integer>>() {
-                @Override
-                protected Pair<Integer, Integer> call() throws Exception {
-                    statusService.displayProgress(true);
-                    List<Transaction> transactions = processor.parseTransactions(file.getAbsolutePath());
-
-                    // Number of items successfully imported
-                    int successful = 0;
-
-                    for (Transaction t : transactions) {
-                        try {
-                            Optional<Long> key = repository.add(t);
-                            if (key.isPresent()) {
-                                t.setId(key.get());
-                                table.add(t);
-                                successful++;
-                            } else {
-                                // A key should always be present, but catch this error anyways
-                                log.error("Failed to import transaction because database did not return a key for " + t);
-                            }
-                        } catch (RepositoryCreateException e) {
-                            log.debug("Skipping transaction as it is already found in the database: " + t);
-                        }
-
-                        updateProgress(successful, transactions.size());
-                    }
+    /**
+     * Import transactions from all HTML statements found in a folder into the sql repository
+     * @param repository Transaction repository used to save data on disk
+     * @param table Table service used to insert transactions into the ui
+     */
+    public void importFolder(TransactionSqlRepository repository, TableService table, Runnable onSuccess) {
+        log.info("User has begun the folder import action");
 
-                    return new Pair<>(successful, transactions.size());
-                }
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Open statement folder");
+        File folder = directoryChooser.showDialog(owner);
 
+        if (folder != null) {
+            this.importStatements(Collections.singletonList(folder.toPath()), repository, table, onSuccess);
+        } else {
+            log.info("User has cancelled the folder import action");
+        }
+    }
 
-                @Override
-                protected void succeeded() {
-                    statusService.displayProgress(false);
+    /**
+     * Import again the statements whose import has been interrupted, continuing after their last committed rows.
+     * Checkpoints of statements that cannot be found anymore are dropped.
+     * @param repository Transaction repository used to save data on disk
+     * @param table Table service used to insert transactions into the ui
+     * @param checkpoints Checkpoints of the interrupted imports
+     */
+    public void resumeImports(TransactionSqlRepository repository, TableService table,
+                              List<ImportCheckpoint> checkpoints, Runnable onSuccess) {
+        List<Path> paths = checkpoints.stream()
+                .map(checkpoint -> Paths.get(checkpoint.getPath()))
+                .filter(Files::isRegularFile)
+                .distinct()
+                .collect(Collectors.toList());
+
+        if (paths.size() != checkpoints.size()) {
+            log.warn("{} interrupted statements cannot be found anymore", checkpoints.size() - paths.size());
+        }
 
-                    onSuccess.run();
+        if (paths.isEmpty()) {
+            this.discardImports(repository);
+            statusService.showError("The interrupted statements cannot be found anymore");
+        } else {
+            log.info("Resuming the import of {} statements", paths.size());
+            this.importStatements(paths, repository, table, onSuccess);
+        }
+    }
 
-                    Pair<Integer, Integer> pair = this.getValue();
-                    int successful = pair.getKey();
-                    int total = pair.getValue();
+    /**
+     * Forget the checkpoints of the interrupted imports, so their statements are imported from the start next time
+     * @param repository Transaction repository holding the checkpoints
+     */
+    public void discardImports(TransactionSqlRepository repository) {
+        try {
+            repository.removeCheckpoints();
+        } catch (RepositoryDeleteException e) {
+            log.error("Failed to remove the import checkpoints", e);
+        }
+    }
 
-                    log.info("Imported {} out of {} transaction from HTML", successful, total);
+    /**
+     * Let the user pick a folder whose new statements are imported automatically, replacing the folder that was
+     * watched before. Imported transactions are added to the table as soon as each statement is stored.
+     * @param repository Transaction repository used to save data on disk
+     * @param table Table service used to insert transactions into the ui
+     * @return True if a folder is being watched afterwards
+     */
+    public boolean watchFolder(TransactionSqlRepository repository, TableService table, Runnable onSuccess) {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Watch statement folder");
+        File folder = directoryChooser.showDialog(owner);
+
+        if (folder == null) {
+            log.info("User has cancelled picking a folder to watch");
+            return watcher != null;
+        }
 
-                    if (successful == 0 && total != 0) {
-                        alertFactory.createError("Import", "No transactions have been imported. \n" +
-                                "They may already be in the database.").showAndWait();
-                    } else {
-                        statusService.showMessage(successful + " out of " + total + " transactions have been imported");
-                    }
-                }
+        this.stopWatching();
+        FolderWatcher folderWatcher = new FolderWatcher(folder.toPath(),
+                new StatementImporter(repository, classifier, IMPORT_PARALLELISM), new FolderWatcher.Listener() {
+            @Override
+            public void stored(Path file, List<Transaction> inserted) {
+                Platform.runLater(() -> {
+                    table.addClassified(inserted);
+                    onSuccess.run();
+                });
+            }
 
-                @Override
-                protected void failed() {
-                    statusService.displayProgress(false);
-                    log.error("Failed to import transactions from HTML", this.getException());
-                    alertFactory.createError(
-                            "Import error",
-                            "An error occurred while trying to import your file"
-                    );
+            @Override
+            public void imported(ImportReport report) {
+                if (report.getSkippedFiles() != report.getFiles()) {
+                    Platform.runLater(() -> statusService.showMessage(report.getSummary()));
                 }
-            };
-
-            // Start the import thread
-            new Thread(task).start();
-            statusService.bindProgress(task.progressProperty());
+            }
 
-        } else {
-            log.info("User has cancelled the import action");
+            @Override
+            public void failed(Path path, Exception e) {
+                Platform.runLater(() -> statusService.showError("Failed to import " + path.getFileName()));
+            }
+        });
+
+        try {
+            folderWatcher.start();
+            watcher = folderWatcher;
+            statusService.showMessage("Watching '" + folder.getName() + "' for new statements");
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to watch the folder " + folder, e);
+            alertFactory.createError(
+                    "Watch error",
+                    "Failed to watch " + folder.getAbsolutePath() + " for new statements"
+            ).showAndWait();
+            return false;
         }
     }
 
     /**
-     * Export transactions to a comma separated value file
+     * Stop importing the statements dropped into the watched folder, if there is one
      */
-    public void export(List<Transaction> transactions) {
-        // Due to short-circuiting the exportCsv statement does not execute if initialiseCsvRepository returns false
-        if (initialiseCsvRepository() && exportCsv(transactions)) {
-            statusService.showMessage("Successfully exported the selected transaction to '" +
-                    csvRepository.getFilePath().getFileName() +
-                    "'"
-            );
+    public void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
         }
     }
 
     /**
-     * Open a file chooser to select the location of the export file
-     *
-     * @return It returns true if the user has selected a file and the repository has been successfully created
+     * Parse and classify the statements in the background and add the new transactions to the table
+     * @param paths Statement files or folders
+     * @param repository Transaction repository used to save data on disk
+     * @param table Table service used to insert transactions into the ui
+     */
+    private void importStatements(List<Path> paths, TransactionSqlRepository repository, TableService table,
+                                  Runnable onSuccess) {
+        StatementImporter importer = new StatementImporter(repository, classifier, IMPORT_PARALLELISM);
+
+        Task<ImportReport> task = new Task<ImportReport>() {
+            @Override
+            protected ImportReport call() throws Exception {
+                return importer.importStatements(paths, new StatementImporter.Listener() {
+                    @Override
+                    public void progress(int completed, int total) {
+                        updateProgress(completed, total);
+                    }
+
+                    @Override
+                    public void failed(Path file, Exception e) {
+                        Platform.runLater(() -> statusService.showError("Failed to import " + file.getFileName()));
+                    }
+                });
+            }
+
+            @Override
+            protected void succeeded() {
+                statusService.displayProgress(false);
+
+                // A cancelled import still returns the rows committed before it stopped, which are shown as well
+                ImportReport report = this.getValue();
+                IngestResult result = report.getResult();
+                // The pipeline has already classified the transactions, so they don't need to be matched again
+                table.addClassified(result.getInserted());
+
+                onSuccess.run();
+
+                int successful = result.getCount(IngestResult.Outcome.INSERTED);
+                int total = result.getTotal();
+
+                log.info("Imported {} out of {} transaction from {} statements", successful, total, report.getFiles());
+
+                if (!report.getFailures().isEmpty() || !report.getIncomplete().isEmpty()) {
+                    statusService.showError(report.getSummary());
+                } else if (report.isCancelled()) {
+                    statusService.showMessage(report.getSummary() + ", it can be resumed by importing the same " +
+                            "statements");
+                } else if (report.getFiles() != 0 && report.getSkippedFiles() == report.getFiles()) {
+                    alertFactory.createError("Import", "No transactions have been imported. \n" +
+                            "The selected statements have already been imported.").showAndWait();
+                } else if (successful == 0 && (total != 0 || report.getAlreadyStored() != 0)) {
+                    alertFactory.createError("Import", "No transactions have been imported. \n" +
+                            (result.getCount(IngestResult.Outcome.DUPLICATE) + report.getAlreadyStored()) +
+                            " of them are already in the database.").showAndWait();
+                } else {
+                    statusService.showMessage(report.getSummary());
+                }
+            }
+
+            @Override
+            protected void failed() {
+                statusService.displayProgress(false);
+                log.error("Failed to import transactions from HTML", this.getException());
+                alertFactory.createError(
+                        "Import error",
+                        "An error occurred while trying to import your files"
+                ).showAndWait();
+            }
+        };
+
+        // Start the import thread
+        statusService.displayProgress(true);
+        statusService.bindProgress(task.progressProperty());
+        // The pipeline stops between commits and returns what it stored, instead of the task being cancelled
+        statusService.displayCancel(importer::cancel);
+        Thread thread = new Thread(task, "statement-import");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Export transactions to a file, in the format matching the extension chosen by the user.
+     * Files ending in ".gz" are compressed. The file is written in the background, showing its progress.
      */
-    private boolean initialiseCsvRepository() {
+    public void export(List<Transaction> transactions) {
         FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Export to CSV");
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Comma separated value (*.csv)", "*.csv"));
+        fileChooser.setTitle("Export transactions");
+        for (ExportFormat format : ExportFormat.values()) {
+            String extension = "*." + format.getExtension();
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(
+                    format.getTitle() + " (" + extension + ")", extension, extension + ".gz"));
+        }
 
         File file = fileChooser.showSaveDialog(owner);
+        if (file == null) {
+            log.info("User cancelled export");
+            return;
+        }
 
-        if (file != null) {
-            try {
-                Path path = Paths.get(file.getAbsolutePath());
-                /*
-                If there is already a repository initialised with the same path, skip creating a new
-                one and just nuke the existent one
-                */
-                if (csvRepository != null && csvRepository.getFilePath().equals(path)) {
-                    log.debug("Skipping initialising csv repository with the same path, nuking it instead");
-                    csvRepository.nuke();
-                } else {
-                    csvRepository = new CsvRepository(path);
-                    csvRepository.setCategoryRepository(categorySqlRepository);
+        // Fall back on the selected filter as some platforms do not add the extension to the file name
+        int selected = fileChooser.getExtensionFilters().indexOf(fileChooser.getSelectedExtensionFilter());
+        ExportFormat format = ExportFormat.fromFileName(file.getName())
+                .orElse(ExportFormat.values()[Math.max(selected, 0)]);
+        boolean gzip = file.getName().toLowerCase().endsWith(".gz");
+        // The table can be edited while the file is written
+        List<Transaction> exported = new ArrayList<>(transactions);
+
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                try (ExportPipeline pipeline = new ExportPipeline(loadCategoryPaths())) {
+                    pipeline.addTarget(file.toPath(), format, gzip);
+                    for (int i = 0; i < exported.size(); i++) {
+                        pipeline.write(exported.get(i));
+                        updateProgress(i + 1, exported.size());
+                    }
+                    pipeline.finish();
                 }
+                return null;
+            }
 
-                return true;
-            } catch (RepositoryInitialisationException | RepositoryDeleteException e) {
-                log.warn("Failed to initialise csv repository at: " + file.getAbsolutePath(), e);
+            @Override
+            protected void succeeded() {
+                statusService.displayProgress(false);
+                statusService.showMessage("Successfully exported the selected transaction to '" + file.getName() + "'");
+            }
 
+            @Override
+            protected void failed() {
+                statusService.displayProgress(false);
+                log.warn("Failed to export the transactions to " + file.getAbsolutePath(), this.getException());
                 alertFactory.createError(
                         "Export error",
-                        "There was an error while creating your csv file at " + file.getAbsolutePath()
+                        "There was an error while exporting your transactions to " + file.getAbsolutePath()
                 ).showAndWait();
             }
-        } else {
-            log.info("User cancelled export");
-        }
+        };
 
-        return false;
+        this.runInBackground(task, "transaction-export");
     }
 
     /**
-     * Export the data currently stored in the table to a csv file
-     * @return Returns true if the export was a success
+     * Append the transactions added or changed since the previous export to the same file.
+     * Only formats that can be appended to are offered. The transactions are streamed from the database in the
+     * background, and as their number is not known beforehand the progress bar only shows that the export is running.
+     * @param repository Transaction repository holding the transactions and the export marks
      */
-    private boolean exportCsv(List<Transaction> transactions) {
-        // The repository should only be null if the user pressed cancel
-        if (csvRepository != null) {
-            try {
-                // Add all table data to the repository
-                csvRepository.addAll(transactions);
-                return true;
-            } catch (RepositoryCreateException e) {
-                log.warn("Failed to add items to the csv repository", e);
+    public void exportNew(TransactionSqlRepository repository) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export new transactions");
+        List<ExportFormat> formats = new ArrayList<>();
+        for (ExportFormat format : ExportFormat.values()) {
+            if (format.isAppendable()) {
+                String extension = "*." + format.getExtension();
+                fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(
+                        format.getTitle() + " (" + extension + ")", extension, extension + ".gz"));
+                formats.add(format);
+            }
+        }
 
+        File file = fileChooser.showSaveDialog(owner);
+        if (file == null) {
+            log.info("User cancelled incremental export");
+            return;
+        }
+
+        int selected = fileChooser.getExtensionFilters().indexOf(fileChooser.getSelectedExtensionFilter());
+        ExportFormat format = ExportFormat.fromFileName(file.getName())
+                .orElse(formats.get(Math.max(selected, 0)));
+        boolean gzip = file.getName().toLowerCase().endsWith(".gz");
+
+        IncrementalExporter exporter = new IncrementalExporter(repository, categorySqlRepository);
+        Task<Integer> task = new Task<Integer>() {
+            @Override
+            protected Integer call() throws Exception {
+                return exporter.export(file.toPath(), format, gzip);
+            }
+
+            @Override
+            protected void succeeded() {
+                statusService.displayProgress(false);
+                statusService.showMessage("Exported " + this.getValue() + " new transactions to '" + file.getName() + "'");
+            }
+
+            @Override
+            protected void failed() {
+                statusService.displayProgress(false);
+                log.warn("Failed to export the new transactions to " + file.getAbsolutePath(), this.getException());
                 alertFactory.createError(
                         "Export error",
-                        "Failed to add the transaction to you CSV file"
+                        "There was an error while exporting your new transactions to " + file.getAbsolutePath()
                 ).showAndWait();
             }
+        };
+
+        this.runInBackground(task, "incremental-export");
+    }
+
+    /**
+     * Copy the database to a backup file picked by the user, in the background so the application can still be used
+     */
+    public void backupDatabase() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Back up database");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("SQLite database (*.sqlite)", "*.sqlite"));
+
+        File file = fileChooser.showSaveDialog(owner);
+        if (file == null) {
+            log.info("User cancelled the database backup");
+            return;
         }
 
-        return false;
+        DatabaseSnapshot snapshot = new DatabaseSnapshot();
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                snapshot.setListener((remaining, total) -> updateProgress(total - remaining, total));
+                snapshot.snapshot(file.toPath());
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                statusService.displayProgress(false);
+                statusService.showMessage("Database has been backed up to '" + file.getName() + "'");
+            }
+
+            @Override
+            protected void failed() {
+                statusService.displayProgress(false);
+                log.error("Failed to back up the database to " + file.getAbsolutePath(), this.getException());
+                alertFactory.createError(
+                        "Backup error",
+                        "There was an error while backing up the database to " + file.getAbsolutePath()
+                ).showAndWait();
+            }
+        };
+
+        this.runInBackground(task, "database-backup");
+    }
+
+    /**
+     * Replace the database with a backup file picked by the user, after asking for confirmation as every change
+     * made since the backup is lost
+     * @param onRestored Action reloading everything read from the database, run on the application thread
+     */
+    public void restoreDatabase(Runnable onRestored) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Restore database backup");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("SQLite database (*.sqlite)", "*.sqlite"));
+
+        File file = fileChooser.showOpenDialog(owner);
+        if (file == null) {
+            log.info("User cancelled the database restore");
+            return;
+        }
+
+        Alert confirmation = alertFactory.create(
+                Alert.AlertType.CONFIRMATION,
+                "Restore database",
+                "All transactions and categories will be replaced with the ones in '" + file.getName() + "'.\n" +
+                        "Are you sure you want to restore the backup?");
+        if (!confirmation.showAndWait().isPresent() || confirmation.getResult() != ButtonType.OK) {
+            return;
+        }
+
+        // Statements imported by the watcher would otherwise be written into the restored database
+        this.stopWatching();
+
+        DatabaseSnapshot snapshot = new DatabaseSnapshot();
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                snapshot.setListener((remaining, total) -> updateProgress(total - remaining, total));
+                snapshot.restore(file.toPath());
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                statusService.displayProgress(false);
+                onRestored.run();
+                statusService.showMessage("Database has been restored from '" + file.getName() + "'");
+            }
+
+            @Override
+            protected void failed() {
+                statusService.displayProgress(false);
+                log.error("Failed to restore the database from " + file.getAbsolutePath(), this.getException());
+                alertFactory.createError(
+                        "Restore error",
+                        "There was an error while restoring the database from " + file.getAbsolutePath()
+                ).showAndWait();
+            }
+        };
+
+        this.runInBackground(task, "database-restore");
+    }
+
+    /**
+     * Run an export, backup or restore in the background, showing its progress in the status bar
+     * @param task Task writing the file
+     * @param name Name of the thread running the task
+     */
+    private void runInBackground(Task<?> task, String name) {
+        statusService.displayProgress(true);
+        statusService.bindProgress(task.progressProperty());
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Build the category paths used by the exported files
+     * @return Paths of all categories, or no paths if the categories could not be read
+     */
+    private CategoryPaths loadCategoryPaths() {
+        try {
+            return CategoryPaths.load(categorySqlRepository);
+        } catch (RepositoryReadException e) {
+            log.error("Failed to retrieve the categories, exporting transactions without them", e);
+            return CategoryPaths.EMPTY;
+        }
     }
 }
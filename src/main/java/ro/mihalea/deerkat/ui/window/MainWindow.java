@@ -15,6 +15,11 @@ import ro.mihalea.deerkat.ui.controller.MainController;
  * It has a table holding transactions, and buttons to import and export them.
  */
 public class MainWindow extends Application {
+    /**
+     * Controller of the main window, kept to notify it when the application stops
+     */
+    private MainController controller;
+
     public static void main(String[] args) {
         MainWindow.launch(args);
     }
@@ -23,7 +28,7 @@ public class MainWindow extends Application {
     public void start(Stage primaryStage) throws Exception {
         FXMLLoader loader = new FXMLLoader(getClass().getClassLoader().getResource("fxml/main.fxml"));
         Parent root = loader.load();
-        MainController controller = loader.getController();
+        controller = loader.getController();
 
         Platform.runLater(root::requestFocus);
 
@@ -37,4 +42,11 @@ public class MainWindow extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
     }
+
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
+    }
 }
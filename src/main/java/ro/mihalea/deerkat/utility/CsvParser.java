@@ -0,0 +1,227 @@
+package ro.mihalea.deerkat.utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streaming CSV parser following RFC 4180.
+ *
+ * Records are read one at a time from the underlying reader into a buffer that is reused for every record, so the
+ * only allocations made while parsing are the strings of the fields that are actually requested.
+ * Quoted fields may contain separators, escaped quotes ("") and line breaks, and both CRLF and LF line endings
+ * are accepted.
+ */
+public class CsvParser implements Closeable {
+    /**
+     * Number of characters read from the reader at once
+     */
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Character marking the end of a field
+     */
+    private final static char SEPARATOR = ',';
+
+    /**
+     * Character used to quote fields
+     */
+    private final static char QUOTE = '"';
+
+    /**
+     * Source of the CSV data
+     */
+    private final Reader reader;
+
+    /**
+     * Characters read from the reader but not parsed yet
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Position of the next character to be parsed in the buffer
+     */
+    private int position = 0;
+
+    /**
+     * Number of valid characters in the buffer
+     */
+    private int limit = 0;
+
+    /**
+     * Unescaped contents of all fields of the current record, one after the other
+     */
+    private final StringBuilder record = new StringBuilder(256);
+
+    /**
+     * End offset of every field of the current record inside the record buffer
+     */
+    private int[] ends = new int[16];
+
+    /**
+     * Number of fields in the current record
+     */
+    private int size = 0;
+
+    /**
+     * Line of the input on which the current record starts
+     */
+    private long line = 0;
+
+    /**
+     * Number of line breaks consumed so far
+     */
+    private long lines = 0;
+
+    /**
+     * Create a parser reading from a character stream
+     * @param reader Source of the CSV data, which is closed together with the parser
+     */
+    public CsvParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Advance to the next record of the input
+     * @return False if the end of the input has been reached
+     * @throws IOException Thrown if the input could not be read or it ends inside a quoted field
+     */
+    public boolean next() throws IOException {
+        record.setLength(0);
+        size = 0;
+        line = lines + 1;
+
+        int c = this.read();
+        if (c == -1) {
+            return false;
+        }
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Quoted field starting on line " + line + " is never closed");
+                }
+
+                if (c == QUOTE) {
+                    if (this.peek() == QUOTE) {
+                        position++;
+                        record.append(QUOTE);
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        lines++;
+                    }
+                    record.append((char) c);
+                }
+            } else if (c == -1) {
+                this.endField();
+                return true;
+            } else if (c == QUOTE && this.atFieldStart()) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                this.endField();
+            } else if (c == '\r' || c == '\n') {
+                if (c == '\r' && this.peek() == '\n') {
+                    position++;
+                }
+                lines++;
+                this.endField();
+                return true;
+            } else {
+                record.append((char) c);
+            }
+
+            c = this.read();
+        }
+    }
+
+    /**
+     * @return Number of fields in the current record
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return a field of the current record
+     * @param index Position of the field in the record, starting from 0
+     * @return Unescaped contents of the field
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Record on line " + line + " has no field " + index);
+        }
+
+        int start = index == 0 ? 0 : ends[index - 1];
+        return record.substring(start, ends[index]);
+    }
+
+    /**
+     * Check whether the current record is an empty line
+     * @return True if the record has a single empty field
+     */
+    public boolean isBlank() {
+        return size == 1 && ends[0] == 0;
+    }
+
+    /**
+     * @return Line of the input on which the current record starts
+     */
+    public long getLine() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Mark the end of the field currently being parsed
+     */
+    private void endField() {
+        if (size == ends.length) {
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        ends[size++] = record.length();
+    }
+
+    /**
+     * @return True if no characters have been added to the field currently being parsed
+     */
+    private boolean atFieldStart() {
+        return record.length() == (size == 0 ? 0 : ends[size - 1]);
+    }
+
+    /**
+     * Consume the next character of the input
+     * @return Next character, or -1 at the end of the input
+     */
+    private int read() throws IOException {
+        int c = this.peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    /**
+     * Return the next character of the input without consuming it
+     * @return Next character, or -1 at the end of the input
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+}
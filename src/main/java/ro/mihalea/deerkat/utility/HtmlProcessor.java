@@ -11,14 +11,22 @@ import ro.mihalea.deerkat.exception.processor.FileNotFoundException;
 import ro.mihalea.deerkat.exception.processor.FileNotReadableException;
 import ro.mihalea.deerkat.model.Transaction;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * HtmlProcessor is used to scrape HTML files and extract transactions from them
@@ -26,9 +34,25 @@ import java.util.stream.Collectors;
 @Log4j2
 public class HtmlProcessor {
     /**
-     * Field used to convert LocalDates to String when parsing
+     * Class of the table holding the transactions in HSBC statements
      */
-    private final LocalDateConverter converter = new LocalDateConverter();
+    private final static String TABLE_CLASS = "hsbcTableStyle07";
+
+    /**
+     * Class of the table rows holding a transaction in HSBC statements
+     */
+    private final static String ROW_CLASS = "hsbcTableRow05";
+
+    /**
+     * Number of bytes at the start of a file searched for a charset declaration
+     */
+    private final static int DETECTION_LENGTH = 5 * 1024;
+
+    /**
+     * Charset declaration inside a meta tag
+     */
+    private final static Pattern META_CHARSET =
+            Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?\\s*([a-zA-Z0-9_:.\\-]+)", Pattern.CASE_INSENSITIVE);
 
     /**
      * Open an HTML file and try to extract transactions from it by scraping the document, and return the resulting
@@ -40,97 +64,192 @@ public class HtmlProcessor {
     public List<Transaction> parseTransactions(String file) throws FileNotFoundException, FileNotReadableException, TransactionParseException, TransactionFieldException {
         log.debug("parseTransactions() method has been initiated");
 
-        String html = this.readFile(file);
-        return this.parseFile(html);
+        Document doc = this.readFile(file);
+        return this.parseDocument(doc);
     }
 
     /**
-     * Parse HTML content to extract transactions and return them in a list
+     * Extract the transactions from a parsed HTML document and return them in a list
      *
-     * @param html HTML content
+     * @param doc Parsed HTML document
      * @return List of Transaction objects
      */
-    private List<Transaction> parseFile(String html) throws TransactionParseException, TransactionFieldException {
-        Document doc = Jsoup.parse(html);
-
+    private List<Transaction> parseDocument(Document doc) throws TransactionParseException, TransactionFieldException {
         // Extract all table rows containing trasaction data
-        Elements tableRows = doc.select("table.hsbcTableStyle07 tr.hsbcTableRow05");
+        Elements tableRows = doc.select("table." + TABLE_CLASS + " tr." + ROW_CLASS);
         log.debug("Found {} transaction rows", tableRows.size());
 
         List<Transaction> transactions = new ArrayList<>();
 
         for (Element row : tableRows) {
-            Elements dataElements = row.select("td");
-            Transaction.TransactionBuilder builder = Transaction.builder();
-
-            // If Cr is found in the last column it means that this transactions has added money to this account
-            // Mark the transaction's inflow flag as true
-            if (dataElements.get(dataElements.size() - 1).text().equals("Cr")) {
-                builder.inflow(true);
+            List<String> cells = new ArrayList<>();
+            for (Element data : row.select("td")) {
+                cells.add(data.text());
             }
 
-            // Remove the column which usually holds the "Cr" string which is not needed
-            dataElements.remove(dataElements.size() - 1);
+            transactions.add(this.toTransaction(cells));
+        }
+
+        log.info("Parsed {} transactions", transactions.size());
+        return transactions;
+    }
+
+    /**
+     * Scan an HTML file without building a document and pass every transaction to the consumer as soon as its row
+     * has been read, so memory use stays constant for statements of any size. The transactions are identical to
+     * the ones returned by {@link #parseTransactions(String)}.
+     *
+     * @param file Path to an HTML file containing transactions obtained from HSBC UAE
+     * @param consumer Receiver of the transactions, in the order they appear in the file
+     * @return Number of transactions found
+     */
+    public int streamTransactions(String file, Consumer<Transaction> consumer) throws FileNotFoundException, FileNotReadableException, TransactionParseException, TransactionFieldException {
+        return this.streamTransactions(Paths.get(file), consumer);
+    }
+
+    /**
+     * Scan an HTML file like {@link #streamTransactions(String, Consumer)} does. The file can belong to any file
+     * system, such as an entry of a ZIP archive opened as a file system, which is read without being extracted.
+     *
+     * @param file HTML file containing transactions obtained from HSBC UAE
+     * @param consumer Receiver of the transactions, in the order they appear in the file
+     * @return Number of transactions found
+     */
+    public int streamTransactions(Path file, Consumer<Transaction> consumer) throws FileNotFoundException, FileNotReadableException, TransactionParseException, TransactionFieldException {
+        Path path = this.checkFile(file);
+
+        HtmlRowScanner scanner = new HtmlRowScanner(TABLE_CLASS, ROW_CLASS);
+        try (BufferedInputStream stream = new BufferedInputStream(Files.newInputStream(path), DETECTION_LENGTH)) {
+            Charset charset = detectCharset(stream);
+            Reader reader = new InputStreamReader(stream, charset);
+
+            int count = scanner.scan(reader, cells -> consumer.accept(this.toTransaction(cells)));
+            log.info("Streamed {} transactions from {} decoded as {}", count, path.getFileName(), charset);
+            return count;
+        } catch (IOException e) {
+            throw new FileNotReadableException("The requested HTML file could not be read successfully: "
+                    + path.toAbsolutePath().toUri(), e);
+        }
+    }
+
+    /**
+     * Build a transaction from the text of the cells of a table row
+     *
+     * @param cells Text of every cell of the row
+     * @return Transaction stored in the row
+     */
+    private Transaction toTransaction(List<String> cells) throws TransactionParseException, TransactionFieldException {
+        // The last column usually holds the "Cr" string and the second to last one the "ARE" currency string,
+        // neither of which is stored, so a valid row has two more cells than the transaction has fields
+        int fields = cells.size() - 2;
+        if (fields != 4) {
+            // There is an extra or missing field in the row that has thrown off the counter
+            throw new TransactionFieldException("Unknown transaction field found in the table row. Found " +
+                    Math.max(fields, 0) + " fields");
+        }
+
+        Transaction.TransactionBuilder builder = Transaction.builder();
 
-            // Remove the second to last element which usually holds the "ARE" string
-            dataElements.remove(dataElements.size() - 2);
+        // If Cr is found in the last column it means that this transactions has added money to this account
+        // Mark the transaction's inflow flag as true
+        if (cells.get(cells.size() - 1).equals("Cr")) {
+            builder.inflow(true);
+        }
+
+        try {
+            return builder
+                    // Transaction date column
+                    .transactionDate(StatementFieldParser.parseDate(cells.get(0)))
+                    // Posting date column
+                    .postingDate(StatementFieldParser.parseDate(cells.get(1)))
+                    // Details column
+                    .details(cells.get(2))
+                    // Amount column, which comes after the currency column and may hold thousands separators
+                    .amount(StatementFieldParser.parseAmount(cells.get(4)))
+                    .build();
+        } catch (DateTimeParseException e) {
+            throw new TransactionParseException("Failed to parse the date format!", e);
+        } catch (NumberFormatException e) {
+            throw new TransactionParseException("Failed to parse the number column!", e);
+        }
+    }
 
+    /**
+     * Find the charset of an HTML file from its byte order mark or the charset declared in its meta tags, the same
+     * way jsoup does when parsing a stream. The stream is reset to where it was afterwards.
+     *
+     * @param stream Stream positioned at the start of the file
+     * @return Charset of the file, UTF-8 if none is declared
+     */
+    private static Charset detectCharset(BufferedInputStream stream) throws IOException {
+        stream.mark(DETECTION_LENGTH);
+        byte[] head = new byte[DETECTION_LENGTH];
+        int length = 0;
+        int read;
+        while (length < head.length && (read = stream.read(head, length, head.length - length)) != -1) {
+            length += read;
+        }
+        stream.reset();
+
+        if (length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            // Skip the byte order mark so that it does not end up in the text
+            stream.skip(3);
+            return StandardCharsets.UTF_8;
+        }
+
+        Matcher matcher = META_CHARSET.matcher(new String(head, 0, length, StandardCharsets.ISO_8859_1));
+        if (matcher.find()) {
             try {
-                String DATE_FORMAT = "MMMM d, yyyy";
-
-                int columnIndex = 0;
-                for (Element data : dataElements) {
-                    switch (columnIndex) {
-                        // Transaction date column
-                        case 0:
-                            builder.transactionDate(converter.fromString(data.text(), DATE_FORMAT));
-                            break;
-                        // Posting date column
-                        case 1:
-                            builder.postingDate(converter.fromString(data.text(), DATE_FORMAT));
-                            break;
-                        // Details column
-                        case 2:
-                            builder.details(data.text());
-                            break;
-                        // Amount column
-                        case 3:
-                            // Remove the thousand separator which may otherwise lead to errors when parsing to a double
-                            String sanitisedNumber = data.text().replace(",", "");
-                            builder.amount(Double.parseDouble(sanitisedNumber));
-                            break;
-                    }
-
-                    columnIndex++;
-                }
-
-                if (columnIndex != 4) {
-                    // There is an extra field in the row that has thrown off the counter
-                    throw new TransactionFieldException("Unknown transaction field found in the table row. Found " +
-                            columnIndex + " fields");
-                }
-
-                transactions.add(builder.build());
-            } catch (DateTimeParseException e) {
-                throw new TransactionParseException("Failed to parse the date format!", e);
-            } catch (NumberFormatException e) {
-                throw new TransactionParseException("Failed to parse the number column!", e);
+                return Charset.forName(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                log.warn("Unsupported charset declared in the statement: {}", matcher.group(1));
             }
         }
 
-        log.info("Parsed {} transactions", transactions.size());
-        return transactions;
+        return StandardCharsets.UTF_8;
     }
 
     /**
-     * Read the contents of the file into a string and return it
+     * Parse the file straight from its bytes, so that the only copy of the statement kept in memory is the document.
+     * The charset is detected from the byte order mark or the meta tags of the file, falling back on UTF-8.
      *
      * @param file Path to an HTML file containing transactions obtained from HSBC UAE
-     * @return Content of the HTML file
+     * @return Parsed HTML document
      */
-    private String readFile(String file) throws FileNotFoundException, FileNotReadableException {
-        Path path = Paths.get(file);
+    private Document readFile(String file) throws FileNotFoundException, FileNotReadableException {
+        Path path = this.checkFile(file);
 
+        try (InputStream stream = Files.newInputStream(path)) {
+            return Jsoup.parse(stream, null, path.toAbsolutePath().toUri().toString());
+        } catch (IOException e) {
+            throw new FileNotReadableException("The requested HTML file could not be read successfully: "
+                    + path.toAbsolutePath().toUri(), e);
+        }
+    }
+
+    /**
+     * Check that the file exists and can be read
+     *
+     * @param file Path to an HTML file
+     * @return Path of the file
+     */
+    private Path checkFile(String file) throws FileNotFoundException, FileNotReadableException {
+        return this.checkFile(Paths.get(file));
+    }
+
+    /**
+     * Check that the file exists and can be read
+     *
+     * @param path HTML file
+     * @return Path of the file
+     */
+    private Path checkFile(Path path) throws FileNotFoundException, FileNotReadableException {
         if (Files.notExists(path)) {
             throw new FileNotFoundException("The requested file could not be opened: " + path.toAbsolutePath().toUri());
         }
@@ -139,13 +258,6 @@ public class HtmlProcessor {
             throw new FileNotReadableException("The requested file could not be read: " + path.toAbsolutePath().toUri());
         }
 
-        try {
-            // Read all the lines from the file and return them
-            return Files.readAllLines(path).stream()
-                    .collect(Collectors.joining("\n", "", ""));
-        } catch (IOException e) {
-            throw new FileNotReadableException("The requested HTML file could not be read successfully: "
-                    + path.toAbsolutePath().toUri(), e);
-        }
+        return path;
     }
 }
@@ -0,0 +1,750 @@
+package ro.mihalea.deerkat.utility;
+
+import org.jsoup.parser.Parser;
+import ro.mihalea.deerkat.exception.model.TransactionFieldException;
+import ro.mihalea.deerkat.exception.model.TransactionParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * HtmlRowScanner tokenizes an HTML statement on the fly and reports the cells of the transaction rows as soon as
+ * each row ends, without building a document.
+ *
+ * Only what is needed to find the rows is tracked: the open tables, and the row and the cell open in each of them.
+ * The rows and cells are the ones a parsed document returns for "table.X tr.Y" and "td", so a table nested inside a
+ * cell adds its cells to the outer row as well, and its text to the outer cell. The text of every cell is decoded
+ * and normalised the same way as jsoup's Element.text(). Memory use does not depend on the size of the statement.
+ */
+class HtmlRowScanner {
+    /**
+     * Receiver of the cells of every transaction row
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        /**
+         * @param cells Text of every cell of the row, only valid until the method returns
+         */
+        void row(List<String> cells) throws TransactionParseException, TransactionFieldException;
+    }
+
+    /**
+     * Elements whose contents are raw data that is not part of the text of a cell
+     */
+    private final static Set<String> RAW_TEXT = new HashSet<>(Arrays.asList("script", "style"));
+
+    /**
+     * Elements whose contents are not tokenized but are still part of the text of a cell, whitespace included
+     */
+    private final static Set<String> ESCAPABLE_RAW_TEXT = new HashSet<>(Arrays.asList("textarea", "title"));
+
+    /**
+     * Block elements of jsoup 1.11, plus "br". Element.text() adds a space when one of them starts after text that
+     * doesn't already end with a space, and nothing when it ends.
+     */
+    private final static Set<String> BREAKING = new HashSet<>(Arrays.asList(
+            "br", "html", "head", "body", "frameset", "script", "noscript", "style", "meta", "link", "title",
+            "frame", "noframes", "section", "nav", "aside", "hgroup", "header", "footer", "p", "h1", "h2", "h3",
+            "h4", "h5", "h6", "ul", "ol", "pre", "div", "blockquote", "hr", "address", "figure", "figcaption",
+            "form", "fieldset", "ins", "del", "dl", "dt", "dd", "li", "table", "caption", "thead", "tfoot",
+            "tbody", "colgroup", "col", "tr", "th", "td", "video", "audio", "canvas", "details", "menu",
+            "plaintext", "template", "article", "main", "svg", "math"));
+
+    /**
+     * Number of characters read from the reader at once
+     */
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Text of a data cell, shared by every transaction row it belongs to
+     */
+    private static class Cell {
+        /**
+         * Text of the cell normalised so far, which only needs to be trimmed once the cell ends
+         */
+        private final StringBuilder text = new StringBuilder(64);
+    }
+
+    /**
+     * Transaction row whose cells are being collected
+     */
+    private static class Row {
+        /**
+         * Data cells inside the row, including the ones of nested tables, in document order
+         */
+        private final List<Cell> cells = new ArrayList<>();
+    }
+
+    /**
+     * Open table, with the row and the cell open inside it
+     */
+    private static class Table {
+        /**
+         * Marks whether the table holds transactions
+         */
+        private final boolean target;
+
+        /**
+         * Transaction row open in this table, or null if no row is open or the open one isn't a transaction row
+         */
+        private Row row;
+
+        /**
+         * Marks whether a data or header cell of this table is open
+         */
+        private boolean inCell = false;
+
+        /**
+         * Text of the open cell, or null if it is a header cell or it is outside every transaction row
+         */
+        private Cell cell;
+
+        private Table(boolean target) {
+            this.target = target;
+        }
+    }
+
+    /**
+     * Class of the table holding the transactions
+     */
+    private final String tableClass;
+
+    /**
+     * Class of the rows holding a transaction
+     */
+    private final String rowClass;
+
+    /**
+     * Source of the HTML
+     */
+    private Reader reader;
+
+    /**
+     * Characters read from the reader but not scanned yet
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Position of the next character in the buffer
+     */
+    private int position = 0;
+
+    /**
+     * Number of valid characters in the buffer
+     */
+    private int limit = 0;
+
+    /**
+     * Open tables, from the outermost to the innermost one
+     */
+    private final List<Table> tables = new ArrayList<>();
+
+    /**
+     * Number of open tables holding transactions
+     */
+    private int targetDepth = 0;
+
+    /**
+     * Number of open transaction rows, which all contain the position being read
+     */
+    private int openRows = 0;
+
+    /**
+     * Number of open cells collecting text
+     */
+    private int openCells = 0;
+
+    /**
+     * Number of open "pre" elements, whose text keeps its whitespace
+     */
+    private int preDepth = 0;
+
+    /**
+     * Transaction rows in document order, kept until the outermost one ends so that a row nested inside another
+     * one is reported after it, like the parsed document returns them
+     */
+    private final List<Row> pending = new ArrayList<>();
+
+    /**
+     * Raw text read since the last tag, only collected while a cell is open
+     */
+    private final StringBuilder text = new StringBuilder(256);
+
+    /**
+     * Text of the cells of the row being reported
+     */
+    private final List<String> cells = new ArrayList<>();
+
+    /**
+     * Name of the tag being read
+     */
+    private final StringBuilder tagName = new StringBuilder(16);
+
+    /**
+     * Value of the class attribute of the tag being read, or null if it has none
+     */
+    private String tagClass;
+
+    /**
+     * Reusable buffer for attribute names and values
+     */
+    private final StringBuilder attribute = new StringBuilder(64);
+
+    /**
+     * Receiver of the transaction rows
+     */
+    private RowHandler handler;
+
+    /**
+     * @param tableClass Class of the table holding the transactions
+     * @param rowClass Class of the rows holding a transaction
+     */
+    HtmlRowScanner(String tableClass, String rowClass) {
+        this.tableClass = tableClass;
+        this.rowClass = rowClass;
+    }
+
+    /**
+     * Scan the whole document and report every transaction row
+     * @param reader Source of the HTML, which is not closed
+     * @param handler Receiver of the transaction rows
+     * @return Number of rows reported
+     */
+    int scan(Reader reader, RowHandler handler) throws IOException, TransactionParseException, TransactionFieldException {
+        this.reader = reader;
+        this.handler = handler;
+        int rows = 0;
+
+        int c;
+        while ((c = this.read()) != -1) {
+            if (c != '<') {
+                if (openCells > 0) {
+                    text.append((char) c);
+                }
+                continue;
+            }
+
+            int next = this.peek();
+            if (next == '!' || next == '?') {
+                this.flushText();
+                this.skipMarkup();
+            } else if (next == '/') {
+                position++;
+                if (Character.isLetter(this.peek())) {
+                    this.flushText();
+                    this.readTag();
+                    rows += this.endTag(tagName.toString());
+                } else {
+                    this.flushText();
+                    this.skipMarkup();
+                }
+            } else if (Character.isLetter(next)) {
+                this.flushText();
+                boolean selfClosing = this.readTag();
+                String name = tagName.toString();
+                rows += this.startTag(name);
+                if (!selfClosing && RAW_TEXT.contains(name)) {
+                    this.skipRawText(name, false);
+                } else if (!selfClosing && ESCAPABLE_RAW_TEXT.contains(name)) {
+                    this.skipRawText(name, openCells > 0);
+                }
+            } else if (openCells > 0) {
+                text.append('<');
+            }
+        }
+
+        // Tables left open by the end of the document still count, as jsoup closes them as well
+        this.flushText();
+        while (!tables.isEmpty()) {
+            rows += this.endTable();
+        }
+
+        return rows;
+    }
+
+    /**
+     * Update the state of the scanner after a start tag
+     * @param name Lower case name of the tag
+     * @return Number of rows reported
+     */
+    private int startTag(String name) throws TransactionParseException, TransactionFieldException {
+        if (BREAKING.contains(name)) {
+            this.breakCells();
+        }
+
+        int rows = 0;
+        Table table = tables.isEmpty() ? null : tables.get(tables.size() - 1);
+        switch (name) {
+            case "table":
+                // Tables can only be nested inside a cell, otherwise jsoup ends the open table first
+                if (table != null && !table.inCell) {
+                    rows += this.endTable();
+                }
+                boolean target = hasClass(tagClass, tableClass);
+                tables.add(new Table(target));
+                if (target) {
+                    targetDepth++;
+                }
+                break;
+            case "tr":
+                if (table != null) {
+                    rows += this.endRow(table);
+                    if (targetDepth > 0 && hasClass(tagClass, rowClass)) {
+                        table.row = new Row();
+                        pending.add(table.row);
+                        openRows++;
+                    }
+                }
+                break;
+            case "tbody":
+            case "thead":
+            case "tfoot":
+                if (table != null) {
+                    rows += this.endRow(table);
+                }
+                break;
+            case "td":
+            case "th":
+                if (table != null) {
+                    this.endCell(table);
+                    table.inCell = true;
+
+                    // Header cells end the previous cell but are never selected. Data cells belong to every open
+                    // transaction row, including the rows of the tables this one is nested in.
+                    if (name.equals("td") && openRows > 0) {
+                        table.cell = new Cell();
+                        openCells++;
+                        for (Table open : tables) {
+                            if (open.row != null) {
+                                open.row.cells.add(table.cell);
+                            }
+                        }
+                    }
+                }
+                break;
+            case "pre":
+                preDepth++;
+                break;
+            default:
+        }
+
+        return rows;
+    }
+
+    /**
+     * Update the state of the scanner after an end tag
+     * @param name Lower case name of the tag
+     * @return Number of rows reported
+     */
+    private int endTag(String name) throws TransactionParseException, TransactionFieldException {
+        int rows = 0;
+        Table table = tables.isEmpty() ? null : tables.get(tables.size() - 1);
+        switch (name) {
+            case "table":
+                if (table != null) {
+                    rows += this.endTable();
+                }
+                break;
+            case "tr":
+            case "tbody":
+            case "thead":
+            case "tfoot":
+                if (table != null) {
+                    rows += this.endRow(table);
+                }
+                break;
+            case "td":
+            case "th":
+                if (table != null) {
+                    this.endCell(table);
+                }
+                break;
+            case "pre":
+                if (preDepth > 0) {
+                    preDepth--;
+                }
+                break;
+            case "br":
+                // jsoup reads "</br>" as "<br>"
+                this.breakCells();
+                break;
+            default:
+        }
+
+        return rows;
+    }
+
+    /**
+     * Separate the text of the open cells from the element starting inside them, like Element.text() does
+     */
+    private void breakCells() {
+        if (openCells == 0) {
+            return;
+        }
+
+        for (Table table : tables) {
+            if (table.cell != null) {
+                StringBuilder accum = table.cell.text;
+                if (accum.length() > 0 && accum.charAt(accum.length() - 1) != ' ') {
+                    accum.append(' ');
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the text read since the last tag to every open cell, as they all contain it
+     */
+    private void flushText() {
+        if (text.length() == 0) {
+            return;
+        }
+
+        CharSequence value = text.indexOf("&") != -1 ? decode(text.toString()) : text;
+        for (Table table : tables) {
+            if (table.cell != null) {
+                this.appendText(table.cell.text, value);
+            }
+        }
+        text.setLength(0);
+    }
+
+    /**
+     * Append a text node to the text of a cell, normalising its whitespace like Element.text() unless it is inside
+     * a "pre" element
+     * @param accum Text of the cell
+     * @param value Decoded text node
+     */
+    private void appendText(StringBuilder accum, CharSequence value) {
+        if (preDepth > 0) {
+            accum.append(value);
+            return;
+        }
+
+        boolean stripLeading = accum.length() > 0 && accum.charAt(accum.length() - 1) == ' ';
+        boolean lastWasWhite = false;
+        boolean reachedNonWhite = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isWhitespace(c) || c == 160) {
+                if ((stripLeading && !reachedNonWhite) || lastWasWhite) {
+                    continue;
+                }
+                accum.append(' ');
+                lastWasWhite = true;
+            } else {
+                accum.append(c);
+                lastWasWhite = false;
+                reachedNonWhite = true;
+            }
+        }
+    }
+
+    /**
+     * End the cell open in a table, if any
+     * @param table Table holding the cell
+     */
+    private void endCell(Table table) {
+        if (table.cell != null) {
+            table.cell = null;
+            openCells--;
+        }
+        table.inCell = false;
+    }
+
+    /**
+     * End the row open in a table, if any, and report the transaction rows once none of them is open anymore
+     * @param table Table holding the row
+     * @return Number of rows reported
+     */
+    private int endRow(Table table) throws TransactionParseException, TransactionFieldException {
+        this.endCell(table);
+        if (table.row == null) {
+            return 0;
+        }
+
+        table.row = null;
+        openRows--;
+        if (openRows > 0) {
+            return 0;
+        }
+
+        int rows = pending.size();
+        for (Row row : pending) {
+            cells.clear();
+            for (Cell cell : row.cells) {
+                cells.add(cell.text.toString().trim());
+            }
+            handler.row(cells);
+        }
+        pending.clear();
+        return rows;
+    }
+
+    /**
+     * End the innermost open table, along with its row and cell
+     * @return Number of rows reported
+     */
+    private int endTable() throws TransactionParseException, TransactionFieldException {
+        Table table = tables.get(tables.size() - 1);
+        int rows = this.endRow(table);
+        tables.remove(tables.size() - 1);
+        if (table.target) {
+            targetDepth--;
+        }
+        return rows;
+    }
+
+    /**
+     * Read the name and the class attribute of a tag, up to and including its closing bracket
+     * @return True if the tag ends with "/>"
+     */
+    private boolean readTag() throws IOException {
+        tagName.setLength(0);
+        tagClass = null;
+
+        int c;
+        while ((c = this.peek()) != -1 && !isWhitespace(c) && c != '>' && c != '/') {
+            tagName.append(Character.toLowerCase((char) c));
+            position++;
+        }
+
+        boolean selfClosing = false;
+        while ((c = this.read()) != -1 && c != '>') {
+            if (isWhitespace(c)) {
+                continue;
+            }
+            if (c == '/') {
+                selfClosing = this.peek() == '>';
+                continue;
+            }
+
+            // Attribute name
+            attribute.setLength(0);
+            attribute.append((char) c);
+            while ((c = this.peek()) != -1 && !isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+                attribute.append((char) c);
+                position++;
+            }
+            boolean isClass = attribute.toString().equalsIgnoreCase("class");
+
+            while ((c = this.peek()) != -1 && isWhitespace(c)) {
+                position++;
+            }
+            if (c != '=') {
+                continue;
+            }
+            position++;
+            while ((c = this.peek()) != -1 && isWhitespace(c)) {
+                position++;
+            }
+
+            // Attribute value, either quoted or ending at the next whitespace
+            attribute.setLength(0);
+            c = this.peek();
+            if (c == '"' || c == '\'') {
+                int quote = c;
+                position++;
+                while ((c = this.read()) != -1 && c != quote) {
+                    attribute.append((char) c);
+                }
+            } else {
+                while ((c = this.peek()) != -1 && !isWhitespace(c) && c != '>') {
+                    attribute.append((char) c);
+                    position++;
+                }
+            }
+
+            if (isClass && tagClass == null) {
+                tagClass = attribute.toString();
+            }
+        }
+
+        return selfClosing;
+    }
+
+    /**
+     * Skip a comment, doctype or processing instruction
+     */
+    private void skipMarkup() throws IOException {
+        int c = this.read();
+        if (c == '!' && this.peek() == '-') {
+            position++;
+            if (this.peek() == '-') {
+                position++;
+                // Comment, which ends at the first "-->"
+                int dashes = 0;
+                while ((c = this.read()) != -1) {
+                    if (c == '>' && dashes >= 2) {
+                        return;
+                    }
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+        }
+
+        while (c != -1 && c != '>') {
+            c = this.read();
+        }
+    }
+
+    /**
+     * Skip the contents of a raw text element up to and including its end tag
+     * @param name Name of the element
+     * @param collect True if the contents are part of the text of the open cells, in which case their whitespace
+     *                is kept as jsoup does for these elements
+     */
+    private void skipRawText(String name, boolean collect) throws IOException {
+        int c;
+        while ((c = this.read()) != -1) {
+            if (c != '<' || this.peek() != '/') {
+                if (collect) {
+                    text.append((char) c);
+                }
+                continue;
+            }
+
+            position++;
+            this.readTag();
+            if (tagName.toString().equals(name)) {
+                break;
+            }
+            if (collect) {
+                text.append("</").append(tagName).append('>');
+            }
+        }
+
+        if (collect) {
+            preDepth++;
+            this.flushText();
+            preDepth--;
+        }
+    }
+
+    /**
+     * Decode the character references of a text. The references found in statements are decoded directly, as
+     * creating a jsoup tokenizer for every text is expensive, and any other text is left to jsoup.
+     * @param text Text containing at least one "&"
+     * @return Decoded text
+     */
+    private static String decode(String text) {
+        StringBuilder decoded = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c != '&') {
+                decoded.append(c);
+                i++;
+                continue;
+            }
+
+            // References without a semicolon are still decoded by jsoup in some cases
+            int end = text.indexOf(';', i);
+            if (end == -1) {
+                return Parser.unescapeEntities(text, false);
+            }
+
+            String name = text.substring(i + 1, end);
+            if (name.startsWith("#")) {
+                try {
+                    boolean hex = name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X');
+                    int codePoint = Integer.parseInt(name.substring(hex ? 2 : 1), hex ? 16 : 10);
+                    if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+                        return Parser.unescapeEntities(text, false);
+                    }
+                    decoded.appendCodePoint(codePoint);
+                } catch (IllegalArgumentException e) {
+                    return Parser.unescapeEntities(text, false);
+                }
+            } else {
+                switch (name) {
+                    case "amp":
+                        decoded.append('&');
+                        break;
+                    case "lt":
+                        decoded.append('<');
+                        break;
+                    case "gt":
+                        decoded.append('>');
+                        break;
+                    case "quot":
+                        decoded.append('"');
+                        break;
+                    case "apos":
+                        decoded.append('\'');
+                        break;
+                    case "nbsp":
+                        decoded.append((char) 160);
+                        break;
+                    default:
+                        return Parser.unescapeEntities(text, false);
+                }
+            }
+            i = end + 1;
+        }
+
+        return decoded.toString();
+    }
+
+    /**
+     * Check whether a class attribute contains a class, ignoring case as jsoup does
+     * @param classes Value of the class attribute, or null
+     * @param name Name of the class
+     * @return True if the class is present
+     */
+    private static boolean hasClass(String classes, String name) {
+        if (classes == null) {
+            return false;
+        }
+
+        for (String value : classes.split("\\s+")) {
+            if (value.toLowerCase(Locale.ROOT).equals(name.toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param c Character to check
+     * @return True for the whitespace characters of HTML
+     */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Consume the next character of the input
+     * @return Next character, or -1 at the end of the input
+     */
+    private int read() throws IOException {
+        int c = this.peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    /**
+     * Return the next character of the input without consuming it
+     * @return Next character, or -1 at the end of the input
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+}
@@ -1,25 +1,25 @@
 package ro.mihalea.deerkat.utility;
 
-import java.sql.Date;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LocalDateConverter {
+    /**
+     * Formatters already created for every pattern, as they are immutable and expensive to build
+     */
+    private final static Map<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+
     public LocalDate fromString(String date, String format) {
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern(format);
-        return LocalDate.parse(date, dateFormatter);
+        return LocalDate.parse(date, formatter(format));
     }
 
     public String toString(LocalDate date, String format) {
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern(format);
-        return date.format(dateFormatter);
-    }
-
-    public LocalDate fromSQL(Date date) {
-        return LocalDate.ofEpochDay(date.getTime());
+        return date.format(formatter(format));
     }
 
-    public Date toSQL(LocalDate date) {
-        return new Date(date.toEpochDay());
+    private static DateTimeFormatter formatter(String format) {
+        return FORMATTERS.computeIfAbsent(format, DateTimeFormatter::ofPattern);
     }
 }
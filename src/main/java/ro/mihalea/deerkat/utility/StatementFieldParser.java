@@ -0,0 +1,202 @@
+package ro.mihalea.deerkat.utility;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Parsers for the date and amount cells of HSBC statements that read the cell text directly, without creating
+ * formatters or intermediate strings for every row.
+ *
+ * Dates use the "MMMM d, yyyy" format and are resolved the same way as a DateTimeFormatter with the SMART resolver
+ * and Locale.ENGLISH. The month names are always English, as in the statements, whatever the default locale is,
+ * while the formatter used before depended on it. Amounts give exactly the same value as removing the thousands
+ * separators and calling Double.parseDouble, which is still used for any text outside the plain decimal format.
+ */
+final class StatementFieldParser {
+    /**
+     * Month names indexed by month number minus one
+     */
+    private final static String[] MONTHS = {
+            "January", "February", "March", "April", "May", "June",
+            "July", "August", "September", "October", "November", "December"
+    };
+
+    /**
+     * Formatter giving the same dates, used for the text that is not read directly
+     */
+    private final static DateTimeFormatter FALLBACK_FORMATTER =
+            DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.ENGLISH);
+
+    /**
+     * Powers of ten that can be represented exactly as doubles
+     */
+    private final static double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Largest number of decimal digits whose value is always exact as a double
+     */
+    private final static int EXACT_DIGITS = 15;
+
+    private StatementFieldParser() {
+    }
+
+    /**
+     * Parse a date such as "January 3, 2018"
+     * @param text Text of the cell
+     * @return Parsed date
+     * @throws DateTimeParseException Thrown if the text is not a valid date in the expected format
+     */
+    static LocalDate parseDate(String text) {
+        int length = text.length();
+
+        // Month name, matched against the table by its length and first letters
+        int position = 0;
+        while (position < length && Character.isLetter(text.charAt(position))) {
+            position++;
+        }
+        int month = -1;
+        for (int i = 0; i < MONTHS.length && month == -1; i++) {
+            if (MONTHS[i].length() == position && text.regionMatches(0, MONTHS[i], 0, position)) {
+                month = i + 1;
+            }
+        }
+        if (month == -1 || position == length || text.charAt(position) != ' ') {
+            throw new DateTimeParseException("Text '" + text + "' could not be parsed at index 0", text, 0);
+        }
+        position++;
+
+        // Day of the month, leading zeros being allowed
+        int dayStart = position;
+        int day = 0;
+        while (position < length && isDigit(text.charAt(position))) {
+            day = Math.min(day * 10 + (text.charAt(position++) - '0'), 100);
+        }
+        if (position == dayStart || position + 1 >= length
+                || text.charAt(position) != ',' || text.charAt(position + 1) != ' ') {
+            throw new DateTimeParseException("Text '" + text + "' could not be parsed at index " + dayStart,
+                    text, dayStart);
+        }
+        position += 2;
+
+        // Years past 9999 need a sign, which is rare enough to be left to the formatter
+        if (position < length && text.charAt(position) == '+') {
+            return LocalDate.parse(text, FALLBACK_FORMATTER);
+        }
+
+        // Year, exactly four digits as longer years need a sign in the "yyyy" pattern
+        int yearStart = position;
+        int year = 0;
+        while (position < length && isDigit(text.charAt(position)) && position - yearStart < 4) {
+            year = year * 10 + (text.charAt(position++) - '0');
+        }
+        if (position - yearStart < 4 || position != length) {
+            throw new DateTimeParseException("Text '" + text + "' could not be parsed at index " + yearStart,
+                    text, yearStart);
+        }
+
+        try {
+            // Days past the end of the month are moved back to the last day, like the SMART resolver does
+            if (day < 1 || day > 31) {
+                throw new DateTimeException("Invalid value for DayOfMonth: " + day);
+            }
+            if (year < 1) {
+                throw new DateTimeException("Invalid value for YearOfEra: " + year);
+            }
+            int lastDay = Month.of(month).length(Year.isLeap(year));
+            return LocalDate.of(year, month, Math.min(day, lastDay));
+        } catch (DateTimeException e) {
+            throw new DateTimeParseException("Text '" + text + "' could not be parsed: " + e.getMessage(),
+                    text, 0, e);
+        }
+    }
+
+    /**
+     * Parse an amount that may contain thousands separators, such as "1,234.50"
+     * @param text Text of the cell
+     * @return Parsed amount
+     * @throws NumberFormatException Thrown if the text is not a number
+     */
+    static double parseAmount(String text) {
+        int length = text.length();
+        int position = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean point = false;
+        for (; position < length; position++) {
+            char c = text.charAt(position);
+            if (isDigit(c)) {
+                // Leading zeros do not count towards the precision
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (point) {
+                    decimals++;
+                }
+            } else if (c == ',' && !point) {
+                continue;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return parseFallback(text);
+            }
+
+            if (digits > EXACT_DIGITS || decimals >= POWERS_OF_TEN.length) {
+                return parseFallback(text);
+            }
+        }
+
+        if (digits == 0 && mantissa == 0 && !hasDigit(text)) {
+            return parseFallback(text);
+        }
+
+        // Both operands are exact, so the division is correctly rounded just like Double.parseDouble
+        double value = mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse an amount the slow way, for text that is not a plain decimal number
+     * @param text Text of the cell
+     * @return Parsed amount
+     */
+    private static double parseFallback(String text) {
+        return Double.parseDouble(text.replace(",", ""));
+    }
+
+    /**
+     * @param text Text to check
+     * @return True if the text contains at least one digit
+     */
+    private static boolean hasDigit(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (isDigit(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param c Character to check
+     * @return True for the ASCII digits
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
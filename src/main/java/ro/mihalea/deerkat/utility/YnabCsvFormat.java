@@ -0,0 +1,82 @@
+package ro.mihalea.deerkat.utility;
+
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Row layout of the CSV files imported by YNAB4, shared by the CSV repository and the exporters
+ */
+public class YnabCsvFormat {
+    /**
+     * Table headers in CSV format containing field names as needed by YNAB4
+     */
+    public final static String HEADERS = "Date,Payee,Category,Memo,Outflow,Inflow" + System.lineSeparator();
+
+    /**
+     * Date formatter chosen to be compatible with the YNAB4 application
+     */
+    public final static DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yy");
+
+    /**
+     * Category assigned to all inflows, which YNAB4 counts as income
+     */
+    public final static String INCOME_CATEGORY = "Income: Available this month";
+
+    /**
+     * Append a Transaction object to a buffer as a line of CSV
+     *
+     * @param transaction Transaction to be formatted as CSV
+     * @param categoryPath Category of the transaction in the "Parent: Child" format, or an empty string
+     * @param row Buffer that receives the line, including the line separator
+     */
+    public static void appendRow(Transaction transaction, String categoryPath, StringBuilder row) {
+        DATE_FORMATTER.formatTo(transaction.getTransactionDate(), row);
+        row.append(',');
+        appendField(transaction.getDetails(), row);
+        row.append(',');
+
+        if (transaction.getInflow()) {
+            row.append(INCOME_CATEGORY);
+        } else {
+            appendField(categoryPath, row);
+        }
+
+        row.append(',');
+        if (transaction.getInflow()) {
+            row.append(",,").append(transaction.getAmount());
+        } else {
+            row.append(',').append(transaction.getAmount()).append(',');
+        }
+        row.append(System.lineSeparator());
+    }
+
+    /**
+     * Append a text field to a buffer, quoting it as described in RFC 4180 if it contains special characters
+     *
+     * @param field Text of the field
+     * @param row Buffer that receives the field
+     */
+    public static void appendField(String field, StringBuilder row) {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+
+        if (!quote) {
+            row.append(field);
+            return;
+        }
+
+        row.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+}
@@ -0,0 +1,29 @@
+-- Store dates as INTEGER epoch days and amounts as INTEGER hundredths instead of DATE and DOUBLE columns.
+-- Dates were previously written through java.sql.Date holding the epoch day as milliseconds, so the stored
+-- integer already is the epoch day and only the declared type changes.
+
+CREATE TABLE transactions_migrated (
+  id INTEGER PRIMARY KEY AUTOINCREMENT,
+  transactionDate INTEGER NOT NULL,
+  postingDate INTEGER NOT NULL,
+  details VARCHAR(255) NOT NULL,
+  amount INTEGER NOT NULL,
+  inflow BOOLEAN NOT NULL,
+  categoryId INTEGER,
+  UNIQUE (transactionDate, postingDate, details, amount) ON CONFLICT ABORT,
+  FOREIGN KEY (categoryId) REFERENCES categories(id)
+);
+
+INSERT INTO transactions_migrated (id, transactionDate, postingDate, details, amount, inflow, categoryId)
+  SELECT id,
+    CAST(transactionDate AS INTEGER),
+    CAST(postingDate AS INTEGER),
+    details,
+    CAST(ROUND(amount * 100) AS INTEGER),
+    inflow,
+    categoryId
+  FROM transactions;
+
+DROP TABLE transactions;
+
+ALTER TABLE transactions_migrated RENAME TO transactions;
@@ -0,0 +1,55 @@
+-- Per month and per category totals, kept up to date by triggers inside the same transaction as the change to the
+-- transactions table, so that reports don't need to load every transaction.
+-- Months are stored as yyyymm, amounts in hundredths, and transactions without a category use categoryId -1.
+
+CREATE TABLE IF NOT EXISTS monthly_summary (
+  month INTEGER NOT NULL,
+  categoryId INTEGER NOT NULL,
+  inflow BOOLEAN NOT NULL,
+  total INTEGER NOT NULL DEFAULT 0,
+  count INTEGER NOT NULL DEFAULT 0,
+  PRIMARY KEY (month, categoryId, inflow)
+);
+
+INSERT INTO monthly_summary (month, categoryId, inflow, total, count)
+  SELECT CAST(strftime('%Y%m', transactionDate * 86400, 'unixepoch') AS INTEGER),
+    IFNULL(categoryId, -1),
+    inflow,
+    SUM(amount),
+    COUNT(*)
+  FROM transactions
+  GROUP BY 1, 2, 3;
+
+CREATE TRIGGER monthly_summary_insert AFTER INSERT ON transactions
+BEGIN
+  INSERT OR IGNORE INTO monthly_summary (month, categoryId, inflow)
+    VALUES (CAST(strftime('%Y%m', NEW.transactionDate * 86400, 'unixepoch') AS INTEGER), IFNULL(NEW.categoryId, -1), NEW.inflow);
+  UPDATE monthly_summary SET total = total + NEW.amount, count = count + 1
+    WHERE month = CAST(strftime('%Y%m', NEW.transactionDate * 86400, 'unixepoch') AS INTEGER)
+    AND categoryId = IFNULL(NEW.categoryId, -1)
+    AND inflow = NEW.inflow;
+END;
+
+CREATE TRIGGER monthly_summary_delete AFTER DELETE ON transactions
+BEGIN
+  UPDATE monthly_summary SET total = total - OLD.amount, count = count - 1
+    WHERE month = CAST(strftime('%Y%m', OLD.transactionDate * 86400, 'unixepoch') AS INTEGER)
+    AND categoryId = IFNULL(OLD.categoryId, -1)
+    AND inflow = OLD.inflow;
+  DELETE FROM monthly_summary WHERE count = 0;
+END;
+
+CREATE TRIGGER monthly_summary_update AFTER UPDATE OF transactionDate, amount, inflow, categoryId ON transactions
+BEGIN
+  UPDATE monthly_summary SET total = total - OLD.amount, count = count - 1
+    WHERE month = CAST(strftime('%Y%m', OLD.transactionDate * 86400, 'unixepoch') AS INTEGER)
+    AND categoryId = IFNULL(OLD.categoryId, -1)
+    AND inflow = OLD.inflow;
+  INSERT OR IGNORE INTO monthly_summary (month, categoryId, inflow)
+    VALUES (CAST(strftime('%Y%m', NEW.transactionDate * 86400, 'unixepoch') AS INTEGER), IFNULL(NEW.categoryId, -1), NEW.inflow);
+  UPDATE monthly_summary SET total = total + NEW.amount, count = count + 1
+    WHERE month = CAST(strftime('%Y%m', NEW.transactionDate * 86400, 'unixepoch') AS INTEGER)
+    AND categoryId = IFNULL(NEW.categoryId, -1)
+    AND inflow = NEW.inflow;
+  DELETE FROM monthly_summary WHERE count = 0;
+END;
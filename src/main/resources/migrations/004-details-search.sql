@@ -0,0 +1,23 @@
+-- Full-text index over the transaction details, stored as an external content FTS5 table so that the details are
+-- not duplicated. Triggers keep the index in sync with the transactions table.
+
+CREATE VIRTUAL TABLE IF NOT EXISTS transactions_search USING fts5(details, content='transactions', content_rowid='id');
+
+INSERT INTO transactions_search (transactions_search) VALUES ('rebuild');
+
+CREATE TRIGGER transactions_search_insert AFTER INSERT ON transactions
+BEGIN
+  INSERT INTO transactions_search (rowid, details) VALUES (NEW.id, NEW.details);
+END;
+
+CREATE TRIGGER transactions_search_delete AFTER DELETE ON transactions
+BEGIN
+  INSERT INTO transactions_search (transactions_search, rowid, details) VALUES ('delete', OLD.id, OLD.details);
+END;
+
+CREATE TRIGGER transactions_search_update AFTER UPDATE OF details ON transactions
+WHEN OLD.details <> NEW.details
+BEGIN
+  INSERT INTO transactions_search (transactions_search, rowid, details) VALUES ('delete', OLD.id, OLD.details);
+  INSERT INTO transactions_search (rowid, details) VALUES (NEW.id, NEW.details);
+END;
@@ -0,0 +1,24 @@
+-- Sequence number of the latest change made to every transaction, used to export only the rows that changed since
+-- the previous export. Rows created before this migration start at 0 and are part of every first export.
+ALTER TABLE transactions ADD COLUMN modified INTEGER NOT NULL DEFAULT 0;
+
+CREATE INDEX transactions_modified ON transactions (modified);
+
+-- Highest sequence number exported to every target file
+CREATE TABLE export_marks (
+  target   VARCHAR(1024) PRIMARY KEY,
+  modified INTEGER       NOT NULL,
+  exportedAt INTEGER     NOT NULL
+);
+
+CREATE TRIGGER transactions_modified_insert AFTER INSERT ON transactions
+BEGIN
+  UPDATE transactions SET modified = (SELECT MAX(modified) FROM transactions) + 1 WHERE id = NEW.id;
+END;
+
+-- Only changes to the exported columns move a transaction past the export marks, the update of the sequence
+-- number itself does not fire the trigger again
+CREATE TRIGGER transactions_modified_update AFTER UPDATE OF postingDate, transactionDate, details, amount, categoryId, inflow ON transactions
+BEGIN
+  UPDATE transactions SET modified = (SELECT MAX(modified) FROM transactions) + 1 WHERE id = NEW.id;
+END;
@@ -0,0 +1,32 @@
+-- Statement files that have been imported, identified by the SHA-256 of their content, so that importing the same
+-- file again is skipped before it is parsed
+CREATE TABLE statements (
+  hash             CHAR(64)      PRIMARY KEY,
+  fileName         VARCHAR(1024) NOT NULL,
+  transactionCount INTEGER       NOT NULL,
+  importedAt       INTEGER       NOT NULL
+);
+
+-- 64 bit digest of the natural key of every stored transaction, loaded in memory so that the known rows of
+-- overlapping statements are skipped without querying the transactions table. Digests of rows stored before this
+-- migration are added by the application the first time the digests are loaded.
+CREATE TABLE row_digests (
+  digest        INTEGER PRIMARY KEY,
+  transactionId INTEGER NOT NULL
+);
+
+CREATE INDEX row_digests_transaction ON row_digests (transactionId);
+
+CREATE TRIGGER transactions_digest_delete AFTER DELETE ON transactions
+BEGIN
+  DELETE FROM row_digests WHERE transactionId = OLD.id;
+END;
+
+-- Every update rewrites all columns, so the digest is only dropped when the natural key has really changed. It is
+-- computed again the next time the digests are loaded.
+CREATE TRIGGER transactions_digest_update AFTER UPDATE OF postingDate, transactionDate, details, amount ON transactions
+WHEN OLD.postingDate IS NOT NEW.postingDate OR OLD.transactionDate IS NOT NEW.transactionDate
+  OR OLD.details IS NOT NEW.details OR OLD.amount IS NOT NEW.amount
+BEGIN
+  DELETE FROM row_digests WHERE transactionId = NEW.id;
+END;
@@ -0,0 +1,9 @@
+-- Progress of the statement files whose import has been interrupted. The rows of a statement are committed in
+-- batches, every batch moving the checkpoint forward in the same transaction, and the checkpoint is removed once
+-- the whole file has been stored. Files are identified by the SHA-256 of their content like in statements.
+CREATE TABLE import_checkpoints (
+  hash          CHAR(64)      PRIMARY KEY,
+  path          VARCHAR(1024) NOT NULL,
+  committedRows INTEGER       NOT NULL,
+  updatedAt     INTEGER       NOT NULL
+);
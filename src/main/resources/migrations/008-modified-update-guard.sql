@@ -0,0 +1,11 @@
+-- Every update rewrites all columns, so saving a transaction without changing it moved it past the export marks
+-- and appended it to incremental exports again. The sequence number now only changes when an exported column does.
+DROP TRIGGER transactions_modified_update;
+
+CREATE TRIGGER transactions_modified_update AFTER UPDATE OF postingDate, transactionDate, details, amount, categoryId, inflow ON transactions
+WHEN OLD.postingDate IS NOT NEW.postingDate OR OLD.transactionDate IS NOT NEW.transactionDate
+  OR OLD.details IS NOT NEW.details OR OLD.amount IS NOT NEW.amount
+  OR OLD.categoryId IS NOT NEW.categoryId OR OLD.inflow IS NOT NEW.inflow
+BEGIN
+  UPDATE transactions SET modified = (SELECT MAX(modified) FROM transactions) + 1 WHERE id = NEW.id;
+END;
@@ -0,0 +1,79 @@
+package ro.mihalea.deerkat.importer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests waiting for the watcher thread to stop.
+ *
+ * The watched folders are empty, so the importer never reaches its repository and none is given to it.
+ */
+public class FolderWatcherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Paths reported as failed by the watcher
+     */
+    private final List<Path> failures = new CopyOnWriteArrayList<>();
+
+    @Test(timeout = 10_000)
+    public void closingReleasesTheWaitingThread() throws Exception {
+        FolderWatcher watcher = this.createWatcher(folder.newFolder("statements").toPath());
+        watcher.start();
+
+        new Thread(watcher::close).start();
+        watcher.awaitTermination();
+
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test(timeout = 10_000)
+    public void deletingTheFolderStopsTheWatcher() throws Exception {
+        Path statements = folder.newFolder("statements").toPath();
+        FolderWatcher watcher = this.createWatcher(statements);
+        watcher.start();
+
+        Files.delete(statements);
+        watcher.awaitTermination();
+
+        // The folder may also fail to be listed if it is deleted before the thread starts
+        assertFalse(failures.isEmpty());
+        for (Path failure : failures) {
+            assertEquals(watcher.getFolder(), failure);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void waitingRequiresAStartedWatcher() throws Exception {
+        this.createWatcher(folder.getRoot().toPath()).awaitTermination();
+    }
+
+    private FolderWatcher createWatcher(Path path) {
+        return new FolderWatcher(path, new StatementImporter(null, 1), new FolderWatcher.Listener() {
+            @Override
+            public void stored(Path file, List<Transaction> inserted) {
+            }
+
+            @Override
+            public void imported(ImportReport report) {
+            }
+
+            @Override
+            public void failed(Path path, Exception e) {
+                failures.add(path);
+            }
+        });
+    }
+}
@@ -0,0 +1,106 @@
+package ro.mihalea.deerkat.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a database created before schema versioning takes to be migrated to the latest version, with a
+ * million transactions by default. Run with: gradle jmh -Pjmh=SchemaMigratorBenchmark
+ *
+ * The baseline database is written once, and every iteration migrates a fresh copy of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SchemaMigratorBenchmark {
+    @Param("1000000")
+    public int rows;
+
+    private Path folder;
+
+    private Path baseline;
+
+    private Path database;
+
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void createBaseline() throws Exception {
+        folder = Files.createTempDirectory("deerkat-migration");
+        baseline = folder.resolve("baseline.sqlite");
+        database = folder.resolve("deerkat.sqlite");
+
+        try (Connection baselineConnection = DriverManager.getConnection("jdbc:sqlite:" + baseline)) {
+            SchemaMigratorTest.createBaseline(baselineConnection);
+
+            // Rows written the way the application did before versioning, with DATE and DOUBLE columns
+            baselineConnection.setAutoCommit(false);
+            String insert = "INSERT INTO transactions " +
+                    "(transactionDate, postingDate, details, amount, inflow, categoryId) VALUES (?, ?, ?, ?, ?, ?)";
+            Random random = new Random(42);
+            try (PreparedStatement statement = baselineConnection.prepareStatement(insert)) {
+                for (int i = 0; i < rows; i++) {
+                    long day = 15000 + i / 200;
+                    statement.setLong(1, day);
+                    statement.setLong(2, day + 1);
+                    statement.setString(3, "MERCHANT " + random.nextInt(5000) + " DUBAI " + i);
+                    statement.setDouble(4, random.nextInt(1_000_000) / 100.0);
+                    statement.setBoolean(5, random.nextInt(10) == 0);
+                    statement.setObject(6, random.nextBoolean() ? 16 + random.nextInt(20) : null);
+                    statement.addBatch();
+                    if (i % 10_000 == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+            baselineConnection.commit();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void copyBaseline() throws Exception {
+        Files.copy(baseline, database, StandardCopyOption.REPLACE_EXISTING);
+        connection = DriverManager.getConnection("jdbc:sqlite:" + database);
+    }
+
+    @Benchmark
+    public void migrate() throws Exception {
+        new SchemaMigrator(connection).migrate();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeDatabase() throws Exception {
+        connection.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabases() throws Exception {
+        Files.deleteIfExists(database);
+        Files.deleteIfExists(baseline);
+        Files.deleteIfExists(folder);
+    }
+}
@@ -0,0 +1,176 @@
+package ro.mihalea.deerkat.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests bringing databases created by older versions of the application up to the latest schema version
+ */
+public class SchemaMigratorTest {
+    /**
+     * Version of the schema after every migration has been applied
+     */
+    private final static int LATEST_VERSION = 8;
+
+    /**
+     * Epoch day of January 1, 2018
+     */
+    private final static long JANUARY_1_2018 = 17532;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + folder.newFile("deerkat.sqlite"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void emptyDatabaseIsCreatedAtLatestVersion() throws Exception {
+        new SchemaMigrator(connection).migrate();
+
+        assertEquals(LATEST_VERSION, this.queryLong("SELECT MAX(version) FROM schema_version"));
+        assertEquals(LATEST_VERSION, this.queryLong("SELECT COUNT(*) FROM schema_version"));
+        assertEquals(0, this.queryLong("SELECT COUNT(*) FROM transactions"));
+        assertTrue(this.queryLong("SELECT COUNT(*) FROM categories") > 0);
+    }
+
+    @Test
+    public void baselineDatabaseIsMigratedToLatestVersion() throws Exception {
+        createBaseline(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO transactions " +
+                    "(id, transactionDate, postingDate, details, amount, inflow, categoryId) VALUES " +
+                    "(1, " + JANUARY_1_2018 + ", " + (JANUARY_1_2018 + 1) + ", 'CARREFOUR DUBAI', 123.45, 0, 16), " +
+                    "(2, " + (JANUARY_1_2018 + 8) + ", " + (JANUARY_1_2018 + 9) + ", 'SALARY', 10000.1, 1, NULL), " +
+                    "(3, " + (JANUARY_1_2018 + 40) + ", " + (JANUARY_1_2018 + 41) + ", 'CARREFOUR CITY', 0.29, 0, 16)");
+        }
+
+        new SchemaMigrator(connection).migrate();
+
+        // The versions before versioning are recorded as the initial script, the others as they are applied
+        assertEquals(LATEST_VERSION, this.queryLong("SELECT MAX(version) FROM schema_version"));
+        assertEquals(LATEST_VERSION, this.queryLong("SELECT COUNT(*) FROM schema_version"));
+
+        // Dates keep their epoch day and amounts are stored in hundredths without rounding errors
+        assertEquals(3, this.queryLong("SELECT COUNT(*) FROM transactions"));
+        assertEquals(JANUARY_1_2018, this.queryLong("SELECT transactionDate FROM transactions WHERE id = 1"));
+        assertEquals(12345, this.queryLong("SELECT amount FROM transactions WHERE id = 1"));
+        assertEquals(1000010, this.queryLong("SELECT amount FROM transactions WHERE id = 2"));
+        assertEquals(29, this.queryLong("SELECT amount FROM transactions WHERE id = 3"));
+        assertEquals("integer", this.queryString("SELECT typeof(amount) FROM transactions WHERE id = 3"));
+
+        // Summaries and the search index are built from the existing rows
+        assertEquals(12345, this.queryLong(
+                "SELECT total FROM monthly_summary WHERE month = 201801 AND categoryId = 16 AND inflow = 0"));
+        assertEquals(1000010, this.queryLong(
+                "SELECT total FROM monthly_summary WHERE month = 201801 AND categoryId = -1 AND inflow = 1"));
+        assertEquals(29, this.queryLong(
+                "SELECT total FROM monthly_summary WHERE month = 201802 AND categoryId = 16 AND inflow = 0"));
+        assertEquals(2, this.queryLong(
+                "SELECT COUNT(*) FROM transactions_search WHERE transactions_search MATCH '\"carrefour\"*'"));
+
+        // Existing rows are part of the first export
+        assertEquals(0, this.queryLong("SELECT MAX(modified) FROM transactions"));
+        for (String table : new String[] {"export_marks", "statements", "row_digests", "import_checkpoints"}) {
+            assertEquals(table, 0, this.queryLong("SELECT COUNT(*) FROM " + table));
+        }
+    }
+
+    @Test
+    public void migratedDatabaseKeepsItsTriggersWorking() throws Exception {
+        createBaseline(connection);
+        new SchemaMigrator(connection).migrate();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO transactions " +
+                    "(transactionDate, postingDate, details, amount, inflow, categoryId) VALUES " +
+                    "(" + JANUARY_1_2018 + ", " + JANUARY_1_2018 + ", 'ENOC', 12000, 0, NULL)");
+            long modified = this.queryLong("SELECT modified FROM transactions WHERE details = 'ENOC'");
+            assertTrue(modified > 0);
+            assertEquals(12000, this.queryLong("SELECT total FROM monthly_summary WHERE month = 201801"));
+
+            // Updates that don't change any exported column leave the change sequence alone
+            statement.executeUpdate("UPDATE transactions SET amount = amount WHERE details = 'ENOC'");
+            assertEquals(modified, this.queryLong("SELECT modified FROM transactions WHERE details = 'ENOC'"));
+
+            statement.executeUpdate("UPDATE transactions SET categoryId = 16 WHERE details = 'ENOC'");
+            assertTrue(this.queryLong("SELECT modified FROM transactions WHERE details = 'ENOC'") > modified);
+            assertEquals(12000, this.queryLong("SELECT total FROM monthly_summary WHERE categoryId = 16"));
+        }
+    }
+
+    @Test
+    public void migratingTwiceChangesNothing() throws Exception {
+        createBaseline(connection);
+        new SchemaMigrator(connection).migrate();
+        long applied = this.queryLong("SELECT MAX(appliedAt) FROM schema_version");
+
+        new SchemaMigrator(connection).migrate();
+
+        assertEquals(LATEST_VERSION, this.queryLong("SELECT COUNT(*) FROM schema_version"));
+        assertEquals(applied, this.queryLong("SELECT MAX(appliedAt) FROM schema_version"));
+        assertTrue(connection.getAutoCommit());
+    }
+
+    /**
+     * Create the schema of a database written before schema versioning was introduced, which is the initial
+     * migration script without the schema_version table
+     * @param connection Connection to an empty database
+     */
+    static void createBaseline(Connection connection) throws Exception {
+        StringBuilder script = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                SchemaMigratorTest.class.getClassLoader().getResourceAsStream("migrations/001-initial.sql"),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                script.append(line).append('\n');
+            }
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : script.toString().split(";\\s*\n")) {
+                if (!sql.trim().isEmpty()) {
+                    statement.executeUpdate(sql);
+                }
+            }
+        }
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(sql)) {
+            assertTrue(sql, result.next());
+            return result.getLong(1);
+        }
+    }
+
+    private String queryString(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(sql)) {
+            assertTrue(sql, result.next());
+            return result.getString(1);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ro.mihalea.deerkat.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the transaction log with the SQLite repository when loading a batch of transactions and when reading all
+ * of them back with their categories. Run with: gradle jmh -Pjmh=TransactionLogRepositoryBenchmark
+ *
+ * The SQLite connection is shared by the whole JVM, so every benchmark runs in its own fork with its own database.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransactionLogRepositoryBenchmark {
+    /**
+     * Both repositories, emptied before every iteration
+     */
+    @State(Scope.Benchmark)
+    public static class Empty {
+        @Param("100000")
+        public int rows;
+
+        private Path folder;
+
+        private TransactionSqlRepository sql;
+
+        private TransactionLogRepository log;
+
+        private List<Transaction> transactions;
+
+        @Setup(Level.Trial)
+        public void open() throws Exception {
+            folder = Files.createTempDirectory("deerkat-log");
+            sql = new TransactionSqlRepository(folder.resolve("deerkat.sqlite").toString());
+            log = new TransactionLogRepository(folder.resolve("transactions.log"));
+        }
+
+        @Setup(Level.Iteration)
+        public void empty() throws Exception {
+            sql.nuke();
+            log.nuke();
+            // Ingesting sets the ids of the transactions, so every iteration loads new ones
+            transactions = TransactionLogRepositoryTest.transactions(0, rows);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            log.close();
+            deleteFolder(folder);
+        }
+    }
+
+    /**
+     * Both repositories, filled once with the same transactions
+     */
+    @State(Scope.Benchmark)
+    public static class Filled {
+        @Param("100000")
+        public int rows;
+
+        private Path folder;
+
+        private CategorySqlRepository categories;
+
+        private TransactionSqlRepository sql;
+
+        private TransactionLogRepository log;
+
+        @Setup(Level.Trial)
+        public void fill() throws Exception {
+            folder = Files.createTempDirectory("deerkat-log");
+            String database = folder.resolve("deerkat.sqlite").toString();
+            categories = new CategorySqlRepository(database);
+            sql = new TransactionSqlRepository(database);
+            log = new TransactionLogRepository(folder.resolve("transactions.log"));
+            log.setCategoryRepository(categories);
+
+            sql.ingest(TransactionLogRepositoryTest.transactions(0, rows));
+            log.addAll(TransactionLogRepositoryTest.transactions(0, rows));
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            log.close();
+            deleteFolder(folder);
+        }
+    }
+
+    @Benchmark
+    public Object loadSql(Empty state) throws Exception {
+        return state.sql.ingest(state.transactions);
+    }
+
+    @Benchmark
+    public Object loadLog(Empty state) throws Exception {
+        return state.log.addAll(state.transactions);
+    }
+
+    @Benchmark
+    public Object scanSql(Filled state) throws Exception {
+        return state.sql.getAll(state.categories);
+    }
+
+    @Benchmark
+    public Object scanLog(Filled state) throws Exception {
+        return state.log.getAll();
+    }
+
+    private static void deleteFolder(Path folder) throws Exception {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(folder);
+    }
+}
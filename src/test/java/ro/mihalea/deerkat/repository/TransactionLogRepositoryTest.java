@@ -0,0 +1,306 @@
+package ro.mihalea.deerkat.repository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.mihalea.deerkat.exception.repository.RepositoryCreateException;
+import ro.mihalea.deerkat.exception.repository.RepositoryInitialisationException;
+import ro.mihalea.deerkat.model.Category;
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests storing transactions in the log, reading them back after the log is reopened and compacting it
+ */
+public class TransactionLogRepositoryTest {
+    /**
+     * Dead records needed before updates compact the log on their own
+     */
+    private final static int COMPACTION_THRESHOLD = 4096;
+
+    /**
+     * Position of the record count inside the header of the log file
+     */
+    private final static int COUNT_OFFSET = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void transactionsSurviveReopening() throws Exception {
+        Path path = this.logPath();
+        List<Transaction> expected = new ArrayList<>();
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            Transaction first = transaction(0);
+            long id = repository.add(first).get();
+            expected.add(first.toBuilder().id(id).build());
+
+            List<Transaction> rest = transactions(1, 10_000);
+            List<Optional<Long>> ids = repository.addAll(rest);
+            for (int i = 0; i < rest.size(); i++) {
+                expected.add(rest.get(i).toBuilder().id(ids.get(i).get()).build());
+            }
+
+            assertEquals(expected, sorted(repository.getAll()));
+        }
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            assertEquals(expected, sorted(repository.getAll()));
+            assertEquals(Optional.of(expected.get(1234)), repository.getById(expected.get(1234).getId()));
+            assertEquals(Optional.empty(), repository.getById(-1L));
+
+            // Ids keep increasing after the log is reopened
+            long id = repository.add(transaction(10_001)).get();
+            assertTrue(id > expected.get(expected.size() - 1).getId());
+        }
+    }
+
+    @Test
+    public void updatesAndRemovalsSurviveReopening() throws Exception {
+        Path path = this.logPath();
+        List<Transaction> expected = new ArrayList<>();
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            for (Transaction transaction : transactions(0, 10)) {
+                expected.add(transaction.toBuilder().id(repository.add(transaction).get()).build());
+            }
+
+            Transaction updated = expected.get(3).toBuilder().details("UPDATED").amount(0.01).inflow(true).build();
+            repository.update(updated);
+            expected.set(3, updated);
+
+            Transaction missing = transaction(99).toBuilder().id(1000L).build();
+            List<Transaction> failed = repository.updateAll(Collections.singletonList(missing));
+            assertEquals(Collections.singletonList(missing), failed);
+
+            repository.remove(expected.get(5).getId());
+            repository.remove(expected.get(5).getId());
+            expected.remove(5);
+
+            assertEquals(expected, sorted(repository.getAll()));
+        }
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            assertEquals(expected, sorted(repository.getAll()));
+            assertEquals(Optional.of(expected.get(3)), repository.getById(expected.get(3).getId()));
+        }
+    }
+
+    @Test
+    public void addingAStoredIdFailsAfterPublishingTheEarlierTransactions() throws Exception {
+        try (TransactionLogRepository repository = new TransactionLogRepository(this.logPath())) {
+            long id = repository.add(transaction(0)).get();
+
+            List<Transaction> list = transactions(1, 3);
+            list.add(transaction(3).toBuilder().id(id).build());
+            try {
+                repository.addAll(list);
+                fail("Adding a transaction with a stored id should fail");
+            } catch (RepositoryCreateException e) {
+                assertEquals(3, repository.getAll().size());
+            }
+        }
+    }
+
+    @Test
+    public void compactionKeepsOnlyTheLatestVersions() throws Exception {
+        Path path = this.logPath();
+        List<Transaction> expected = new ArrayList<>();
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            for (Optional<Long> id : repository.addAll(transactions(0, 100))) {
+                expected.add(repository.getById(id.get()).get());
+            }
+
+            // Every transaction gets a new version and every tenth one is removed
+            for (int i = 0; i < expected.size(); i++) {
+                Transaction updated = expected.get(i).toBuilder().amount(i + 0.5).build();
+                repository.update(updated);
+                expected.set(i, updated);
+            }
+            for (int i = expected.size() - 10; i >= 0; i -= 10) {
+                repository.remove(expected.remove(i).getId());
+            }
+
+            repository.compact();
+            assertEquals(expected, sorted(repository.getAll()));
+
+            // The log keeps working after the records have been moved
+            Transaction updated = expected.get(0).toBuilder().details("AFTER COMPACTION").build();
+            repository.update(updated);
+            expected.set(0, updated);
+            expected.add(transaction(100).toBuilder().id(repository.add(transaction(100)).get()).build());
+        }
+
+        assertEquals(expected.size() + 1, recordCount(path));
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            assertEquals(expected, sorted(repository.getAll()));
+        }
+    }
+
+    @Test
+    public void updatesCompactTheLogOnceDeadRecordsOutnumberLiveOnes() throws Exception {
+        Path path = this.logPath();
+        List<Transaction> expected = new ArrayList<>();
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            for (Optional<Long> id : repository.addAll(transactions(0, 100))) {
+                expected.add(repository.getById(id.get()).get());
+            }
+
+            // Enough versions of the same transactions to pass the threshold and grow the log past its capacity
+            for (int round = 0; round <= 2 * COMPACTION_THRESHOLD / expected.size(); round++) {
+                List<Transaction> updated = new ArrayList<>();
+                for (Transaction transaction : expected) {
+                    updated.add(transaction.toBuilder().amount((double) round).build());
+                }
+                assertTrue(repository.updateAll(updated).isEmpty());
+                expected = updated;
+            }
+
+            assertEquals(expected, sorted(repository.getAll()));
+        }
+
+        assertTrue(recordCount(path) < COMPACTION_THRESHOLD + 2 * expected.size());
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            assertEquals(expected, sorted(repository.getAll()));
+        }
+    }
+
+    @Test
+    public void compactionDropsDetailsThatAreNotUsedAnymore() throws Exception {
+        Path path = this.logPath();
+        Path dictionary = path.resolveSibling(path.getFileName() + ".dict");
+        List<Transaction> expected = new ArrayList<>();
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            for (Optional<Long> id : repository.addAll(transactions(0, 100))) {
+                expected.add(repository.getById(id.get()).get());
+            }
+            long size = Files.size(dictionary);
+
+            // Every transaction is renamed, so none of the original details are used anymore
+            for (int i = 0; i < expected.size(); i++) {
+                Transaction updated = expected.get(i).toBuilder().details("RENAMED " + i % 10).build();
+                repository.update(updated);
+                expected.set(i, updated);
+            }
+
+            repository.compact();
+            assertTrue(Files.size(dictionary) < size);
+
+            // Details dropped from the dictionary are added again once they are used
+            Transaction restored = expected.get(0).toBuilder().details(transaction(0).getDetails()).build();
+            repository.update(restored);
+            expected.set(0, restored);
+            assertEquals(expected, sorted(repository.getAll()));
+        }
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            assertEquals(expected, sorted(repository.getAll()));
+        }
+    }
+
+    @Test
+    public void categoriesWithoutAnIdAreNotStored() throws Exception {
+        try (TransactionLogRepository repository = new TransactionLogRepository(this.logPath())) {
+            Transaction transaction = transaction(0);
+            long id = repository.add(transaction.toBuilder()
+                    .category(Category.builder().title("Unsaved").build())
+                    .build()).get();
+
+            assertEquals(Optional.of(transaction.toBuilder().id(id).build()), repository.getById(id));
+        }
+    }
+
+    @Test
+    public void nukeDiscardsEverything() throws Exception {
+        Path path = this.logPath();
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            repository.addAll(transactions(0, 100));
+            repository.nuke();
+            assertTrue(repository.getAll().isEmpty());
+
+            Transaction transaction = transaction(1);
+            long id = repository.add(transaction).get();
+            assertEquals(Optional.of(transaction.toBuilder().id(id).build()), repository.getById(id));
+        }
+
+        try (TransactionLogRepository repository = new TransactionLogRepository(path)) {
+            assertEquals(1, repository.getAll().size());
+            assertEquals("MERCHANT 1 DUBAI", repository.getAll().get(0).getDetails());
+        }
+        assertEquals(1, recordCount(path));
+    }
+
+    @Test
+    public void otherFilesAreNotOpened() throws Exception {
+        Path path = this.logPath();
+        byte[] content = "This is not a transaction log".getBytes(StandardCharsets.UTF_8);
+        Files.write(path, content);
+
+        try {
+            new TransactionLogRepository(path).close();
+            fail("A file without the header of a log should not be opened");
+        } catch (RepositoryInitialisationException e) {
+            assertArrayEquals(content, Files.readAllBytes(path));
+            assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".dict")));
+        }
+    }
+
+    private Path logPath() {
+        return folder.getRoot().toPath().resolve("transactions.log");
+    }
+
+    /**
+     * Read the number of published records from the header of a closed log
+     */
+    private static long recordCount(Path path) throws Exception {
+        return ByteBuffer.wrap(Files.readAllBytes(path)).getLong(COUNT_OFFSET);
+    }
+
+    static Transaction transaction(int number) {
+        LocalDate date = LocalDate.of(2018, 1, 1).plusDays(number / 50);
+        return Transaction.builder()
+                .transactionDate(date)
+                .postingDate(date.plusDays(1))
+                .details("MERCHANT " + number % 50 + " DUBAI")
+                .amount((number * 7919 % 1_000_000) / 100.0)
+                .inflow(number % 10 == 0)
+                .build();
+    }
+
+    static List<Transaction> transactions(int from, int to) {
+        List<Transaction> transactions = new ArrayList<>();
+        for (int number = from; number < to; number++) {
+            transactions.add(transaction(number));
+        }
+        return transactions;
+    }
+
+    private static List<Transaction> sorted(List<Transaction> transactions) {
+        List<Transaction> sorted = new ArrayList<>(transactions);
+        sorted.sort(Comparator.comparing(Transaction::getId));
+        return sorted;
+    }
+}
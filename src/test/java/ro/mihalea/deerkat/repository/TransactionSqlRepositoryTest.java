@@ -0,0 +1,114 @@
+package ro.mihalea.deerkat.repository;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests searching and updating the stored transactions.
+ *
+ * The connection of the SQL repositories is shared by the whole JVM, so every test of this class uses the same
+ * database and starts by emptying it.
+ */
+public class TransactionSqlRepositoryTest {
+    private final static String[] DETAILS = {
+            "CARREFOUR DUBAI", "CARREFOUR CITY CENTRE", "ENOC DUBAI", "AMAZON.AE MARKETPLACE", "DUBAI DUTY FREE"
+    };
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static TransactionSqlRepository repository;
+
+    /**
+     * Transactions stored before every test, with their ids set
+     */
+    private List<Transaction> stored;
+
+    @BeforeClass
+    public static void connect() throws Exception {
+        repository = new TransactionSqlRepository(folder.newFile("deerkat.sqlite").toString());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        repository.nuke();
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (String details : DETAILS) {
+            transactions.add(Transaction.builder()
+                    .transactionDate(LocalDate.of(2018, 1, 1))
+                    .postingDate(LocalDate.of(2018, 1, 2))
+                    .details(details)
+                    .amount(100.0)
+                    .build());
+        }
+        repository.ingest(transactions);
+        stored = transactions;
+    }
+
+    @Test
+    public void updateAllReportsTheRowsThatFailed() throws Exception {
+        Transaction renamed = stored.get(0).toBuilder().details("CARREFOUR MALL").build();
+        // Taking the key of another transaction breaks the unique constraint
+        Transaction duplicate = stored.get(1).toBuilder().details(DETAILS[2]).build();
+        Transaction missing = stored.get(3).toBuilder().id(-1L).build();
+        Transaction unsaved = stored.get(4).toBuilder().id(null).build();
+
+        List<Transaction> failed = repository.updateAll(Arrays.asList(renamed, duplicate, missing, unsaved));
+
+        assertEquals(Arrays.asList(unsaved, duplicate, missing), failed);
+        assertEquals(Collections.singletonList("CARREFOUR MALL"), search("mall"));
+        assertEquals(Collections.singletonList("CARREFOUR CITY CENTRE"), search("centre"));
+    }
+
+    @Test
+    public void searchMatchesEveryWord() throws Exception {
+        assertEquals(Collections.singletonList("CARREFOUR DUBAI"), search("carrefour dubai"));
+        assertEquals(Collections.singletonList("CARREFOUR DUBAI"), search("Dubai  CARREFOUR"));
+        assertEquals(Collections.emptyList(), search("carrefour enoc"));
+    }
+
+    @Test
+    public void searchMatchesWordsAsPrefixes() throws Exception {
+        assertEquals(Arrays.asList("CARREFOUR CITY CENTRE", "CARREFOUR DUBAI"), sorted(search("carr")));
+        assertEquals(Collections.singletonList("DUBAI DUTY FREE"), search("dub fre"));
+    }
+
+    @Test
+    public void searchTakesQuerySyntaxLiterally() throws Exception {
+        assertEquals(Collections.singletonList("AMAZON.AE MARKETPLACE"), search("amazon.ae"));
+        assertEquals(Collections.singletonList("ENOC DUBAI"), search("\"enoc\" dub*"));
+        assertEquals(Collections.emptyList(), search("*:() -"));
+        assertEquals(Collections.emptyList(), search(""));
+    }
+
+    @Test
+    public void searchReturnsAtMostTheLimit() throws Exception {
+        assertEquals(2, repository.search("dubai", 2, null).size());
+    }
+
+    private static List<String> search(String text) throws Exception {
+        return repository.search(text, 100, null).stream()
+                .map(Transaction::getDetails)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,111 @@
+package ro.mihalea.deerkat.utility;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+import ro.mihalea.deerkat.model.Transaction;
+
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential tests checking that the streaming scanner finds the same rows and cell text as selecting them from a
+ * document parsed by jsoup
+ */
+public class HtmlRowScannerTest {
+    private final static String TABLE_CLASS = "hsbcTableStyle07";
+
+    private final static String ROW_CLASS = "hsbcTableRow05";
+
+    /**
+     * Documents covering the markup that the scanner handles differently from a plain tokenizer
+     */
+    private final static String[] DOCUMENTS = {
+            // Plain rows and whitespace
+            "<table class='hsbcTableStyle07'><tr class='hsbcTableRow05'><td>a</td><td>  b \n\t c  </td></tr></table>",
+            // Block elements only add a space when they start after some text
+            "<table class='hsbcTableStyle07'><tr class='hsbcTableRow05'><td><p>a</p>b</td><td>x<br>y</td>" +
+                    "<td><div>a</div><div>b</div></td><td>a<span>b</span></td><td>a </br>b</td></tr></table>",
+            // Header cells end the previous cell but are not selected
+            "<table class='hsbcTableStyle07'><tr class='hsbcTableRow05'><th>h</th><td>a<th>h2<td>b</td></tr></table>",
+            // Tables nested inside a cell add their cells and their text to the outer row
+            "<table class='hsbcTableStyle07'><tr class='hsbcTableRow05'><td>a<table><tr><td>x</td><td>y</td></tr>" +
+                    "</table>z</td><td>b</td></tr></table>",
+            // Transaction rows nested inside transaction rows are reported after the outer one
+            "<table class='hsbcTableStyle07'><tr class='hsbcTableRow05'><td>a<table><tr class='hsbcTableRow05'>" +
+                    "<td>x</td><td>y</td></tr></table>z</td><td>b</td></tr><tr class='hsbcTableRow05'><td>q</td>" +
+                    "</tr></table>",
+            // Transaction tables nested inside other tables
+            "<table><tr><td><table class='hsbcTableStyle07'><tr class='hsbcTableRow05'><td>a</td></tr></table>" +
+                    "</td></tr><tr class='hsbcTableRow05'><td>not a row</td></tr></table>",
+            // Character references
+            "<table class='hsbcTableStyle07'><tr class='hsbcTableRow05'><td>A&amp;B &nbsp; C&#65;&#x42;&lt;</td>" +
+                    "<td>AT&T</td><td>&ampx</td><td>&copy; 2018</td></tr></table>",
+            // Raw text and preformatted text
+            "<table class='hsbcTableStyle07'><tr class='hsbcTableRow05'><td>a<script>var x = '<td>';</script>b</td>" +
+                    "<td><pre>  p  q </pre></td><td>a<textarea>  t  </textarea></td></tr></table>",
+            // Implicitly closed cells, rows and tables
+            "<table class='hsbcTableStyle07'><tbody><tr class='hsbcTableRow05'><td>one<td>two<tr class='x'>" +
+                    "<td>skipped<tr class='hsbcTableRow05'><td>three",
+            // Comments and case insensitive names
+            "<TABLE CLASS='HSBCTABLESTYLE07'><!-- <tr class='hsbcTableRow05'><td>no</td></tr> -->" +
+                    "<TR class='other hsbcTableRow05'><TD>a<!-- b -->c</TD></TR></TABLE>"
+    };
+
+    @Test
+    public void scannerMatchesJsoupOnEdgeCases() throws Exception {
+        for (String document : DOCUMENTS) {
+            assertEquals(document, jsoupRows(document), scannerRows(document));
+        }
+    }
+
+    @Test
+    public void streamedTransactionsMatchParsedOnes() throws Exception {
+        String statement = resource("statements/statement.html").toString();
+        HtmlProcessor processor = new HtmlProcessor();
+
+        List<Transaction> parsed = processor.parseTransactions(statement);
+        List<Transaction> streamed = new ArrayList<>();
+        int count = processor.streamTransactions(statement, streamed::add);
+
+        assertEquals(5, parsed.size());
+        assertEquals(parsed.size(), count);
+        assertEquals(parsed, streamed);
+    }
+
+    /**
+     * Select the cells of the transaction rows from a document parsed by jsoup, like HtmlProcessor does
+     */
+    private static List<List<String>> jsoupRows(String html) {
+        List<List<String>> rows = new ArrayList<>();
+        for (Element row : Jsoup.parse(html).select("table." + TABLE_CLASS + " tr." + ROW_CLASS)) {
+            List<String> cells = new ArrayList<>();
+            for (Element cell : row.select("td")) {
+                cells.add(cell.text());
+            }
+            rows.add(cells);
+        }
+        return rows;
+    }
+
+    /**
+     * Collect the cells of the transaction rows reported by the scanner
+     */
+    private static List<List<String>> scannerRows(String html) throws Exception {
+        List<List<String>> rows = new ArrayList<>();
+        int count = new HtmlRowScanner(TABLE_CLASS, ROW_CLASS).scan(new StringReader(html),
+                cells -> rows.add(new ArrayList<>(cells)));
+        assertEquals(rows.size(), count);
+        return rows;
+    }
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Paths.get(HtmlRowScannerTest.class.getClassLoader().getResource(name).toURI());
+    }
+}
@@ -0,0 +1,80 @@
+package ro.mihalea.deerkat.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the statement field parsers with the formatter and Double.parseDouble they replaced, over the cells of a
+ * statement with a thousand rows. Run with: gradle jmh -Pjmh=StatementFieldParserBenchmark
+ *
+ * The formatter is created once with Locale.ENGLISH, so only the parsing is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementFieldParserBenchmark {
+    private final static int ROWS = 1000;
+
+    private final static DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.ENGLISH);
+
+    private String[] dates;
+
+    private String[] amounts;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        dates = new String[ROWS];
+        amounts = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            dates[i] = LocalDate.of(2018, 1, 1).plusDays(random.nextInt(365)).format(FORMATTER);
+            amounts[i] = String.format(Locale.ENGLISH, "%,.2f", random.nextInt(10_000_000) / 100.0);
+        }
+    }
+
+    @Benchmark
+    public void parseDate(Blackhole blackhole) {
+        for (String date : dates) {
+            blackhole.consume(StatementFieldParser.parseDate(date));
+        }
+    }
+
+    @Benchmark
+    public void parseDateWithFormatter(Blackhole blackhole) {
+        for (String date : dates) {
+            blackhole.consume(LocalDate.parse(date, FORMATTER));
+        }
+    }
+
+    @Benchmark
+    public void parseAmount(Blackhole blackhole) {
+        for (String amount : amounts) {
+            blackhole.consume(StatementFieldParser.parseAmount(amount));
+        }
+    }
+
+    @Benchmark
+    public void parseAmountWithParseDouble(Blackhole blackhole) {
+        for (String amount : amounts) {
+            blackhole.consume(Double.parseDouble(amount.replace(",", "")));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ro.mihalea.deerkat.utility;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential tests checking that the statement field parsers return the same values and fail on the same text as
+ * the formatter and Double.parseDouble they replaced.
+ *
+ * The previous parser used the default locale, so the reference formatter uses Locale.ENGLISH explicitly, which is
+ * the language of the statements and the only one StatementFieldParser reads.
+ */
+public class StatementFieldParserTest {
+    /**
+     * Formatter used before StatementFieldParser
+     */
+    private final static DateTimeFormatter REFERENCE_FORMATTER =
+            DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.ENGLISH);
+
+    private final static String[] DATES = {
+            "January 3, 2018", "February 28, 2016", "February 29, 2016", "December 31, 9999",
+            // Days past the end of the month are resolved to the last day
+            "February 29, 2018", "February 30, 2016", "April 31, 2018", "June 31, 2018",
+            // Days and years with leading zeros or more digits
+            "January 03, 2018", "January 003, 2018", "January 3, 02018", "January 3, 123456789",
+            // Invalid dates
+            "January 0, 2018", "January 32, 2018", "January 99, 2018", "January 3, 0000", "January 3, 18",
+            "January 3, 201", "january 3, 2018", "JANUARY 3, 2018", "Jan 3, 2018", "Janua 3, 2018",
+            "January 3 2018", "January 3,2018", "January  3, 2018", " January 3, 2018", "January 3, 2018 ",
+            "January , 2018", "January 3, ", "January", "", "3 January 2018", "January -3, 2018",
+            "January +3, 2018", "January 3, +2018", "January 3, -2018", "January 3, +12345", "Smarch 3, 2018"
+    };
+
+    private final static String[] AMOUNTS = {
+            "0", "0.00", "-0", "1", "1.5", "1,234.50", "12,345,678.90", "-1,234.50", "+5", "5.", ".5", "0.1",
+            "0.3", "999999999999999", "9999999999999999", "123456789012345678", "1.000000000000000000000001",
+            "0.0000000000000000000001", "1,2,3", "1.2.3", "1.2,3", "1e3", "1E-3", "NaN", "Infinity", "-Infinity",
+            " 5", "5 ", "5d", "5f", "0x10p0", "", "-", "+", ".", ",", "abc", "1,234.5O", "\u0663"
+    };
+
+    @Test
+    public void datesMatchFormatter() {
+        for (String date : DATES) {
+            assertSameOutcome(date, text -> LocalDate.parse(text, REFERENCE_FORMATTER),
+                    StatementFieldParser::parseDate);
+        }
+
+        // Every day of four centuries, in the format of the statements
+        for (LocalDate date = LocalDate.of(1900, 1, 1); date.getYear() < 2300; date = date.plusDays(1)) {
+            String text = date.format(REFERENCE_FORMATTER);
+            assertEquals(text, date, StatementFieldParser.parseDate(text));
+        }
+    }
+
+    @Test
+    public void amountsMatchParseDouble() {
+        for (String amount : AMOUNTS) {
+            assertSameOutcome(amount, StatementFieldParserTest::referenceAmount,
+                    text -> Double.doubleToLongBits(StatementFieldParser.parseAmount(text)));
+        }
+
+        // Random amounts with separators and any number of decimals
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            double value = (random.nextBoolean() ? 1 : -1) * random.nextDouble() * Math.pow(10, random.nextInt(14));
+            String text = String.format(Locale.ENGLISH, "%,." + random.nextInt(9) + "f", value);
+            assertSameOutcome(text, StatementFieldParserTest::referenceAmount,
+                    amount -> Double.doubleToLongBits(StatementFieldParser.parseAmount(amount)));
+        }
+    }
+
+    /**
+     * Parse an amount the way it was parsed before StatementFieldParser
+     * @return Bits of the parsed value, so that the values are compared exactly
+     */
+    private static long referenceAmount(String text) {
+        return Double.doubleToLongBits(Double.parseDouble(text.replace(",", "")));
+    }
+
+    /**
+     * Check that both parsers return the same value, or both throw the same type of exception
+     */
+    private static <T> void assertSameOutcome(String text, Function<String, T> reference, Function<String, T> parser) {
+        assertEquals("Outcome of '" + text + "'", outcome(text, reference), outcome(text, parser));
+    }
+
+    private static <T> Object outcome(String text, Function<String, T> parser) {
+        try {
+            return parser.apply(text);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+}